@@ -0,0 +1,56 @@
+package com.ma4z.betterlogin;
+
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Minimal Bukkit objects for running plugin code outside a server. Only the methods the benchmarked
+ * code calls return something meaningful; every other method returns null, zero or false.
+ */
+final class BukkitStubs {
+
+    private BukkitStubs() {}
+
+    static Player player(UUID uuid, String name) {
+        return stub(Player.class, Map.of("getUniqueId", uuid, "getName", name));
+    }
+
+    static World world(String name) {
+        return stub(World.class, Map.of("getName", name));
+    }
+
+    private static <T> T stub(Class<T> type, Map<String, Object> answers) {
+        Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (self, method, args) -> {
+            switch (method.getName()) {
+                case "equals":
+                    return self == args[0];
+                case "hashCode":
+                    return System.identityHashCode(self);
+                case "toString":
+                    return type.getSimpleName() + answers;
+                default:
+                    Object answer = answers.get(method.getName());
+                    return answer != null ? answer : defaultValue(method);
+            }
+        });
+        return type.cast(proxy);
+    }
+
+    private static Object defaultValue(Method method) {
+        Class<?> r = method.getReturnType();
+        if (!r.isPrimitive() || r == void.class) return null;
+        if (r == boolean.class) return false;
+        if (r == char.class) return '\0';
+        if (r == long.class) return 0L;
+        if (r == float.class) return 0f;
+        if (r == double.class) return 0d;
+        if (r == byte.class) return (byte) 0;
+        if (r == short.class) return (short) 0;
+        return 0;
+    }
+}
@@ -0,0 +1,140 @@
+package com.ma4z.betterlogin;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.AsyncPlayerChatEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-event cost of the guard handlers with stubbed Bukkit objects. Each invocation builds its event,
+ * like the server does for every packet, so the event allocation is part of every result.
+ * <p>
+ * The {@code legacy*} benchmarks run the move check as it was before the guards moved into
+ * {@link GuardListener} (set lookup first, then an exact coordinate comparison) for a before/after comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GuardListenerBenchmark {
+
+    /** Sessions on the server while the events fire. */
+    @Param({"100", "5000"})
+    public int online;
+
+    private GuardListener guards;
+    private Set<UUID> legacyAuthenticated;
+    private Player loggedIn;
+    private Player frozen;
+    private Location from;
+    private Location jitter;
+    private Location nextBlock;
+    private Set<Player> recipients;
+
+    @Setup
+    public void setup() {
+        Sessions sessions = new Sessions();
+        legacyAuthenticated = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        for (int i = 0; i < online; i++) {
+            UUID uuid = UUID.randomUUID();
+            Session s = sessions.open(uuid);
+            sessions.transition(s, Session.State.PENDING_LOAD, Session.State.MUST_LOGIN);
+            sessions.transition(s, Session.State.MUST_LOGIN, Session.State.AUTHENTICATED);
+            legacyAuthenticated.add(uuid);
+        }
+        loggedIn = BukkitStubs.player(UUID.randomUUID(), "loggedIn");
+        Session s = sessions.open(loggedIn.getUniqueId());
+        sessions.transition(s, Session.State.PENDING_LOAD, Session.State.MUST_LOGIN);
+        sessions.transition(s, Session.State.MUST_LOGIN, Session.State.AUTHENTICATED);
+        legacyAuthenticated.add(loggedIn.getUniqueId());
+        frozen = BukkitStubs.player(UUID.randomUUID(), "frozen");
+        sessions.open(frozen.getUniqueId());
+
+        guards = new GuardListener(sessions::isAuthenticated, new Metrics());
+        World world = BukkitStubs.world("world");
+        from = new Location(world, 10.5, 64, 10.5, 0, 0);
+        jitter = new Location(world, 10.6, 64, 10.4, 45, 10);
+        nextBlock = new Location(world, 11.5, 64, 10.5, 0, 0);
+        recipients = Collections.emptySet();
+    }
+
+    @Benchmark
+    public PlayerMoveEvent moveWithinBlockFrozen() {
+        PlayerMoveEvent e = new PlayerMoveEvent(frozen, from, jitter);
+        guards.onPlayerMove(e);
+        return e;
+    }
+
+    @Benchmark
+    public PlayerMoveEvent moveToNextBlockFrozen() {
+        PlayerMoveEvent e = new PlayerMoveEvent(frozen, from, nextBlock);
+        guards.onPlayerMove(e);
+        return e;
+    }
+
+    @Benchmark
+    public PlayerMoveEvent moveToNextBlockLoggedIn() {
+        PlayerMoveEvent e = new PlayerMoveEvent(loggedIn, from, nextBlock);
+        guards.onPlayerMove(e);
+        return e;
+    }
+
+    @Benchmark
+    public PlayerMoveEvent legacyMoveWithinBlockFrozen() {
+        PlayerMoveEvent e = new PlayerMoveEvent(frozen, from, jitter);
+        legacyOnPlayerMove(e);
+        return e;
+    }
+
+    @Benchmark
+    public PlayerMoveEvent legacyMoveToNextBlockLoggedIn() {
+        PlayerMoveEvent e = new PlayerMoveEvent(loggedIn, from, nextBlock);
+        legacyOnPlayerMove(e);
+        return e;
+    }
+
+    @Benchmark
+    public AsyncPlayerChatEvent chatLoggedIn() {
+        AsyncPlayerChatEvent e = new AsyncPlayerChatEvent(true, loggedIn, "hello", recipients);
+        guards.onChat(e);
+        return e;
+    }
+
+    @Benchmark
+    public AsyncPlayerChatEvent chatFrozen() {
+        AsyncPlayerChatEvent e = new AsyncPlayerChatEvent(true, frozen, "hello", recipients);
+        guards.onChat(e);
+        return e;
+    }
+
+    // the move handler as it was in BetterLoginSecurity before GuardListener
+    private void legacyOnPlayerMove(PlayerMoveEvent e) {
+        Player p = e.getPlayer();
+        if (!legacyAuthenticated.contains(p.getUniqueId())) {
+            if (e.getFrom().getX() == e.getTo().getX() && e.getFrom().getZ() == e.getTo().getZ() && e.getFrom().getY() == e.getTo().getY()) {
+                return;
+            }
+            e.setTo(e.getFrom());
+        }
+    }
+}
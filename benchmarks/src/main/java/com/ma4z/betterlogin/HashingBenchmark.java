@@ -0,0 +1,52 @@
+package com.ma4z.betterlogin;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one password hash and one verification per scheme and cost setting.
+ * {@code scheme} is {@code <hashing.algorithm>:<cost>}, the cost being PBKDF2 iterations or log2(N) for scrypt.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HashingBenchmark {
+
+    @Param({"pbkdf2-sha256:10000", "pbkdf2-sha256:65536", "pbkdf2-sha256:210000", "pbkdf2-sha512:65536", "scrypt:14"})
+    public String scheme;
+
+    private PasswordHasher hasher;
+    private byte[] stored;
+    private final char[] password = "correct horse battery staple".toCharArray();
+
+    @Setup
+    public void setup() {
+        String[] parts = scheme.split(":");
+        hasher = PasswordHashers.create(parts[0], Integer.parseInt(parts[1]), 8, 1);
+        stored = hasher.hash(password);
+    }
+
+    @Benchmark
+    public byte[] hash() {
+        return hasher.hash(password);
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return hasher.verify(password, stored);
+    }
+}
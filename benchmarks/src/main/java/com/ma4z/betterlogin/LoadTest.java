@@ -0,0 +1,273 @@
+package com.ma4z.betterlogin;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import be.seeseemelk.mockbukkit.ServerMock;
+import be.seeseemelk.mockbukkit.entity.PlayerMock;
+import org.bukkit.ChatColor;
+import org.bukkit.Location;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end load test: runs the plugin on a MockBukkit server and drives thousands of fake players
+ * through it, with no network and no real server.
+ * <p>
+ * Two waves are simulated. In the first every player joins for the first time and registers; in the
+ * second the same players rejoin (as after a restart) and log in. While frozen, each player walks into
+ * the next block every tick. Logged-in players stay for a few ticks and quit.
+ * <p>
+ * Per wave it reports the wall time of each simulated tick, login latency (command sent to success
+ * message), the number of each database operation and the peak heap. MockBukkit fires the async
+ * pre-login event inline, so a tick's wall time includes the pre-login prefetch of the players who
+ * joined in it; {@code main.tick} from the plugin's metrics is the plugin's own main-thread time.
+ * <p>
+ * Usage: {@code LoadTest [--players N] [--joins-per-tick N] [--stay-ticks N] [--max-ticks N] [--no-pacing] [--json FILE]}
+ */
+public final class LoadTest {
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final String PASSWORD = "load-test-password";
+
+    private int players = 2000;
+    private int joinsPerTick = 20;
+    private int stayTicks = 40;
+    private int maxTicks = 20 * 60 * 10;
+    private boolean pacing = true;
+    private File json;
+
+    private ServerMock server;
+    private BetterLoginSecurity plugin;
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+    public static void main(String[] args) throws Exception {
+        LoadTest test = new LoadTest();
+        test.parse(args);
+        test.run();
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--players" -> players = Integer.parseInt(args[++i]);
+                case "--joins-per-tick" -> joinsPerTick = Integer.parseInt(args[++i]);
+                case "--stay-ticks" -> stayTicks = Integer.parseInt(args[++i]);
+                case "--max-ticks" -> maxTicks = Integer.parseInt(args[++i]);
+                case "--no-pacing" -> pacing = false;
+                case "--json" -> json = new File(args[++i]);
+                default -> throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+    }
+
+    private void run() throws IOException {
+        server = MockBukkit.mock();
+        try {
+            server.addSimpleWorld("world");
+            plugin = MockBukkit.load(BetterLoginSecurity.class);
+            configure();
+
+            List<SimPlayer> sims = new ArrayList<>(players);
+            for (int i = 0; i < players; i++) {
+                sims.add(new SimPlayer("load" + i, new UUID(0x10ad, i)));
+            }
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("players", players);
+            report.put("joinsPerTick", joinsPerTick);
+            report.put("register", wave(sims, "register"));
+            report.put("login", wave(sims, "login"));
+            report.put("pluginMainThreadPerTick", summary(plugin.metrics().timer("main.tick")));
+
+            String out = toJson(report, "");
+            System.out.println(out);
+            if (json != null) Files.write(json.toPath(), out.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            MockBukkit.unmock();
+        }
+    }
+
+    /**
+     * Every fake player shares one address, so the per-IP limit is raised out of the way, and large waves
+     * queue for longer than a login timeout would allow. The plugin is restarted to pick the settings up,
+     * which is also what a config change on a live server needs.
+     */
+    private void configure() {
+        plugin.getConfig().set("login-timeout.seconds", 0);
+        plugin.getConfig().set("rate-limit.per-ip.capacity", Integer.MAX_VALUE / 2);
+        plugin.getConfig().set("rate-limit.per-ip.refill-per-minute", Integer.MAX_VALUE / 2);
+        plugin.getConfig().set("metrics.jmx", false);
+        server.getPluginManager().disablePlugin(plugin);
+        server.getPluginManager().enablePlugin(plugin);
+    }
+
+    /** One wave: every player joins, registers or logs in, and quits. */
+    private Map<String, Object> wave(List<SimPlayer> sims, String command) {
+        Map<String, Long> dbBefore = plugin.metrics().counts("sql.");
+        Histogram tickTime = new Histogram();
+        Histogram latency = new Histogram();
+        long peakHeap = 0;
+        int retries = 0;
+        int failures = 0;
+        int next = 0;
+        int finished = 0;
+        int tick = 0;
+        for (SimPlayer sim : sims) sim.reset();
+
+        while (finished < sims.size() && tick < maxTicks) {
+            long start = System.nanoTime();
+            for (int n = 0; n < joinsPerTick && next < sims.size(); n++) {
+                sims.get(next++).join(server);
+            }
+            for (int i = 0; i < next; i++) {
+                SimPlayer sim = sims.get(i);
+                if (sim.state == State.GONE) continue;
+                for (String msg = sim.mock.nextMessage(); msg != null; msg = sim.mock.nextMessage()) {
+                    String text = ChatColor.stripColor(msg).toLowerCase(Locale.ROOT);
+                    if (text.contains("logged in successfully")) {
+                        latency.record(System.nanoTime() - sim.sentAt);
+                        sim.state = State.PLAYING;
+                        sim.leaveAt = tick + stayTicks;
+                    } else if (sim.state == State.JOINED && (text.startsWith("welcome! please register") || text.startsWith("please login"))) {
+                        // later prompts are the plugin's reminders; the command is already on its way
+                        sim.state = State.PROMPTED;
+                    } else if (text.contains("try again") || text.contains("trying too fast") || text.contains("please wait")) {
+                        retries++;
+                        sim.state = State.PROMPTED;
+                        sim.retryAt = tick + 20;
+                    } else if (text.contains("error") || text.contains("incorrect") || text.contains("already exists")) {
+                        failures++;
+                        sim.state = State.PLAYING;
+                        sim.leaveAt = tick;
+                    }
+                }
+                switch (sim.state) {
+                    case PROMPTED -> {
+                        if (tick >= sim.retryAt) {
+                            sim.sentAt = System.nanoTime();
+                            sim.state = State.SENT;
+                            sim.mock.performCommand(command.equals("register")
+                                    ? "register " + PASSWORD + " " + PASSWORD
+                                    : "login " + PASSWORD);
+                        }
+                    }
+                    case JOINED, SENT -> sim.walk();
+                    case PLAYING -> {
+                        if (tick >= sim.leaveAt) {
+                            sim.mock.disconnect();
+                            sim.state = State.GONE;
+                            finished++;
+                        }
+                    }
+                    default -> {}
+                }
+            }
+            server.getScheduler().performOneTick();
+
+            long elapsed = System.nanoTime() - start;
+            tickTime.record(elapsed);
+            peakHeap = Math.max(peakHeap, memory.getHeapMemoryUsage().getUsed());
+            tick++;
+            if (pacing && elapsed < TICK_NANOS) LockSupport.parkNanos(TICK_NANOS - elapsed);
+        }
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("completed", finished);
+        out.put("timedOut", finished < sims.size());
+        out.put("ticks", tick);
+        out.put("retries", retries);
+        out.put("failures", failures);
+        out.put("tickMillis", summary(tickTime));
+        out.put("loginLatencyMillis", summary(latency));
+        out.put("dbOperations", difference(plugin.metrics().counts("sql."), dbBefore));
+        out.put("peakHeapMiB", peakHeap >> 20);
+        return out;
+    }
+
+    /* ----------------------------- Helpers ----------------------------- */
+
+    private enum State { OFFLINE, JOINED, PROMPTED, SENT, PLAYING, GONE }
+
+    private static final class SimPlayer {
+        final String name;
+        final UUID uuid;
+        PlayerMock mock;
+        State state = State.OFFLINE;
+        long sentAt;
+        int retryAt;
+        int leaveAt;
+
+        SimPlayer(String name, UUID uuid) {
+            this.name = name;
+            this.uuid = uuid;
+        }
+
+        void reset() {
+            mock = null;
+            state = State.OFFLINE;
+            retryAt = 0;
+        }
+
+        void join(ServerMock server) {
+            // same uuid every wave, so the second wave finds the accounts from the first
+            mock = new PlayerMock(server, name, uuid);
+            server.addPlayer(mock);
+            state = State.JOINED;
+        }
+
+        /** A frozen player holding the walk key: one block further each tick. */
+        void walk() {
+            Location to = mock.getLocation().clone().add(1, 0, 0);
+            mock.simulatePlayerMove(to);
+        }
+    }
+
+    private static Map<String, Object> summary(Histogram h) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("count", h.count());
+        out.put("p50", millis(h.quantile(0.5)));
+        out.put("p99", millis(h.quantile(0.99)));
+        out.put("max", millis(h.max()));
+        return out;
+    }
+
+    private static Map<String, Object> difference(Map<String, Long> after, Map<String, Long> before) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        after.forEach((k, v) -> {
+            long d = v - before.getOrDefault(k, 0L);
+            if (d > 0) out.put(k.substring("sql.".length()), d);
+        });
+        return out;
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 10_000.0) / 100.0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String toJson(Object value, String indent) {
+        if (!(value instanceof Map)) {
+            return value instanceof String ? "\"" + value + "\"" : String.valueOf(value);
+        }
+        StringBuilder sb = new StringBuilder("{\n");
+        String inner = indent + "  ";
+        var it = ((Map<String, Object>) value).entrySet().iterator();
+        while (it.hasNext()) {
+            var en = it.next();
+            sb.append(inner).append('"').append(en.getKey()).append("\": ").append(toJson(en.getValue(), inner));
+            sb.append(it.hasNext() ? ",\n" : "\n");
+        }
+        return sb.append(indent).append('}').toString();
+    }
+}
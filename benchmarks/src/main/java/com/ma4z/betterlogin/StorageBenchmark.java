@@ -0,0 +1,193 @@
+package com.ma4z.betterlogin;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Every {@link DB} operation against a seeded database, measured end to end (submit, run on the
+ * DB thread, complete). The account cache holds a single entry, so lookups of random accounts go to the database.
+ * <p>
+ * {@code sqlite} is the default passwords.db backend; {@code h2} runs the shared-storage backend ({@link PooledDB})
+ * against an embedded H2 database in MySQL mode, as a stand-in for a MySQL server.
+ * Seeded files are kept in {@code target/bench-data} and reused by later runs; seeding a million
+ * accounts takes a while the first time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int accounts;
+
+    @Param({"sqlite", "h2"})
+    public String backend;
+
+    private DB db;
+    private byte[] password;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        seed(backend, accounts);
+        db = open(backend, accounts, 256);
+        db.prepare();
+        password = new Pbkdf2Hasher(Pbkdf2Hasher.SHA256, 1000).hash("password".toCharArray());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        db.close();
+    }
+
+    @Benchmark
+    public DB.StoredEntry getPlayer() {
+        int i = randomAccount();
+        return db.getPlayer(uuid(i), name(i)).join();
+    }
+
+    @Benchmark
+    public DB.StoredEntry getPlayerByName() {
+        return db.getPlayerByName(name(randomAccount())).join();
+    }
+
+    @Benchmark
+    public DB.StoredEntry getPlayerMissing() {
+        // both the uuid and the username probe miss, as for a first join
+        return db.getPlayer(UUID.randomUUID().toString(), "newplayer").join();
+    }
+
+    @Benchmark
+    public DB.StoredLocation getLastLocation() {
+        return db.getLastLocation(uuid(randomAccount())).join();
+    }
+
+    @Benchmark
+    public void createAndDeletePlayer() {
+        String uuid = UUID.randomUUID().toString();
+        String name = "bench" + uuid.substring(0, 8);
+        db.createPlayer(uuid, name, password).join();
+        db.deletePlayer(uuid, name).join();
+    }
+
+    @Benchmark
+    public void updatePassword() {
+        int i = randomAccount();
+        db.updatePassword(uuid(i), name(i), password).join();
+    }
+
+    @Benchmark
+    public void setPremiumFlag() {
+        int i = randomAccount();
+        db.setPremiumFlag(uuid(i), name(i), false).join();
+    }
+
+    @Benchmark
+    public void recordLogin() {
+        db.recordLogin(uuid(randomAccount())).join();
+    }
+
+    /** 64 buffered location saves committed in one batch, as the flush timer would. */
+    @Benchmark
+    public int flushLocations() {
+        for (int n = 0; n < 64; n++) {
+            DB.StoredLocation loc = new DB.StoredLocation();
+            loc.world = "world";
+            loc.x = n;
+            db.saveLastLocation(uuid(randomAccount()), loc);
+        }
+        return db.flushLocations().join();
+    }
+
+    /* ------------------------------ Seeding ------------------------------ */
+
+    static String uuid(int i) {
+        return new UUID(0x5eed, i).toString();
+    }
+
+    static String name(int i) {
+        return "player" + i;
+    }
+
+    private int randomAccount() {
+        return ThreadLocalRandom.current().nextInt(accounts);
+    }
+
+    static String url(String backend, int count) {
+        File base = new File("target/bench-data", "accounts-" + count).getAbsoluteFile();
+        return backend.equals("h2")
+                ? "jdbc:h2:file:" + base.getPath() + "-h2;MODE=MySQL;DATABASE_TO_LOWER=TRUE"
+                : "jdbc:sqlite:" + base.getPath() + ".db";
+    }
+
+    static DB open(String backend, int count, int locationFlushThreshold) {
+        AccountCache cache = new AccountCache(1, 1, TimeUnit.MINUTES);
+        if (backend.equals("h2")) {
+            return new PooledDB(Dialect.MYSQL, url(backend, count), null, null, 2, cache, Logger.getLogger("bench"), new Metrics(), locationFlushThreshold);
+        }
+        return new SqliteDB(url(backend, count).substring("jdbc:sqlite:".length()), 2, cache, Logger.getLogger("bench"), new Metrics(), locationFlushThreshold);
+    }
+
+    /** Creates (or reuses) a database with {@code count} accounts, using the plugin's own schema setup. */
+    static void seed(String backend, int count) throws Exception {
+        new File("target/bench-data").mkdirs();
+        DB schema = open(backend, count, 1);
+        schema.prepare();
+        schema.close();
+        try (Connection conn = DriverManager.getConnection(url(backend, count))) {
+            if (countAccounts(conn) == count) return;
+            try (Statement st = conn.createStatement()) {
+                st.execute("DELETE FROM accounts");
+            }
+            byte[] password = new Pbkdf2Hasher(Pbkdf2Hasher.SHA256, 1000).hash("password".toCharArray());
+            long now = System.currentTimeMillis();
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement("INSERT INTO accounts(uuid, username, username_lc, password, is_premium, last_world, last_x, last_y, last_z, last_yaw, last_pitch, last_login) VALUES(?,?,?,?,0,'world',?,64,?,0,0,?)")) {
+                for (int i = 0; i < count; i++) {
+                    ps.setString(1, uuid(i));
+                    ps.setString(2, name(i));
+                    ps.setString(3, name(i));
+                    ps.setBytes(4, password);
+                    ps.setDouble(5, i % 1000);
+                    ps.setDouble(6, i / 1000);
+                    ps.setLong(7, now);
+                    ps.addBatch();
+                    if (i % 10000 == 9999) ps.executeBatch();
+                }
+                ps.executeBatch();
+            }
+            conn.commit();
+        }
+    }
+
+    private static int countAccounts(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SELECT count(*) FROM accounts")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.ma4z.betterlogin;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+/**
+ * Size-bounded, time-expiring cache of account rows, keyed by UUID with a secondary
+ * (case-insensitive) username index.
+ * <p>
+ * {@link DB} reads through it on every lookup and writes through it after every committed change.
+ * Loads that raced with a write are discarded (see {@link #epoch()}) so a slow read can never put
+ * an older row back over a newer one.
+ */
+final class AccountCache {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    // access-ordered so the eldest entry is the least recently used one
+    private final LinkedHashMap<String, Node> byUuid;
+    private final Map<String, String> uuidByName = new HashMap<>();
+    private final AtomicLong epoch = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    AccountCache(int maxSize, long ttl, TimeUnit unit) {
+        this.maxSize = Math.max(1, maxSize);
+        this.ttlNanos = unit.toNanos(ttl);
+        this.byUuid = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    private static final class Node {
+        final DB.StoredEntry entry;
+        final long expiresAt;
+
+        Node(DB.StoredEntry entry, long expiresAt) {
+            this.entry = entry;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /** Same matching rule as the SQL lookups: by UUID first, then by username. Null on miss. */
+    synchronized DB.StoredEntry get(String uuid, String username) {
+        DB.StoredEntry e = lookup(uuid);
+        if (e == null && username != null) {
+            e = lookup(uuidByName.get(DB.normalize(username)));
+        }
+        if (e == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return e;
+    }
+
+    synchronized DB.StoredEntry getByName(String username) {
+        DB.StoredEntry e = lookup(uuidByName.get(DB.normalize(username)));
+        if (e == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return e;
+    }
+
+    /**
+     * Write counter. Capture it before loading from the database and pass it to
+     * {@link #putLoaded}; if any write committed in between, the loaded row is dropped.
+     */
+    long epoch() {
+        return epoch.get();
+    }
+
+    synchronized void putLoaded(DB.StoredEntry entry, long loadedAtEpoch) {
+        if (entry == null || epoch.get() != loadedAtEpoch) return;
+        insert(entry);
+    }
+
+    /** Write-through for a newly committed row. */
+    synchronized void put(DB.StoredEntry entry) {
+        epoch.incrementAndGet();
+        insert(entry);
+    }
+
+    /** Write-through for an UPDATE matching {@code uuid OR username}. */
+    synchronized void update(String uuid, String username, UnaryOperator<DB.StoredEntry> change) {
+        epoch.incrementAndGet();
+        apply(uuid, change);
+        if (username != null) {
+            String other = uuidByName.get(DB.normalize(username));
+            if (other != null && !other.equals(uuid)) apply(other, change);
+        }
+    }
+
+    /** Write-through for a DELETE matching {@code uuid OR username}. */
+    synchronized void remove(String uuid, String username) {
+        epoch.incrementAndGet();
+        unlink(uuid);
+        if (username != null) unlink(uuidByName.get(DB.normalize(username)));
+    }
+
+    synchronized void clear() {
+        epoch.incrementAndGet();
+        byUuid.clear();
+        uuidByName.clear();
+    }
+
+    synchronized int size() {
+        return byUuid.size();
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    long evictions() {
+        return evictions.sum();
+    }
+
+    /* ----------------------------- Internals ----------------------------- */
+
+    private DB.StoredEntry lookup(String uuid) {
+        if (uuid == null) return null;
+        Node n = byUuid.get(uuid);
+        if (n == null) return null;
+        if (n.expiresAt - System.nanoTime() <= 0) {
+            unlink(uuid);
+            evictions.increment();
+            return null;
+        }
+        return n.entry;
+    }
+
+    private void apply(String uuid, UnaryOperator<DB.StoredEntry> change) {
+        Node n = byUuid.get(uuid);
+        if (n != null) {
+            byUuid.put(uuid, new Node(change.apply(n.entry), n.expiresAt));
+        }
+    }
+
+    private void insert(DB.StoredEntry entry) {
+        unlink(entry.uuid);
+        String name = DB.normalize(entry.username);
+        if (name != null) unlink(uuidByName.get(name));
+        byUuid.put(entry.uuid, new Node(entry, System.nanoTime() + ttlNanos));
+        if (name != null) uuidByName.put(name, entry.uuid);
+        if (byUuid.size() > maxSize) {
+            Iterator<Map.Entry<String, Node>> it = byUuid.entrySet().iterator();
+            while (byUuid.size() > maxSize && it.hasNext()) {
+                Node eldest = it.next().getValue();
+                it.remove();
+                if (eldest.entry.username != null) uuidByName.remove(DB.normalize(eldest.entry.username), eldest.entry.uuid);
+                evictions.increment();
+            }
+        }
+    }
+
+    private void unlink(String uuid) {
+        if (uuid == null) return;
+        Node n = byUuid.remove(uuid);
+        if (n != null && n.entry.username != null) {
+            uuidByName.remove(DB.normalize(n.entry.username), uuid);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package com.ma4z.betterlogin;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Streams accounts from another auth plugin's data into passwords.db.
+ * <p>
+ * Sources are an AuthMe-style SQLite file (table {@code authme} by default) or a CSV file with a header row
+ * naming at least {@code username} and {@code password} (optionally {@code realname}, {@code uuid} and
+ * {@code lastlogin}). Rows are read in batches on this importer's own thread and written by
+ * {@link DB#importAccounts} as one transaction per batch; reading the next batch overlaps with writing the
+ * previous one. Each batch commits the source position with it, so running the same import again after an
+ * interruption continues where it stopped and never imports a row twice.
+ * <p>
+ * AuthMe's {@code $SHA$} hashes are kept as {@link AuthMeSha256Verifier} hashes and its {@code pbkdf2_sha256}
+ * hashes are converted to {@link Pbkdf2Hasher} ones; both are re-hashed with the configured scheme at the
+ * player's next login. Rows with other formats (BCrypt, Argon2, ...) are skipped and counted.
+ */
+final class AccountImport implements Runnable {
+
+    private static final long REPORT_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+
+    private final DB db;
+    private final File file;
+    private final String table;
+    private final int batchSize;
+    private final Logger logger;
+    private final Consumer<String> report;
+    private volatile boolean cancelled;
+
+    // counts for this run only; the totals over every run are in import_progress
+    private long read;
+    private long imported;
+    private long unsupported;
+    private long invalid;
+
+    AccountImport(DB db, File file, String table, int batchSize, Logger logger, Consumer<String> report) {
+        this.db = db;
+        this.file = file;
+        this.table = table;
+        this.batchSize = Math.max(1, batchSize);
+        this.logger = logger;
+        this.report = report;
+    }
+
+    /** Key of this source in import_progress. */
+    String source() {
+        return file.getAbsolutePath() + (isCsv() ? "" : "#" + table);
+    }
+
+    /** Stops after the batch in flight; running the same import again resumes from there. */
+    void cancel() {
+        cancelled = true;
+    }
+
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        try {
+            DB.ImportProgress earlier = db.importProgress(source()).join();
+            long position = earlier == null ? 0 : earlier.position;
+            if (position > 0) report.accept("Resuming import of " + file.getName() + " after " + position + (isCsv() ? " rows." : " (last id)."));
+            long lastReport = System.nanoTime();
+            CompletableFuture<Integer> inFlight = CompletableFuture.completedFuture(0);
+            try (Source src = isCsv() ? new CsvSource(file, position) : new SqliteSource(file, table, position)) {
+                while (!cancelled) {
+                    List<String[]> raw = src.next(batchSize);
+                    if (raw.isEmpty()) break;
+                    read += raw.size();
+                    List<DB.ImportedAccount> rows = new ArrayList<>(raw.size());
+                    for (String[] r : raw) {
+                        DB.ImportedAccount a = convert(r);
+                        if (a != null) rows.add(a);
+                    }
+                    imported += inFlight.join();
+                    inFlight = db.importAccounts(source(), rows, src.position(), raw.size() - rows.size());
+                    if (System.nanoTime() - lastReport >= REPORT_INTERVAL) {
+                        lastReport = System.nanoTime();
+                        report.accept(String.format(Locale.ROOT, "Importing: %d rows read, %d imported so far.", read, imported));
+                    }
+                }
+                imported += inFlight.join();
+            }
+            report.accept(summary(start, cancelled ? "Import cancelled" : "Import finished"));
+        } catch (Exception e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            logger.severe("Import of " + file + " failed: " + cause);
+            report.accept(summary(start, "Import failed (" + cause.getMessage() + "); run it again to resume"));
+        }
+    }
+
+    private String summary(long start, String what) {
+        double secs = Math.max(1, System.nanoTime() - start) / 1e9;
+        return String.format(Locale.ROOT, "%s: %d rows read, %d imported, %d unsupported hashes, %d invalid, %d already existed (%.0f rows/s).",
+                what, read, imported, unsupported, invalid, Math.max(0, read - imported - unsupported - invalid), read / secs);
+    }
+
+    /** username, realname, password, uuid, lastlogin; null values for columns the source lacks. */
+    private DB.ImportedAccount convert(String[] r) {
+        String name = r[1] != null && !r[1].isBlank() ? r[1].trim() : r[0] == null ? null : r[0].trim();
+        if (name == null || name.isEmpty() || name.length() > 32 || r[2] == null) {
+            invalid++;
+            return null;
+        }
+        DB.ImportedAccount a = new DB.ImportedAccount();
+        try {
+            a.password = convertHash(r[2].trim());
+        } catch (IllegalArgumentException e) {
+            a.password = null;
+        }
+        if (a.password == null) {
+            unsupported++;
+            return null;
+        }
+        a.username = name;
+        a.uuid = uuid(r[3], name);
+        a.lastLogin = System.currentTimeMillis();
+        if (r[4] != null) {
+            try {
+                long last = Long.parseLong(r[4].trim());
+                if (last > 0) a.lastLogin = last;
+            } catch (NumberFormatException ignored) {}
+        }
+        return a;
+    }
+
+    /** Null for formats that cannot be verified here. */
+    static byte[] convertHash(String hash) {
+        if (hash.startsWith("$SHA$")) return AuthMeSha256Verifier.fromAuthMe(hash);
+        if (hash.startsWith("pbkdf2_sha256$")) return Pbkdf2Hasher.fromAuthMe(hash);
+        return null;
+    }
+
+    /** The given UUID if it parses, otherwise the offline-mode UUID the server derives from the name. */
+    private static String uuid(String given, String name) {
+        if (given != null && !given.isBlank()) {
+            try {
+                return UUID.fromString(given.trim()).toString();
+            } catch (IllegalArgumentException ignored) {}
+        }
+        return UUID.nameUUIDFromBytes(("OfflinePlayer:" + name).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    private boolean isCsv() {
+        return file.getName().toLowerCase(Locale.ROOT).endsWith(".csv");
+    }
+
+    /* ------------------------------ Sources ------------------------------ */
+
+    private interface Source extends AutoCloseable {
+        /** Up to {@code max} rows as username, realname, password, uuid, lastlogin; empty at the end. */
+        List<String[]> next(int max) throws IOException, SQLException;
+
+        /** Position after the last row returned, for resuming. */
+        long position();
+
+        // narrower than AutoCloseable's, which could throw InterruptedException
+        @Override
+        void close() throws IOException, SQLException;
+    }
+
+    /** Keyset pagination on the integer {@code id} column, over a read-only connection. */
+    private static final class SqliteSource implements Source {
+        private final Connection conn;
+        private final PreparedStatement query;
+        private long lastId;
+
+        SqliteSource(File file, String table, long after) throws SQLException {
+            if (!file.isFile()) throw new SQLException("No such file: " + file);
+            if (!table.matches("[A-Za-z0-9_]+")) throw new SQLException("Invalid table name: " + table);
+            conn = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+            try {
+                try (Statement st = conn.createStatement()) {
+                    st.execute("PRAGMA query_only = 1");
+                }
+                Set<String> columns = new HashSet<>();
+                try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("PRAGMA table_info(" + table + ")")) {
+                    while (rs.next()) columns.add(rs.getString("name").toLowerCase(Locale.ROOT));
+                }
+                if (!columns.containsAll(List.of("id", "username", "password"))) {
+                    throw new SQLException("Table " + table + " needs id, username and password columns");
+                }
+                query = conn.prepareStatement("SELECT id, username, " + optional(columns, "realname") + ", password, "
+                        + optional(columns, "uuid") + ", " + optional(columns, "lastlogin") + " FROM " + table + " WHERE id > ? ORDER BY id LIMIT ?");
+            } catch (SQLException e) {
+                conn.close();
+                throw e;
+            }
+            lastId = after;
+        }
+
+        private static String optional(Set<String> columns, String name) {
+            return columns.contains(name) ? name : "NULL";
+        }
+
+        @Override
+        public List<String[]> next(int max) throws SQLException {
+            query.setLong(1, lastId);
+            query.setInt(2, max);
+            List<String[]> rows = new ArrayList<>(max);
+            try (ResultSet rs = query.executeQuery()) {
+                while (rs.next()) {
+                    lastId = rs.getLong(1);
+                    rows.add(new String[] {rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5), rs.getString(6)});
+                }
+            }
+            return rows;
+        }
+
+        @Override
+        public long position() {
+            return lastId;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            query.close();
+            conn.close();
+        }
+    }
+
+    /** RFC 4180 style: comma separated, optional double quotes with "" as an escaped quote, one row per line. */
+    private static final class CsvSource implements Source {
+        private static final String[] COLUMNS = {"username", "realname", "password", "uuid", "lastlogin"};
+
+        private final BufferedReader in;
+        private final int[] index = new int[COLUMNS.length];
+        private long rows;
+
+        CsvSource(File file, long skip) throws IOException {
+            in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+            try {
+                String header = in.readLine();
+                if (header == null) throw new IOException("Empty CSV file");
+                Map<String, Integer> byName = new HashMap<>();
+                List<String> names = split(header);
+                for (int i = 0; i < names.size(); i++) byName.put(names.get(i).trim().toLowerCase(Locale.ROOT), i);
+                for (int i = 0; i < COLUMNS.length; i++) index[i] = byName.getOrDefault(COLUMNS[i], -1);
+                if (index[0] < 0 || index[2] < 0) throw new IOException("CSV header needs username and password columns");
+                while (rows < skip && in.readLine() != null) rows++;
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public List<String[]> next(int max) throws IOException {
+            List<String[]> out = new ArrayList<>(max);
+            String line;
+            while (out.size() < max && (line = in.readLine()) != null) {
+                rows++;
+                List<String> fields = split(line);
+                String[] r = new String[COLUMNS.length];
+                for (int i = 0; i < COLUMNS.length; i++) {
+                    r[i] = index[i] >= 0 && index[i] < fields.size() ? fields.get(index[i]) : null;
+                }
+                out.add(r);
+            }
+            return out;
+        }
+
+        @Override
+        public long position() {
+            return rows;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private static List<String> split(String line) {
+            List<String> fields = new ArrayList<>();
+            StringBuilder cur = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quoted) {
+                    if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        cur.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        quoted = false;
+                    } else {
+                        cur.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(cur.toString());
+                    cur.setLength(0);
+                } else {
+                    cur.append(c);
+                }
+            }
+            fields.add(cur.toString());
+            return fields;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.ma4z.betterlogin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+/**
+ * Removes accounts that have not logged in for a configured number of days, or with {@code dryRun} only
+ * lists them in a CSV report.
+ * <p>
+ * Candidates are read in (last login, UUID) order by key, so each page is one index range scan and
+ * removing rows never shifts the next page. Whitelisted names and players who are connected are skipped.
+ * Each batch is one short write transaction that re-checks the last login, so a player who logs in
+ * while the prune runs keeps the account. The batch shrinks whenever a transaction takes longer than
+ * {@code maxLockMillis} and grows back while they stay well below it. Between batches the job pauses,
+ * and it waits while the write queue is longer than {@code maxPendingWrites}, so logins always go first.
+ */
+final class AccountPrune implements Runnable {
+
+    private static final long REPORT_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ISO_LOCAL_DATE.withZone(ZoneId.systemDefault());
+
+    private final DB db;
+    private final long inactiveMillis;
+    private final boolean archive;
+    private final boolean dryRun;
+    private final Set<String> whitelist;
+    private final Predicate<String> online;
+    private final int maxBatch;
+    private final long maxLockMillis;
+    private final long pauseMillis;
+    private final int maxPendingWrites;
+    private final File reportFile;
+    private final Logger logger;
+    private final Consumer<String> report;
+    private final Metrics metrics;
+    private volatile boolean cancelled;
+
+    private long scanned;
+    private long kept;
+    private long removed;
+
+    /**
+     * @param whitelist normalized usernames that are never pruned
+     * @param online    true for the uuid of an account row whose player is connected; called off the main thread
+     * @param reportFile where a dry run lists the accounts it would remove
+     */
+    AccountPrune(DB db, int inactiveDays, boolean archive, boolean dryRun, Set<String> whitelist, Predicate<String> online,
+                 int maxBatch, long maxLockMillis, long pauseMillis, int maxPendingWrites, File reportFile,
+                 Logger logger, Metrics metrics, Consumer<String> report) {
+        this.db = db;
+        this.inactiveMillis = TimeUnit.DAYS.toMillis(Math.max(1, inactiveDays));
+        this.archive = archive;
+        this.dryRun = dryRun;
+        this.whitelist = whitelist;
+        this.online = online;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.maxLockMillis = Math.max(1, maxLockMillis);
+        this.pauseMillis = Math.max(0, pauseMillis);
+        this.maxPendingWrites = Math.max(0, maxPendingWrites);
+        this.reportFile = reportFile;
+        this.logger = logger;
+        this.metrics = metrics;
+        this.report = report;
+    }
+
+    /** Stops after the batch in flight. */
+    void cancel() {
+        cancelled = true;
+    }
+
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        long cutoff = System.currentTimeMillis() - inactiveMillis;
+        report.accept((dryRun ? "Dry run: looking for" : archive ? "Archiving" : "Deleting")
+                + " accounts without a login since " + DATE.format(Instant.ofEpochMilli(cutoff)) + ".");
+        try (PrintWriter out = dryRun ? new PrintWriter(Files.newBufferedWriter(reportFile.toPath(), StandardCharsets.UTF_8)) : null) {
+            if (out != null) out.println("username,uuid,last_login");
+            long afterLogin = Long.MIN_VALUE;
+            String afterUuid = "";
+            int batch = Math.min(maxBatch, 100);
+            long lastReport = System.nanoTime();
+            while (!cancelled) {
+                List<DB.InactiveAccount> page = db.inactiveAccounts(cutoff, afterLogin, afterUuid, batch).join();
+                if (page.isEmpty()) break;
+                DB.InactiveAccount last = page.get(page.size() - 1);
+                afterLogin = last.lastLogin;
+                afterUuid = last.uuid;
+                scanned += page.size();
+
+                List<DB.InactiveAccount> victims = new ArrayList<>(page.size());
+                for (DB.InactiveAccount a : page) {
+                    if (whitelist.contains(DB.normalize(a.username)) || online.test(a.uuid)) {
+                        kept++;
+                    } else {
+                        victims.add(a);
+                    }
+                }
+                if (out != null) {
+                    for (DB.InactiveAccount a : victims) {
+                        out.println(a.username + "," + a.uuid + "," + DATE.format(Instant.ofEpochMilli(a.lastLogin)));
+                    }
+                    removed += victims.size();
+                    continue;
+                }
+                if (victims.isEmpty()) continue;
+
+                awaitQuietWriter();
+                long t = System.nanoTime();
+                int n = db.pruneAccounts(victims, cutoff, archive).join();
+                long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t);
+                removed += n;
+                kept += victims.size() - n;
+                metrics.add(archive ? "prune.archived" : "prune.deleted", n);
+                // the round trip bounds the time the transaction held the write lock
+                if (millis > maxLockMillis) {
+                    batch = Math.max(1, batch / 2);
+                } else if (millis * 4 < maxLockMillis) {
+                    batch = Math.min(maxBatch, batch * 2);
+                }
+                if (System.nanoTime() - lastReport >= REPORT_INTERVAL) {
+                    lastReport = System.nanoTime();
+                    report.accept(String.format(Locale.ROOT, "Pruning: %d inactive accounts scanned, %d removed so far.", scanned, removed));
+                }
+                if (pauseMillis > 0) Thread.sleep(pauseMillis);
+            }
+            report.accept(summary(start, cancelled ? "Prune cancelled" : dryRun ? "Dry run finished" : "Prune finished"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            report.accept(summary(start, "Prune interrupted"));
+        } catch (Exception e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            logger.severe("Pruning inactive accounts failed: " + cause);
+            report.accept(summary(start, "Prune failed (" + cause.getMessage() + ")"));
+        }
+    }
+
+    // logins and registrations share the writer; let them drain first
+    private void awaitQuietWriter() throws InterruptedException {
+        while (!cancelled && db.pendingWrites() > maxPendingWrites) {
+            Thread.sleep(Math.max(10, pauseMillis));
+        }
+    }
+
+    private String summary(long start, String what) {
+        double secs = Math.max(1, System.nanoTime() - start) / 1e9;
+        String verb = dryRun ? "would be " + (archive ? "archived" : "deleted") : archive ? "archived" : "deleted";
+        String line = String.format(Locale.ROOT, "%s: %d inactive accounts, %d %s, %d whitelisted or online (%.1fs).",
+                what, scanned, removed, verb, kept, secs);
+        return dryRun ? line + " List written to " + reportFile.getName() + "." : line;
+    }
+}
@@ -0,0 +1,288 @@
+package com.ma4z.betterlogin;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Append-only journal of authentication events.
+ * <p>
+ * {@link #record} may be called from any thread and never blocks or allocates: it claims a slot of a
+ * preallocated ring with one CAS, fills it in and publishes it. When the ring is full the event is dropped
+ * and counted instead of waiting. A single thread drains the ring every few milliseconds into memory-mapped
+ * segment files of a fixed size in {@code audit/}; when one is full the next is started and only the newest
+ * {@code keepSegments} are kept. {@link AuditReader} reads them back.
+ * <p>
+ * Segment layout: the magic {@code BLA1} and 4 reserved bytes, then records back to back. A record is
+ * {@code length(2) | type(1) | time(8) | hasUuid(1) [| msb(8) | lsb(8)] | ipLength(1) | ip | nameLength(1) |
+ * name | actorLength(1) | actor}, big-endian, strings in UTF-8. The length is written last, so a length of
+ * zero marks the end of the segment even after a crash in the middle of a record.
+ */
+final class AuditLog {
+
+    /** Stored by ordinal: only ever append new types. */
+    enum Type {
+        REGISTER, LOGIN, LOGIN_FAILED, LOGIN_PREMIUM, LOGIN_RESUMED, LOGOUT, LOCKOUT, TIMEOUT,
+        UNREGISTER, PASSWORD_CHANGED, PASSWORD_CHANGE_FAILED, PASSWORD_SET, PASSWORD_CLEARED, PREMIUM_MARKED
+    }
+
+    static final int MAGIC = 0x424C4131;
+    static final int HEADER = 8;
+    static final String PREFIX = "audit-";
+    static final String SUFFIX = ".seg";
+    // type, time, uuid flag and uuid, three length bytes, a 16-byte address and two 255-byte strings
+    private static final int MAX_RECORD = 2 + 1 + 8 + 1 + 16 + 3 + 16 + 255 + 255;
+    private static final long DRAIN_INTERVAL = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private static final class Slot {
+        // sequence + 1 once the event with that sequence is filled in
+        volatile long published;
+        long time;
+        Type type;
+        long msb;
+        long lsb;
+        boolean hasUuid;
+        InetAddress ip;
+        String name;
+        String actor;
+    }
+
+    private final Slot[] ring;
+    private final int mask;
+    // next sequence to claim
+    private final AtomicLong claimed = new AtomicLong();
+    // every sequence below this has been written out; only the drain thread writes it
+    private volatile long consumed;
+    private final LongAdder dropped = new LongAdder();
+
+    private final File dir;
+    private final long segmentSize;
+    private final int keepSegments;
+    private final Logger logger;
+    private final Thread drainer;
+    private volatile boolean running = true;
+    // set once the drain thread has exited; later events are dropped
+    private volatile boolean stopped;
+
+    // drain thread only
+    private final ByteBuffer scratch = ByteBuffer.allocate(MAX_RECORD);
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long segmentNumber;
+
+    /** Opens the newest segment in {@code dir} to append to, or starts the first one. */
+    AuditLog(File dir, int bufferSize, long segmentSize, int keepSegments, Logger logger) throws IOException {
+        int n = Integer.highestOneBit(Math.max(2, bufferSize - 1)) << 1;
+        this.ring = new Slot[n];
+        for (int i = 0; i < n; i++) ring[i] = new Slot();
+        this.mask = n - 1;
+        this.dir = dir;
+        this.segmentSize = Math.max(64 * 1024, segmentSize);
+        this.keepSegments = Math.max(1, keepSegments);
+        this.logger = logger;
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        File[] existing = AuditReader.segments(dir);
+        if (existing.length == 0) {
+            openSegment(1);
+        } else {
+            File last = existing[existing.length - 1];
+            resume(last, AuditReader.number(last));
+        }
+        this.drainer = new Thread(this::drainLoop, "BetterLogin-Audit");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * Queues an event; any of {@code uuid}, {@code ip} and {@code actor} may be null. Never blocks: if the
+     * writer has fallen a whole ring behind, the event is dropped and counted.
+     */
+    void record(Type type, UUID uuid, String name, InetAddress ip, String actor) {
+        if (stopped) {
+            dropped.increment();
+            return;
+        }
+        long seq;
+        do {
+            seq = claimed.get();
+            if (seq - consumed >= ring.length) {
+                dropped.increment();
+                return;
+            }
+        } while (!claimed.compareAndSet(seq, seq + 1));
+        Slot s = ring[(int) seq & mask];
+        s.time = System.currentTimeMillis();
+        s.type = type;
+        s.hasUuid = uuid != null;
+        if (uuid != null) {
+            s.msb = uuid.getMostSignificantBits();
+            s.lsb = uuid.getLeastSignificantBits();
+        }
+        s.ip = ip;
+        s.name = name;
+        s.actor = actor;
+        s.published = seq + 1;
+    }
+
+    /** Events dropped because the ring was full. */
+    long dropped() {
+        return dropped.sum();
+    }
+
+    /** Events waiting to be written. */
+    long queued() {
+        return stopped ? 0 : claimed.get() - consumed;
+    }
+
+    File directory() {
+        return dir;
+    }
+
+    /** Writes out everything queued so far and closes the current segment. */
+    void close() {
+        running = false;
+        LockSupport.unpark(drainer);
+        try {
+            drainer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /* ----------------------------- Drain thread ----------------------------- */
+
+    private void drainLoop() {
+        try {
+            while (true) {
+                // read before draining, so events published before close() are never left behind
+                boolean stop = !running;
+                int n = drain();
+                if (stop && n == 0) break;
+                if (n == 0) LockSupport.parkNanos(DRAIN_INTERVAL);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.severe("Audit journal stopped: " + e);
+        } finally {
+            stopped = true;
+            closeSegment();
+        }
+    }
+
+    private int drain() throws IOException {
+        long next = consumed;
+        int n = 0;
+        for (Slot s = ring[(int) next & mask]; s.published == next + 1; s = ring[(int) next & mask]) {
+            encode(s);
+            s.ip = null;
+            s.name = null;
+            s.actor = null;
+            consumed = ++next;
+            n++;
+        }
+        return n;
+    }
+
+    private void encode(Slot s) throws IOException {
+        ByteBuffer b = scratch;
+        b.clear();
+        b.putShort((short) 0);
+        b.put((byte) s.type.ordinal());
+        b.putLong(s.time);
+        b.put((byte) (s.hasUuid ? 1 : 0));
+        if (s.hasUuid) b.putLong(s.msb).putLong(s.lsb);
+        byte[] ip = s.ip == null ? null : s.ip.getAddress();
+        b.put((byte) (ip == null ? 0 : ip.length));
+        if (ip != null) b.put(ip);
+        putString(b, s.name);
+        putString(b, s.actor);
+        int length = b.position();
+        if (segment.remaining() < length) rotate();
+        int at = segment.position();
+        segment.position(at + 2);
+        segment.put(b.array(), 2, length - 2);
+        // a record only exists once its length is there
+        segment.putShort(at, (short) length);
+        segment.position(at + length);
+    }
+
+    /** UTF-8 without an intermediate array, cut at 255 bytes on a character boundary. */
+    private static void putString(ByteBuffer b, String s) {
+        int lengthAt = b.position();
+        b.put((byte) 0);
+        if (s == null) return;
+        int start = b.position();
+        for (int i = 0; i < s.length(); i++) {
+            int c = s.codePointAt(i);
+            int size = c < 0x80 ? 1 : c < 0x800 ? 2 : c < 0x10000 ? 3 : 4;
+            if (b.position() - start + size > 255) break;
+            if (size == 1) {
+                b.put((byte) c);
+            } else if (size == 2) {
+                b.put((byte) (0xC0 | c >> 6)).put((byte) (0x80 | c & 0x3F));
+            } else if (size == 3) {
+                b.put((byte) (0xE0 | c >> 12)).put((byte) (0x80 | c >> 6 & 0x3F)).put((byte) (0x80 | c & 0x3F));
+            } else {
+                b.put((byte) (0xF0 | c >> 18)).put((byte) (0x80 | c >> 12 & 0x3F)).put((byte) (0x80 | c >> 6 & 0x3F)).put((byte) (0x80 | c & 0x3F));
+                i++;
+            }
+        }
+        b.put(lengthAt, (byte) (b.position() - start));
+    }
+
+    private void rotate() throws IOException {
+        closeSegment();
+        openSegment(segmentNumber + 1);
+        File[] all = AuditReader.segments(dir);
+        for (int i = 0; i < all.length - keepSegments; i++) {
+            if (!all[i].delete()) logger.warning("Could not delete old audit segment " + all[i].getName());
+        }
+    }
+
+    private void openSegment(long number) throws IOException {
+        File file = new File(dir, AuditReader.name(number));
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        segment.putInt(0, MAGIC);
+        segment.position(HEADER);
+        segmentNumber = number;
+    }
+
+    /** Continues after the last complete record of an existing segment, or starts a new one if it is unreadable. */
+    private void resume(File file, long number) throws IOException {
+        long size = file.length();
+        if (size < HEADER + MAX_RECORD) {
+            openSegment(number + 1);
+            return;
+        }
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        segmentNumber = number;
+        if (segment.getInt(0) != MAGIC) {
+            closeSegment();
+            openSegment(number + 1);
+            return;
+        }
+        segment.position(AuditReader.end(segment));
+    }
+
+    private void closeSegment() {
+        if (segment == null) return;
+        segment.force();
+        segment = null;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.warning("Could not close audit segment: " + e.getMessage());
+        }
+    }
+}
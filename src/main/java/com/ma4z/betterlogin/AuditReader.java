@@ -0,0 +1,192 @@
+package com.ma4z.betterlogin;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Reads the segments written by {@link AuditLog}. Safe to use while the journal is being written: the
+ * segment in use is read up to its last complete record. Needs nothing from the server, so
+ * {@link AuditTool} can use it outside of one.
+ */
+final class AuditReader {
+
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+    private static final AuditLog.Type[] TYPES = AuditLog.Type.values();
+
+    /** One decoded record; fields the event did not carry are null. */
+    static final class Entry {
+        long time;
+        // null for a type written by a newer version
+        AuditLog.Type type;
+        UUID uuid;
+        String name;
+        String ip;
+        String actor;
+
+        /** True if {@code who} is this entry's UUID, player name or actor (names case-insensitive). */
+        boolean concerns(String who) {
+            return who.equalsIgnoreCase(name) || who.equalsIgnoreCase(actor) || (uuid != null && who.equalsIgnoreCase(uuid.toString()));
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(TIME.format(Instant.ofEpochMilli(time))).append(' ').append(typeName());
+            if (name != null) sb.append(' ').append(name);
+            if (uuid != null) sb.append(" (").append(uuid).append(')');
+            if (ip != null) sb.append(" from ").append(ip);
+            if (actor != null) sb.append(" by ").append(actor);
+            return sb.toString();
+        }
+
+        String toJson() {
+            StringBuilder sb = new StringBuilder("{\"time\":").append(time).append(",\"type\":\"").append(typeName()).append('"');
+            if (uuid != null) sb.append(",\"uuid\":\"").append(uuid).append('"');
+            if (name != null) sb.append(",\"name\":").append(quote(name));
+            if (ip != null) sb.append(",\"ip\":\"").append(ip).append('"');
+            if (actor != null) sb.append(",\"actor\":").append(quote(actor));
+            return sb.append('}').toString();
+        }
+
+        String typeName() {
+            return type == null ? "UNKNOWN" : type.name();
+        }
+    }
+
+    private AuditReader() {}
+
+    /** Segment files in {@code dir}, oldest first. */
+    static File[] segments(File dir) {
+        File[] files = dir.listFiles((d, n) -> n.startsWith(AuditLog.PREFIX) && n.endsWith(AuditLog.SUFFIX) && number(n) > 0);
+        if (files == null) return new File[0];
+        Arrays.sort(files, Comparator.comparingLong(AuditReader::number));
+        return files;
+    }
+
+    static String name(long number) {
+        return AuditLog.PREFIX + String.format(Locale.ROOT, "%08d", number) + AuditLog.SUFFIX;
+    }
+
+    static long number(File segment) {
+        return number(segment.getName());
+    }
+
+    private static long number(String name) {
+        try {
+            return Long.parseLong(name.substring(AuditLog.PREFIX.length(), name.length() - AuditLog.SUFFIX.length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+
+    /** Offset just past the last complete record of a segment's contents. */
+    static int end(ByteBuffer segment) {
+        int at = AuditLog.HEADER;
+        while (at + 2 <= segment.limit()) {
+            int length = segment.getShort(at) & 0xffff;
+            if (length < 2 || at + length > segment.limit()) break;
+            at += length;
+        }
+        return at;
+    }
+
+    /** Every record of one segment, oldest first. Throws {@link IOException} if it is not a journal segment. */
+    static void scan(File segment, Consumer<Entry> out) throws IOException {
+        ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(segment.toPath()));
+        if (b.limit() < AuditLog.HEADER || b.getInt(0) != AuditLog.MAGIC) throw new IOException(segment.getName() + " is not an audit segment");
+        int end = end(b);
+        int at = AuditLog.HEADER;
+        while (at < end) {
+            int length = b.getShort(at) & 0xffff;
+            b.position(at + 2);
+            out.accept(decode(b));
+            at += length;
+        }
+    }
+
+    /**
+     * The last {@code limit} matching entries, oldest first. Segments are read newest first and the scan
+     * stops at the first segment that completes the set.
+     */
+    static List<Entry> recent(File dir, Predicate<Entry> filter, int limit) throws IOException {
+        Deque<Entry> found = new ArrayDeque<>(limit);
+        File[] all = segments(dir);
+        for (int i = all.length - 1; i >= 0 && found.size() < limit; i--) {
+            List<Entry> matches = new ArrayList<>();
+            try {
+                scan(all[i], e -> {
+                    if (filter.test(e)) matches.add(e);
+                });
+            } catch (NoSuchFileException e) {
+                // rotated away since the listing; everything older is gone too
+                break;
+            }
+            for (int j = matches.size() - 1; j >= 0 && found.size() < limit; j--) {
+                found.addFirst(matches.get(j));
+            }
+        }
+        return new ArrayList<>(found);
+    }
+
+    private static Entry decode(ByteBuffer b) throws IOException {
+        Entry e = new Entry();
+        int type = b.get() & 0xff;
+        e.type = type < TYPES.length ? TYPES[type] : null;
+        e.time = b.getLong();
+        if (b.get() != 0) e.uuid = new UUID(b.getLong(), b.getLong());
+        int ipLength = b.get() & 0xff;
+        if (ipLength > 0) {
+            byte[] ip = new byte[ipLength];
+            b.get(ip);
+            try {
+                e.ip = InetAddress.getByAddress(ip).getHostAddress();
+            } catch (UnknownHostException ex) {
+                throw new IOException("Corrupt address in audit record", ex);
+            }
+        }
+        e.name = string(b);
+        e.actor = string(b);
+        return e;
+    }
+
+    private static String string(ByteBuffer b) {
+        int length = b.get() & 0xff;
+        if (length == 0) return null;
+        String s = new String(b.array(), b.position(), length, StandardCharsets.UTF_8);
+        b.position(b.position() + length);
+        return s;
+    }
+
+    private static String quote(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
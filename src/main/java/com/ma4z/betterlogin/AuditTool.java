@@ -0,0 +1,66 @@
+package com.ma4z.betterlogin;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+
+/**
+ * Command-line query tool for the audit journal, runnable without a server:
+ * <pre>
+ * java -cp BetterLoginSecurity.jar com.ma4z.betterlogin.AuditTool [--dir DIR] [--player NAME|UUID]
+ *      [--type TYPE[,TYPE...]] [--since yyyy-MM-dd] [--limit N] [--json]
+ * </pre>
+ * Prints matching events oldest first, one per line, as text or as JSON lines. {@code --dir} defaults to
+ * {@code plugins/BetterLoginSecurity/audit}; {@code --limit} keeps only the newest N matches.
+ */
+public final class AuditTool {
+
+    private AuditTool() {}
+
+    public static void main(String[] args) throws IOException {
+        File dir = new File("plugins/BetterLoginSecurity/audit");
+        List<Predicate<AuditReader.Entry>> filters = new ArrayList<>();
+        int limit = Integer.MAX_VALUE;
+        boolean json = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--dir" -> dir = new File(args[++i]);
+                case "--player" -> {
+                    String who = args[++i];
+                    filters.add(e -> e.concerns(who));
+                }
+                case "--type" -> {
+                    List<String> types = List.of(args[++i].toUpperCase(Locale.ROOT).split(","));
+                    filters.add(e -> types.contains(e.typeName()));
+                }
+                case "--since" -> {
+                    long since = LocalDate.parse(args[++i]).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+                    filters.add(e -> e.time >= since);
+                }
+                case "--limit" -> limit = Integer.parseInt(args[++i]);
+                case "--json" -> json = true;
+                default -> {
+                    System.err.println("Unknown option " + args[i]);
+                    System.err.println("Usage: AuditTool [--dir DIR] [--player NAME|UUID] [--type TYPE[,TYPE...]] [--since yyyy-MM-dd] [--limit N] [--json]");
+                    System.exit(2);
+                    return;
+                }
+            }
+        }
+        if (!dir.isDirectory()) {
+            System.err.println("No audit journal in " + dir);
+            System.exit(1);
+            return;
+        }
+        Predicate<AuditReader.Entry> filter = e -> true;
+        for (Predicate<AuditReader.Entry> f : filters) filter = filter.and(f);
+        for (AuditReader.Entry e : AuditReader.recent(dir, filter, limit)) {
+            System.out.println(json ? e.toJson() : e.toString());
+        }
+    }
+}
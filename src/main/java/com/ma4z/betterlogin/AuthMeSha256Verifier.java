@@ -0,0 +1,72 @@
+package com.ma4z.betterlogin;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * AuthMe's default {@code $SHA$salt$hash} scheme, where hash is {@code sha256hex(sha256hex(password) + salt)}.
+ * <p>
+ * Verify only: imported accounts keep their AuthMe hash until the player's next login, which re-hashes the
+ * password with the configured scheme because that is never this one.
+ * Layout: {@code id(1) | saltLength(1) | salt (ASCII) | digest(32)}.
+ */
+final class AuthMeSha256Verifier implements PasswordVerifier {
+
+    static final int ID = 4;
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    @Override
+    public int id() {
+        return ID;
+    }
+
+    @Override
+    public String name() {
+        return "authme-sha256";
+    }
+
+    @Override
+    public boolean verify(char[] password, byte[] stored) {
+        if (stored == null || stored.length < 3 || stored[0] != ID) return false;
+        int saltLength = stored[1] & 0xff;
+        if (stored.length != 2 + saltLength + 32) return false;
+        String salt = new String(stored, 2, saltLength, StandardCharsets.US_ASCII);
+        byte[] expected = new byte[32];
+        System.arraycopy(stored, 2 + saltLength, expected, 0, 32);
+        return MessageDigest.isEqual(expected, digest(password, salt));
+    }
+
+    /**
+     * Converts {@code $SHA$salt$hexdigest} to the binary layout. Throws {@link IllegalArgumentException}
+     * if the string is not in that format.
+     */
+    static byte[] fromAuthMe(String hash) {
+        String[] parts = hash.split("\\$");
+        // "", "SHA", salt, digest
+        if (parts.length != 4 || !parts[1].equals("SHA") || parts[2].length() > 255 || parts[3].length() != 64) {
+            throw new IllegalArgumentException("Not an AuthMe SHA256 hash");
+        }
+        byte[] salt = parts[2].getBytes(StandardCharsets.US_ASCII);
+        return ByteBuffer.allocate(2 + salt.length + 32)
+                .put((byte) ID).put((byte) salt.length).put(salt).put(HEX.parseHex(parts[3]))
+                .array();
+    }
+
+    private static byte[] digest(char[] password, String salt) {
+        MessageDigest sha = sha256();
+        String inner = HEX.formatHex(sha.digest(new String(password).getBytes(StandardCharsets.UTF_8)));
+        return sha.digest((inner + salt).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -12,26 +12,36 @@ import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
 import org.bukkit.event.Listener;
 import org.bukkit.event.entity.EntityDamageEvent;
 import org.bukkit.event.inventory.InventoryClickEvent;
 import org.bukkit.event.player.AsyncPlayerChatEvent;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
 import org.bukkit.event.player.PlayerMoveEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.event.player.PlayerTeleportEvent;
 import org.bukkit.inventory.InventoryView;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
 
-import javax.crypto.SecretKeyFactory;
-import javax.crypto.spec.PBEKeySpec;
 import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
-import java.security.SecureRandom;
-import java.sql.*;
+import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
 public class BetterLoginSecurity extends JavaPlugin implements Listener {
@@ -39,22 +49,58 @@ public class BetterLoginSecurity extends JavaPlugin implements Listener {
     // Configurable fields
     private File dbFile;
     private DB db;
+    private HashingPool hashing;
+    private JoinAdmission joinQueue;
+    private Limbo limbo;
+    private RateLimiter limiter;
+    private SessionResumption resumption;
+    private File resumptionFile;
+    // running /betterlogin import, if any; main thread only
+    private AccountImport accountImport;
+    private Thread importThread;
+    // running inactive-account prune, if any; main thread only
+    private AccountPrune accountPrune;
+    private Thread pruneThread;
+    // backups and upkeep of passwords.db; null for shared storage
+    private Maintenance maintenance;
+    // journal of logins, failures and account changes; null when disabled
+    private AuditLog audit;
+    // scheme and cost for new hashes; replaced once startup calibration finishes
+    private volatile PasswordHasher hasher;
+    private int minPasswordLength;
+    // breached and common passwords; null when the check is off
+    private BreachedPasswords breached;
 
     // runtime state
-    // players who have successfully authenticated this session
-    private final Set<UUID> authenticated = Collections.newSetFromMap(new ConcurrentHashMap<>());
-    // players who must register
-    private final Set<UUID> mustRegister = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final Metrics metrics = new Metrics();
+    // join queue depth as of the last tick, for metrics read off the main thread
+    private volatile int joinDepth;
+    // one session per connected player: auth state, prefetched account row and location to restore
+    private final Sessions sessions = new Sessions();
 
-    // store last known location to restore after login
-    private final Map<UUID, Location> savedLocations = new ConcurrentHashMap<>();
+    // movement/damage/chat guards, registered only while someone still has to log in
+    private final GuardListener guards = new GuardListener(sessions::isAuthenticated, metrics);
+    private boolean guardsRegistered = false;
+    private BukkitTask guardRelease;
+
+    // login timeouts and reminders for unauthenticated players, advanced by the per-tick task
+    private TimingWheel<Player> loginTimers;
+    private long loginTimeoutTicks;
+    private long loginReminderTicks;
+    private volatile int pendingLoginTimers;
 
     // plugin flags stored in config
     // disable login for cracked (best-effort only)
-    private boolean disableCrackLogin = false;
+    // read at pre-login, which runs off the main thread
+    private volatile boolean disableCrackLogin = false;
 
     // NOTE: premium logic is best-effort and documented below
 
+    // outcome of an off-thread account operation, handled back on the main thread
+    private enum Outcome { OK, NO_ACCOUNT, ACCOUNT_EXISTS, WRONG_PASSWORD, BREACHED_PASSWORD }
+
+    private static final String BREACHED_MESSAGE = "&cThat password appears in known data breaches or common-password lists. Please choose another one.";
+
     @Override
     public void onEnable() {
         getLogger().info("BetterLoginSecurity enabling...");
@@ -64,7 +110,9 @@ public class BetterLoginSecurity extends JavaPlugin implements Listener {
 
         dbFile = new File(dataFolder, "passwords.db");
         try {
-            db = new DB(dbFile.getAbsolutePath());
+            AccountCache cache = new AccountCache(getConfig().getInt("storage.cache.max-size", 10000),
+                    getConfig().getLong("storage.cache.expire-minutes", 30), TimeUnit.MINUTES);
+            db = openStorage(cache);
             db.prepare();
         } catch (SQLException e) {
             getLogger().severe("Failed to initialize database: " + e.getMessage());
@@ -72,17 +120,115 @@ public class BetterLoginSecurity extends JavaPlugin implements Listener {
             return;
         }
 
+        limbo = new Limbo(this, getConfig().getString("limbo.mode", "spawn"), getConfig().getString("limbo.world-name", "betterlogin_limbo"));
+        limbo.enable();
+
+        hashing = new HashingPool(getConfig().getInt("hashing.threads", 2), getConfig().getInt("hashing.queue-size", 64), metrics);
+        FileConfiguration cfg = getConfig();
+        configureHashing(cfg);
+        configurePasswordPolicy(cfg);
+
+        // password attempts are throttled before they reach the hashing pool
+        limiter = new RateLimiter(
+                cfg.getInt("rate-limit.per-ip.capacity", 10), cfg.getInt("rate-limit.per-ip.refill-per-minute", 10),
+                cfg.getInt("rate-limit.per-player.capacity", 5), cfg.getInt("rate-limit.per-player.refill-per-minute", 5),
+                cfg.getInt("rate-limit.max-concurrent-hashes", 4),
+                cfg.getInt("rate-limit.lockout.failures", 5), cfg.getLong("rate-limit.lockout.base-seconds", 30),
+                cfg.getLong("rate-limit.lockout.max-seconds", 3600),
+                cfg.getInt("rate-limit.max-tracked", 50000), cfg.getLong("rate-limit.expire-minutes", 30));
+
+        // players that rejoin from the same IP shortly after leaving skip /login
+        resumption = new SessionResumption(cfg.getBoolean("session-resume.enabled", false) ? cfg.getLong("session-resume.window-seconds", 300) : 0);
+        resumptionFile = new File(dataFolder, "sessions.dat");
+        try {
+            resumption.load(resumptionFile);
+        } catch (IOException e) {
+            getLogger().warning("Could not load saved sessions: " + e.getMessage());
+        }
+        Bukkit.getScheduler().runTaskTimerAsynchronously(this, () -> {
+            limiter.sweep();
+            resumption.purge();
+        }, 1200L, 1200L);
+
+        // write-behind: buffered last locations are committed in batches
+        long flushTicks = Math.max(1L, getConfig().getLong("storage.location-flush.interval-ticks", 100L));
+        Bukkit.getScheduler().runTaskTimerAsynchronously(this, () -> db.flushLocations(), flushTicks, flushTicks);
+
+        // online backups, integrity check, ANALYZE and vacuum; checked once a minute, run on their own thread
+        if (cfg.getBoolean("maintenance.enabled", true)) {
+            if (db instanceof SqliteDB sqlite) {
+                try {
+                    maintenance = new Maintenance(sqlite, new File(dataFolder, cfg.getString("maintenance.backup.folder", "backups")),
+                            cfg.getLong("maintenance.backup.interval-hours", 6), cfg.getInt("maintenance.backup.keep", 8),
+                            cfg.getString("maintenance.window", "04:00-06:00"), cfg.getInt("maintenance.max-pending-writes", 50),
+                            cfg.getInt("maintenance.vacuum-pages-per-step", 1000), getLogger(), metrics);
+                    Bukkit.getScheduler().runTaskTimerAsynchronously(this, maintenance::poll, 1200L, 1200L);
+                } catch (IllegalArgumentException e) {
+                    getLogger().warning(e.getMessage() + "; database maintenance is off.");
+                }
+            } else {
+                getLogger().info("Database maintenance only applies to SQLite storage; back up the shared database with its own tools.");
+            }
+        }
+
+        // who logged in, failed, registered or was reset; written by a background thread
+        if (cfg.getBoolean("audit.enabled", true)) {
+            try {
+                audit = new AuditLog(new File(dataFolder, cfg.getString("audit.folder", "audit")), cfg.getInt("audit.buffer-size", 8192),
+                        cfg.getLong("audit.segment-size-kb", 4096) * 1024L, cfg.getInt("audit.keep-segments", 16), getLogger());
+            } catch (IOException e) {
+                getLogger().warning("Could not open the audit journal, auditing is off: " + e.getMessage());
+            }
+        }
+
+        // inactive accounts are pruned on a schedule when enabled, otherwise only by /betterlogin prune
+        if (cfg.getBoolean("prune.enabled", false)) {
+            long pruneTicks = Math.max(1L, cfg.getLong("prune.interval-hours", 24)) * 72000L;
+            Bukkit.getScheduler().runTaskTimer(this, () -> startPrune(Bukkit.getConsoleSender(), false), 6000L, pruneTicks);
+        }
+
+        // join-state work is drained under a per-tick time budget instead of one task per join
+        joinQueue = new JoinAdmission(p -> {
+            long start = System.nanoTime();
+            handlePlayerJoinState(p);
+            metrics.mainThread("main.join-state", start);
+        }, getConfig().getDouble("join.tick-budget-ms", 5.0), 2);
+        loginTimeoutTicks = Math.max(0L, cfg.getLong("login-timeout.seconds", 60)) * 20L;
+        loginReminderTicks = Math.max(0L, cfg.getLong("login-timeout.reminder-seconds", 10)) * 20L;
+        loginTimers = new TimingWheel<>(512, this::onLoginTimer);
+        Bukkit.getScheduler().runTaskTimer(this, () -> {
+            joinQueue.tick();
+            long timersStart = System.nanoTime();
+            loginTimers.tick();
+            pendingLoginTimers = loginTimers.size();
+            metrics.mainThread("main.login-timers", timersStart);
+            joinDepth = joinQueue.depth();
+            // closes the books on the plugin's main-thread time for the tick that just ran
+            metrics.endTick();
+        }, 1L, 1L);
+        int depthWarn = getConfig().getInt("join.queue-warn-depth", 100);
+        Bukkit.getScheduler().runTaskTimer(this, () -> {
+            int depth = joinQueue.depth();
+            if (depth >= depthWarn) {
+                getLogger().info("Join queue depth: " + depth + " (peak " + joinQueue.peakDepth() + ")");
+            }
+        }, 200L, 200L);
+
         getServer().getPluginManager().registerEvents(this, this);
+        refreshGuards(0);
 
         // register commands
-        this.getCommand("login").setExecutor(new CmdLogin());
-        this.getCommand("logout").setExecutor(new CmdLogout());
-        this.getCommand("register").setExecutor(new CmdRegister());
-        this.getCommand("unregister").setExecutor(new CmdUnregister());
-        this.getCommand("changepassword").setExecutor(new CmdChangePassword());
-        this.getCommand("setpassword").setExecutor(new CmdSetPassword());
-        this.getCommand("premiumlogin").setExecutor(new CmdPremiumLogin());
-        this.getCommand("disablelogin").setExecutor(new CmdDisableLogin());
+        registerCommand("login", new CmdLogin());
+        registerCommand("logout", new CmdLogout());
+        registerCommand("register", new CmdRegister());
+        registerCommand("unregister", new CmdUnregister());
+        registerCommand("changepassword", new CmdChangePassword());
+        registerCommand("setpassword", new CmdSetPassword());
+        registerCommand("premiumlogin", new CmdPremiumLogin());
+        registerCommand("disablelogin", new CmdDisableLogin());
+        registerCommand("betterlogin", new CmdBetterLogin());
+
+        setupMetrics(cfg);
 
         disableCrackLogin = getConfig().getBoolean("disableCrackLogin", false);
 
@@ -91,7 +237,7 @@ public class BetterLoginSecurity extends JavaPlugin implements Listener {
             @Override
             public void run() {
                 for (Player p : Bukkit.getOnlinePlayers()) {
-                    handlePlayerJoinState(p);
+                    joinQueue.enqueue(p, false);
                 }
             }
         }.runTaskLater(this, 10L);
@@ -102,122 +248,504 @@ public class BetterLoginSecurity extends JavaPlugin implements Listener {
     @Override
     public void onDisable() {
         getLogger().info("BetterLoginSecurity disabling...");
+        metrics.unregisterMBean();
+        if (hashing != null) hashing.shutdown();
+        if (limbo != null) limbo.disable();
+        if (db == null) return;
+        if (importThread != null) {
+            // let the batch in flight commit so the next run resumes after it
+            accountImport.cancel();
+            try {
+                importThread.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (pruneThread != null) {
+            accountPrune.cancel();
+            try {
+                pruneThread.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // players are only kicked after plugins are disabled, so save positions now
+        for (Player p : Bukkit.getOnlinePlayers()) {
+            Session session = sessions.get(p.getUniqueId());
+            if (session != null && session.is(Session.State.AUTHENTICATED)) {
+                db.saveLastLocation(p.getUniqueId().toString(), DB.StoredLocation.of(p.getLocation()));
+                if (resumption != null && !session.passwordChanged) resumption.remember(p.getUniqueId(), address(p));
+            }
+        }
+        if (resumption != null) {
+            try {
+                resumption.save(resumptionFile);
+            } catch (IOException e) {
+                getLogger().warning("Could not save sessions: " + e.getMessage());
+            }
+        }
+        if (maintenance != null) maintenance.shutdown();
+        // close() flushes buffered locations and drains queued writes before releasing the connections
+        db.close();
+        if (audit != null) audit.close();
+    }
+
+    // every command's synchronous part counts towards the plugin's main-thread time
+    private void registerCommand(String name, CommandExecutor executor) {
+        getCommand(name).setExecutor((sender, command, label, args) -> {
+            long start = System.nanoTime();
+            try {
+                return executor.onCommand(sender, command, label, args);
+            } finally {
+                metrics.mainThread("main.command." + name, start);
+            }
+        });
+    }
+
+    /** The backend named by storage.type. Throws {@link SQLException} for an unknown type. */
+    private DB openStorage(AccountCache cache) throws SQLException {
+        FileConfiguration cfg = getConfig();
+        int threshold = cfg.getInt("storage.location-flush.threshold", 256);
+        Dialect dialect;
+        try {
+            dialect = Dialect.of(cfg.getString("storage.type", "sqlite"));
+        } catch (IllegalArgumentException e) {
+            throw new SQLException(e.getMessage());
+        }
+        if (dialect == Dialect.SQLITE) {
+            return new SqliteDB(dbFile.getAbsolutePath(), cfg.getInt("storage.read-connections", 2), cache, getLogger(), metrics, threshold);
+        }
+        getLogger().info("Using shared " + dialect.name().toLowerCase(Locale.ROOT) + " storage.");
+        return new PooledDB(dialect, cfg.getString("storage.shared.url"), cfg.getString("storage.shared.username"),
+                cfg.getString("storage.shared.password"), cfg.getInt("storage.shared.pool-size", 4), cache, getLogger(), metrics, threshold);
+    }
+
+    /** For the load-test harness in benchmarks/. */
+    Metrics metrics() {
+        return metrics;
+    }
+
+    private void setupMetrics(FileConfiguration cfg) {
+        AccountCache cache = db.cache();
+        metrics.gauge("cache.hits", cache::hits);
+        metrics.gauge("cache.misses", cache::misses);
+        metrics.gauge("cache.evictions", cache::evictions);
+        metrics.gauge("cache.size", cache::size);
+        metrics.gauge("db.pending-writes", db::pendingWrites);
+        metrics.gauge("hashing.queued", hashing::queued);
+        metrics.gauge("hashing.active", hashing::active);
+        metrics.gauge("join.queue-depth", () -> joinDepth);
+        metrics.gauge("sessions.authenticated", sessions::authenticatedCount);
+        metrics.gauge("ratelimit.tracked", limiter::tracked);
+        metrics.gauge("sessions.resumable", resumption::size);
+        metrics.gauge("sessions.login-timers", () -> pendingLoginTimers);
+        if (audit != null) {
+            metrics.gauge("audit.queued", audit::queued);
+            metrics.gauge("audit.dropped", audit::dropped);
+        }
+        if (cfg.getBoolean("metrics.jmx", true)) {
+            try {
+                metrics.registerMBean();
+            } catch (Exception e) {
+                getLogger().warning("Could not register JMX metrics: " + e.getMessage());
+            }
+        }
+        if (cfg.getBoolean("metrics.prometheus.enabled", false)) {
+            File out = new File(getDataFolder(), cfg.getString("metrics.prometheus.file", "metrics.prom"));
+            long ticks = Math.max(1L, cfg.getLong("metrics.prometheus.interval-seconds", 15)) * 20L;
+            Bukkit.getScheduler().runTaskTimerAsynchronously(this, () -> {
+                try {
+                    metrics.writePrometheus(out);
+                } catch (IOException e) {
+                    getLogger().warning("Could not write " + out.getName() + ": " + e.getMessage());
+                }
+            }, ticks, ticks);
+        }
+    }
+
+    /**
+     * Picks the hashing scheme for new hashes. For PBKDF2 with a latency target the iteration count is
+     * measured on a hashing worker at startup; until that finishes the configured fixed count is used.
+     */
+    private void configureHashing(FileConfiguration cfg) {
+        String algorithm = cfg.getString("hashing.algorithm", "pbkdf2-sha256");
+        int iterations = cfg.getInt("hashing.iterations", 65536);
         try {
-            db.close();
-        } catch (Exception ignored) {}
+            boolean scrypt = "scrypt".equalsIgnoreCase(algorithm);
+            hasher = PasswordHashers.create(algorithm, scrypt ? cfg.getInt("hashing.scrypt.cost", 14) : iterations,
+                    cfg.getInt("hashing.scrypt.block-size", 8), cfg.getInt("hashing.scrypt.parallelism", 1));
+        } catch (IllegalArgumentException e) {
+            getLogger().severe(e.getMessage() + " - using pbkdf2-sha256.");
+            hasher = new Pbkdf2Hasher(Pbkdf2Hasher.SHA256, iterations);
+        }
+        long targetMs = cfg.getLong("hashing.target-ms", 25);
+        if (targetMs <= 0 || !(hasher instanceof Pbkdf2Hasher)) return;
+        Pbkdf2Hasher base = (Pbkdf2Hasher) hasher;
+        int min = cfg.getInt("hashing.min-iterations", 10000);
+        int max = cfg.getInt("hashing.max-iterations", 1000000);
+        hashing.submit("calibrate", () -> base.calibrate(targetMs, min, max)).whenComplete((calibrated, err) -> {
+            if (err != null) {
+                getLogger().warning("PBKDF2 calibration failed, keeping " + base.iterations() + " iterations: " + err.getMessage());
+                return;
+            }
+            hasher = new Pbkdf2Hasher(base.id(), calibrated);
+            getLogger().info(base.name() + " calibrated to " + calibrated + " iterations (~" + targetMs + " ms per hash).");
+        });
+    }
+
+    /** Minimum length, and the breached-password filter if one is configured and readable. */
+    private void configurePasswordPolicy(FileConfiguration cfg) {
+        minPasswordLength = Math.max(1, cfg.getInt("passwords.min-length", 4));
+        if (!cfg.getBoolean("passwords.breached.enabled", false)) return;
+        File file = new File(getDataFolder(), cfg.getString("passwords.breached.file", "breached-passwords.bloom"));
+        try {
+            breached = BreachedPasswords.open(file);
+            getLogger().info(String.format(Locale.ROOT, "Loaded breached-password filter %s: %d entries, %.3f%% false positives.",
+                    file.getName(), breached.entries(), breached.falsePositiveRate() * 100));
+        } catch (IOException e) {
+            getLogger().warning("Breached-password check is off: " + e.getMessage());
+        }
+    }
+
+    // a filter page that is not in memory yet is a disk read, so the lookup runs on the hashing pool
+    private CompletableFuture<Boolean> isBreached(String password) {
+        BreachedPasswords filter = breached;
+        if (filter == null) return CompletableFuture.completedFuture(false);
+        return hashing.submit("breach-check", () -> filter.contains(password)).thenApply(bad -> {
+            if (bad) metrics.increment("passwords.breached-rejected");
+            return bad;
+        });
+    }
+
+    // stores a new hash with the current scheme; runs after a successful login, so failures only mean it is retried next time.
+    // Only the verified row is updated: another account may hold the player's UUID or name.
+    private void rehash(String uuid, String name, String pass, DB.StoredEntry entry) {
+        hashing.submit("hash", () -> hasher.hash(pass.toCharArray()))
+                .thenCompose(hash -> db.updatePassword(entry.uuid, null, hash).thenAccept(v -> updateSessionAccount(uuid, entry.withPassword(hash))))
+                .whenComplete((v, err) -> {
+                    if (err != null && !(err.getCause() instanceof RejectedExecutionException)) {
+                        getLogger().warning("Could not re-hash password for " + name + ": " + err.getMessage());
+                    }
+                });
     }
 
     private void handlePlayerJoinState(Player player) {
         UUID uuid = player.getUniqueId();
-        try {
-            if (!db.existsPlayer(uuid.toString(), player.getName())) {
-                // First time: require register
-                mustRegister.add(uuid);
-                authenticated.remove(uuid);
-                savedLocations.put(uuid, player.getLocation());
-                freezeToLoginPosition(player);
-                player.sendMessage(color("&eWelcome! Please register with /register <password> <confirm>"));
-            } else {
-                // Known player: require login
-                authenticated.remove(uuid);
-                savedLocations.put(uuid, db.getLastLocation(uuid.toString()));
-                freezeToLoginPosition(player);
-                player.sendMessage(color("&ePlease login with /login <password> (you will be frozen until you login)."));
+        Session session = sessions.open(uuid);
+        if (session.accountLoaded()) {
+            applyJoinState(player, session, session.account());
+            return;
+        }
+        // not prefetched (e.g. plugin reload or a slow pre-login): load it now
+        completeSync(db.getPlayer(uuid.toString(), player.getName()), (entry, err) -> {
+            if (!player.isOnline()) return;
+            if (err != null) {
+                getLogger().severe("DB error while handling join state for " + player.getName() + ": " + err.getMessage());
+                player.sendMessage(color("&cInternal error - contact an admin."));
+                return;
             }
-        } catch (SQLException e) {
-            getLogger().severe("DB error while handling join state for " + player.getName() + ": " + e.getMessage());
-            player.sendMessage(color("&cInternal error - contact an admin."));
+            session.setAccount(entry);
+            applyJoinState(player, session, entry);
+        });
+    }
+
+    private void applyJoinState(Player player, Session session, DB.StoredEntry entry) {
+        // a ticket is single use, so take it even if the account has gone
+        boolean resumed = resumption.consume(player.getUniqueId(), address(player));
+        if (entry == null) {
+            // First time: require register
+            if (!sessions.transition(session, Session.State.PENDING_LOAD, Session.State.MUST_REGISTER)) return;
+            session.savedLocation = player.getLocation();
+            freezeToLoginPosition(player);
+            startLoginTimer(player, session);
+            player.sendMessage(color("&eWelcome! Please register with /register <password> <confirm>"));
+        } else {
+            boolean premium = isVerifiedPremium(player, entry);
+            if (resumed || premium) {
+                // Mojang already verified this account, or it came back from the same IP within the window:
+                // no freeze, no teleport, no password and no hash
+                if (!sessions.transition(session, Session.State.PENDING_LOAD, Session.State.AUTHENTICATED)) return;
+                db.recordLogin(entry.uuid);
+                metrics.increment(premium ? "logins.premium" : "logins.resumed");
+                audit(premium ? AuditLog.Type.LOGIN_PREMIUM : AuditLog.Type.LOGIN_RESUMED, player);
+                refreshGuards(0);
+                player.sendMessage(color(premium ? "&aLogged in automatically (premium account)." : "&aWelcome back, your session was resumed."));
+                return;
+            }
+            // Known player: require login
+            if (!sessions.transition(session, Session.State.PENDING_LOAD, Session.State.MUST_LOGIN)) return;
+            session.savedLocation = entry.lastLocation == null ? null : entry.lastLocation.toLocation();
+            freezeToLoginPosition(player);
+            startLoginTimer(player, session);
+            player.sendMessage(color("&ePlease login with /login <password> (you will be frozen until you login)."));
         }
     }
 
+    /**
+     * A premium-flagged account only skips /login when the server is in online-mode (so Mojang
+     * authenticated the connection) and the connecting UUID is the one the account was stored under.
+     */
+    private static boolean isVerifiedPremium(Player player, DB.StoredEntry entry) {
+        return entry.isPremium && Bukkit.getOnlineMode() && player.getUniqueId().toString().equals(entry.uuid);
+    }
+
+    // account for an online player, served from the session when it was prefetched
+    private CompletableFuture<DB.StoredEntry> sessionAccount(Player p, Session session) {
+        if (session.accountLoaded()) return CompletableFuture.completedFuture(session.account());
+        return db.getPlayer(p.getUniqueId().toString(), p.getName());
+    }
+
+    // after a password change the player must use the new one: drops their ticket and issues none when they leave
+    private void revokeResumption(UUID uuid) {
+        Session s = sessions.get(uuid);
+        if (s != null) s.passwordChanged = true;
+        resumption.forget(uuid);
+    }
+
+    // keep the session's account in step with a write; a player who already quit has no session to update
+    private void updateSessionAccount(String uuid, DB.StoredEntry entry) {
+        try {
+            Session s = sessions.get(UUID.fromString(uuid));
+            if (s != null) s.setAccount(entry);
+        } catch (IllegalArgumentException ignored) {}
+    }
+
+    // tells the player to wait if they already have a request in flight
+    private boolean begin(Player p, Session session) {
+        if (session.tryBegin()) return true;
+        p.sendMessage(color("&ePlease wait, your last request is still being processed."));
+        return false;
+    }
+
+    /**
+     * Takes a rate-limit token and a hash slot for a password attempt, or tells the player why not.
+     * When this returns true the caller must hand the slot back with {@link #releaseAttempt}.
+     */
+    private boolean admitAttempt(Player p) {
+        RateLimiter.Decision decision = limiter.tryAttempt(address(p), p.getUniqueId());
+        if (decision != RateLimiter.Decision.ALLOWED) {
+            metrics.increment("attempts.rejected." + decision.name().toLowerCase(Locale.ROOT).replace('_', '-'));
+        }
+        switch (decision) {
+            case ALLOWED:
+                return true;
+            case LOCKED_OUT:
+                p.sendMessage(color("&cToo many failed attempts. Try again in " + seconds(limiter.lockedFor(address(p), p.getUniqueId())) + "s."));
+                return false;
+            case RATE_LIMITED:
+                p.sendMessage(color("&cYou are trying too fast, please wait a moment."));
+                return false;
+            default:
+                p.sendMessage(color("&cThe server is busy, please try again in a moment."));
+                return false;
+        }
+    }
+
+    private void releaseAttempt(CompletableFuture<?> result) {
+        result.whenComplete((r, e) -> limiter.releaseHashSlot());
+    }
+
+    // counts a wrong password; a player who just earned a lockout is kicked
+    private void failedAttempt(Player p) {
+        metrics.increment("auth.failures");
+        RateLimiter.Failure f = limiter.recordFailure(address(p), p.getUniqueId());
+        if (f.lockedOut) {
+            metrics.increment("auth.lockouts");
+            audit(AuditLog.Type.LOCKOUT, p);
+            p.kickPlayer(color("&cToo many failed attempts. Try again in " + seconds(f.lockoutMillis) + "s."));
+        }
+    }
+
+    private void audit(AuditLog.Type type, Player p) {
+        if (audit != null) audit.record(type, p.getUniqueId(), p.getName(), address(p), null);
+    }
+
+    private static InetAddress address(Player p) {
+        InetSocketAddress a = p.getAddress();
+        return a == null ? null : a.getAddress();
+    }
+
+    private static long seconds(long millis) {
+        return Math.max(1, (millis + 999) / 1000);
+    }
+
     private void freezeToLoginPosition(Player p) {
-        // teleport player to world spawn of server's first world, set flying and no movement
-        World w = Bukkit.getWorlds().get(0);
-        Location spawn = w.getSpawnLocation().clone();
-        spawn.setY(spawn.getY() + 2);
-        p.teleport(spawn, PlayerTeleportEvent.TeleportCause.PLUGIN);
+        // move the player to limbo (unless limbo is in-place), set flying and no movement
+        Location hold = limbo.holdingLocation();
+        if (hold != null) {
+            p.teleport(hold, PlayerTeleportEvent.TeleportCause.PLUGIN);
+        }
         p.setAllowFlight(true);
         p.setFlying(true);
         p.setInvulnerable(true); // extra measure
     }
 
-    private void unfreezeAfterLogin(Player p) {
+    private void unfreezeAfterLogin(Player p, Session session) {
+        cancelLoginTimer(session);
         p.setAllowFlight(false);
         p.setFlying(false);
         p.setInvulnerable(false);
+        refreshGuards(0);
+        // in-place limbo never moved the player, so there is nothing to restore
+        if (!limbo.teleports()) return;
+        // teleport to saved location or the main world's spawn
+        Location target = session.savedLocation;
+        if (target == null || limbo.isLimboWorld(target.getWorld())) {
+            target = Bukkit.getWorlds().get(0).getSpawnLocation();
+        }
+        p.teleport(target);
     }
 
-    /* ------------------------------ Events ------------------------------ */
+    /** Kicks the player if still unauthenticated after login-timeout.seconds, reminding them meanwhile. */
+    private void startLoginTimer(Player p, Session session) {
+        cancelLoginTimer(session);
+        if (loginTimeoutTicks == 0 && loginReminderTicks == 0) return;
+        session.loginDeadline = loginTimeoutTicks > 0 ? loginTimers.now() + loginTimeoutTicks : Long.MAX_VALUE;
+        session.loginTimer = loginTimers.schedule(p, nextLoginTimer(session));
+    }
 
-    @EventHandler(priority = EventPriority.HIGHEST)
-    public void onJoin(PlayerJoinEvent e) {
-        final Player p = e.getPlayer();
-        // handle asynchronously small delay to let player fully initialize
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-                handlePlayerJoinState(p);
-            }
-        }.runTaskLater(this, 2L);
+    private void cancelLoginTimer(Session session) {
+        if (session.loginTimer != null) {
+            loginTimers.cancel(session.loginTimer);
+            session.loginTimer = null;
+        }
     }
 
-    @EventHandler
-    public void onQuit(PlayerQuitEvent e) {
-        Player p = e.getPlayer();
-        if (authenticated.contains(p.getUniqueId())) {
-            // save last location
-            Location loc = p.getLocation();
-            try {
-                db.saveLastLocation(p.getUniqueId().toString(), loc);
-            } catch (SQLException ex) {
-                getLogger().warning("Could not save last location for " + p.getName() + ": " + ex.getMessage());
+    // ticks until the next reminder or the deadline, whichever is first
+    private long nextLoginTimer(Session session) {
+        long left = session.loginDeadline - loginTimers.now();
+        return loginReminderTicks > 0 ? Math.min(loginReminderTicks, left) : left;
+    }
+
+    private void onLoginTimer(TimingWheel.Timeout<Player> timer) {
+        Player p = timer.value;
+        Session session = sessions.get(p.getUniqueId());
+        if (session == null || session.loginTimer != timer || !p.isOnline()) return;
+        Session.State state = session.state();
+        if (state != Session.State.MUST_LOGIN && state != Session.State.MUST_REGISTER) {
+            session.loginTimer = null;
+            return;
+        }
+        if (loginTimers.now() >= session.loginDeadline) {
+            if (session.isBusy()) {
+                // a /login or /register is being checked right now; give it a second
+                loginTimers.reschedule(timer, 20);
+                return;
             }
+            session.loginTimer = null;
+            metrics.increment("auth.timeouts");
+            audit(AuditLog.Type.TIMEOUT, p);
+            p.kickPlayer(color("&cYou did not log in in time."));
+            return;
         }
-        authenticated.remove(p.getUniqueId());
-        mustRegister.remove(p.getUniqueId());
-        savedLocations.remove(p.getUniqueId());
+        p.sendMessage(color(state == Session.State.MUST_REGISTER
+                ? "&ePlease register with /register <password> <confirm>"
+                : "&ePlease login with /login <password>"));
+        loginTimers.reschedule(timer, nextLoginTimer(session));
     }
 
-    @EventHandler(ignoreCancelled = true)
-    public void onPlayerMove(PlayerMoveEvent e) {
-        Player p = e.getPlayer();
-        if (!authenticated.contains(p.getUniqueId())) {
-            // allow small head rotation but not position changes
-            if (e.getFrom().getX() == e.getTo().getX() && e.getFrom().getZ() == e.getTo().getZ() && e.getFrom().getY() == e.getTo().getY()) {
-                return; // only rotation
+    /**
+     * Registers the guard listener while any online player is unauthenticated and unregisters it
+     * once everyone has logged in. {@code leaving} is the number of players still in the online list
+     * that are about to leave it (a player inside their quit event).
+     */
+    private void refreshGuards(int leaving) {
+        boolean needed = sessions.authenticatedCount() < Bukkit.getOnlinePlayers().size() - leaving;
+        if (needed) {
+            if (guardRelease != null) {
+                guardRelease.cancel();
+                guardRelease = null;
             }
-            e.setTo(e.getFrom());
+            if (!guardsRegistered) {
+                getServer().getPluginManager().registerEvents(guards, this);
+                guardsRegistered = true;
+            }
+        } else if (guardsRegistered && guardRelease == null) {
+            // wait a little before unregistering so a steady trickle of logins does not re-register every time
+            guardRelease = Bukkit.getScheduler().runTaskLater(this, () -> {
+                guardRelease = null;
+                if (sessions.authenticatedCount() >= Bukkit.getOnlinePlayers().size()) {
+                    HandlerList.unregisterAll(guards);
+                    guardsRegistered = false;
+                }
+            }, 100L);
         }
     }
 
-    @EventHandler
-    public void onDamage(EntityDamageEvent e) {
-        if (e.getEntity() instanceof Player) {
-            Player p = (Player) e.getEntity();
-            if (!authenticated.contains(p.getUniqueId())) {
-                e.setCancelled(true);
-            }
+    /* ------------------------------ Events ------------------------------ */
+
+    @EventHandler(priority = EventPriority.LOW)
+    public void onPreLoginGate(AsyncPlayerPreLoginEvent e) {
+        // offline-mode UUIDs are name-based (version 3); premium players arrive with Mojang's random (version 4) UUID,
+        // also when a proxy in online-mode forwards it. Best effort: a proxy that does not forward UUIDs looks cracked.
+        if (disableCrackLogin && e.getUniqueId().version() == 3) {
+            e.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER, color("&cThis server only accepts premium (Mojang-authenticated) accounts."));
+            return;
+        }
+        // reconnecting does not reset an IP lockout; a locked account may join but its attempts are refused
+        long left = limiter.ipLockedFor(e.getAddress());
+        if (left > 0) {
+            e.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER, color("&cToo many failed attempts. Try again in " + seconds(left) + "s."));
         }
     }
 
-    @EventHandler
-    public void onInventoryClick(InventoryClickEvent e) {
-        if (e.getWhoClicked() instanceof Player) {
-            Player p = (Player) e.getWhoClicked();
-            if (!authenticated.contains(p.getUniqueId())) {
-                e.setCancelled(true);
-            }
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPreLogin(AsyncPlayerPreLoginEvent e) {
+        if (e.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) return;
+        // already off the main thread: load the whole account row so join and /login need no query
+        long start = System.nanoTime();
+        try {
+            DB.StoredEntry entry = db.getPlayer(e.getUniqueId().toString(), e.getName()).get(5, TimeUnit.SECONDS);
+            sessions.open(e.getUniqueId()).setAccount(entry);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ex) {
+            // fall back to loading it after join
+            getLogger().warning("Could not prefetch account for " + e.getName() + ": " + ex.getMessage());
+        } finally {
+            metrics.record("event.prelogin", System.nanoTime() - start);
         }
     }
 
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onLogin(PlayerLoginEvent e) {
+        // another plugin refused the connection after we prefetched
+        if (e.getResult() != PlayerLoginEvent.Result.ALLOWED) {
+            long start = System.nanoTime();
+            sessions.close(e.getPlayer().getUniqueId());
+            metrics.mainThread("main.event.login", start);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.HIGHEST)
+    public void onJoin(PlayerJoinEvent e) {
+        long start = System.nanoTime();
+        final Player p = e.getPlayer();
+        // frozen from the first tick, before the join state is applied
+        refreshGuards(0);
+        // queued with a small delay to let player fully initialize; prefetched accounts go first
+        Session session = sessions.get(p.getUniqueId());
+        joinQueue.enqueue(p, session != null && session.accountLoaded());
+        metrics.mainThread("main.event.join", start);
+    }
+
     @EventHandler
-    public void onChat(AsyncPlayerChatEvent e) {
+    public void onQuit(PlayerQuitEvent e) {
+        long start = System.nanoTime();
         Player p = e.getPlayer();
-        if (!authenticated.contains(p.getUniqueId())) {
-            // allow only login/register/premiumlogin/disablelogin/unregister messages? Simpler: cancel chat and remind
-            e.setCancelled(true);
-            p.sendMessage(color("&cYou must login or register before chatting. Use /login or /register."));
+        Session session = sessions.get(p.getUniqueId());
+        if (session != null) cancelLoginTimer(session);
+        if (sessions.close(p.getUniqueId()) == Session.State.AUTHENTICATED) {
+            // save last location
+            db.saveLastLocation(p.getUniqueId().toString(), DB.StoredLocation.of(p.getLocation()));
+            if (!session.passwordChanged) {
+                resumption.remember(p.getUniqueId(), address(p));
+                // a password change that raced with this quit must not leave the ticket behind
+                if (session.passwordChanged) resumption.forget(p.getUniqueId());
+            }
         }
+        refreshGuards(1);
+        metrics.mainThread("main.event.quit", start);
     }
 
     /* --------------------------- Command classes ------------------------- */
@@ -234,7 +762,8 @@ public class BetterLoginSecurity extends JavaPlugin implements Listener {
                 p.sendMessage(color("&cUsage: /register <password> <confirm>"));
                 return true;
             }
-            if (!mustRegister.contains(p.getUniqueId())) {
+            Session session = sessions.open(p.getUniqueId());
+            if (!session.is(Session.State.MUST_REGISTER)) {
                 p.sendMessage(color("&cYou are already registered or not in register state."));
                 return true;
             }
@@ -244,29 +773,48 @@ public class BetterLoginSecurity extends JavaPlugin implements Listener {
                 p.sendMessage(color("&cPasswords do not match."));
                 return true;
             }
-            if (pass.length() < 4) {
-                p.sendMessage(color("&cPassword too short (min 4)."));
+            if (pass.length() < minPasswordLength) {
+                p.sendMessage(color("&cPassword too short (min " + minPasswordLength + ")."));
                 return true;
             }
-            try {
-                if (db.existsPlayer(p.getUniqueId().toString(), p.getName())) {
+            if (!begin(p, session)) return true;
+            if (!admitAttempt(p)) {
+                session.end();
+                return true;
+            }
+            String uuid = p.getUniqueId().toString();
+            String name = p.getName();
+            CompletableFuture<Outcome> result = sessionAccount(p, session).thenCompose(existing -> {
+                if (existing != null) return CompletableFuture.completedFuture(Outcome.ACCOUNT_EXISTS);
+                return isBreached(pass).thenCompose(bad -> bad ? CompletableFuture.completedFuture(Outcome.BREACHED_PASSWORD)
+                        : hashing.submit("hash", () -> hasher.hash(pass.toCharArray()))
+                        .thenCompose(hash -> db.createPlayer(uuid, name, hash).thenApply(v -> {
+                            updateSessionAccount(uuid, DB.StoredEntry.of(uuid, name, hash));
+                            return Outcome.OK;
+                        })));
+            });
+            releaseAttempt(result);
+            completeSync(metrics.track("command.register", result), (outcome, err) -> {
+                session.end();
+                if (err != null) {
+                    reportFailure(p, err, "register");
+                    return;
+                }
+                if (outcome == Outcome.BREACHED_PASSWORD) {
+                    p.sendMessage(color(BREACHED_MESSAGE));
+                    return;
+                }
+                if (outcome == Outcome.ACCOUNT_EXISTS) {
                     p.sendMessage(color("&cAccount already exists."));
-                    mustRegister.remove(p.getUniqueId());
-                    return true;
+                    sessions.transition(session, Session.State.MUST_REGISTER, Session.State.MUST_LOGIN);
+                    return;
                 }
-                DB.PasswordHash ph = DB.hashPassword(pass);
-                db.createPlayer(p.getUniqueId().toString(), p.getName(), ph.hash, ph.salt, ph.iterations);
-                authenticated.add(p.getUniqueId());
-                mustRegister.remove(p.getUniqueId());
-                unfreezeAfterLogin(p);
-                // teleport to saved location if exists
-                Location target = savedLocations.getOrDefault(p.getUniqueId(), p.getWorld().getSpawnLocation());
-                p.teleport(target);
+                if (!sessions.transition(session, Session.State.MUST_REGISTER, Session.State.AUTHENTICATED)) return;
+                metrics.increment("registrations");
+                audit(AuditLog.Type.REGISTER, p);
+                unfreezeAfterLogin(p, session);
                 p.sendMessage(color("&aRegistered and logged in successfully."));
-            } catch (SQLException ex) {
-                p.sendMessage(color("&cDatabase error."));
-                getLogger().severe("DB error during register: " + ex.getMessage());
-            }
+            });
             return true;
         }
     }
@@ -283,31 +831,60 @@ public class BetterLoginSecurity extends JavaPlugin implements Listener {
                 p.sendMessage(color("&cUsage: /login <password>"));
                 return true;
             }
+            Session session = sessions.open(p.getUniqueId());
+            if (session.is(Session.State.AUTHENTICATED)) {
+                p.sendMessage(color("&eYou are already logged in."));
+                return true;
+            }
+            if (session.is(Session.State.PENDING_LOAD)) {
+                p.sendMessage(color("&eYour account is still loading, please try again in a moment."));
+                return true;
+            }
+            if (!begin(p, session)) return true;
+            if (!admitAttempt(p)) {
+                session.end();
+                return true;
+            }
             String pass = args[0];
-            try {
-                if (!db.existsPlayer(p.getUniqueId().toString(), p.getName())) {
+            String uuid = p.getUniqueId().toString();
+            String name = p.getName();
+            // the row may have matched by name, so the login is recorded against its uuid, not the player's
+            AtomicReference<DB.StoredEntry> verified = new AtomicReference<>();
+            CompletableFuture<Outcome> result = sessionAccount(p, session).thenCompose(entry -> {
+                if (entry == null) return CompletableFuture.completedFuture(Outcome.NO_ACCOUNT);
+                return hashing.submit("verify", () -> PasswordHashers.verify(pass, entry.password)).thenApply(ok -> {
+                    if (!ok) return Outcome.WRONG_PASSWORD;
+                    verified.set(entry);
+                    // hashes made with another scheme or cost are upgraded while we still have the plain password
+                    if (!hasher.isCurrent(entry.password)) rehash(uuid, name, pass, entry);
+                    return Outcome.OK;
+                });
+            });
+            releaseAttempt(result);
+            completeSync(metrics.track("command.login", result), (outcome, err) -> {
+                session.end();
+                if (err != null) {
+                    reportFailure(p, err, "login");
+                    return;
+                }
+                if (outcome == Outcome.NO_ACCOUNT) {
                     p.sendMessage(color("&cNo account found. Register with /register"));
-                    return true;
+                    return;
                 }
-                DB.StoredEntry entry = db.getPlayer(p.getUniqueId().toString(), p.getName());
-                boolean ok = DB.verifyPassword(pass, entry.hash, entry.salt, entry.iterations);
-                if (!ok) {
+                if (outcome == Outcome.WRONG_PASSWORD) {
                     p.sendMessage(color("&cIncorrect password."));
-                    return true;
+                    audit(AuditLog.Type.LOGIN_FAILED, p);
+                    failedAttempt(p);
+                    return;
                 }
-                authenticated.add(p.getUniqueId());
-                mustRegister.remove(p.getUniqueId());
-                unfreezeAfterLogin(p);
-                // teleport to saved location or world spawn
-                Location target = savedLocations.get(p.getUniqueId());
-                if (target == null) {
-                    target = p.getWorld().getSpawnLocation();
-                }
-                p.teleport(target);
+                if (!sessions.transition(session, Session.State.MUST_LOGIN, Session.State.AUTHENTICATED)) return;
+                limiter.recordSuccess(address(p), p.getUniqueId());
+                metrics.increment("logins");
+                audit(AuditLog.Type.LOGIN, p);
+                db.recordLogin(verified.get().uuid);
+                unfreezeAfterLogin(p, session);
                 p.sendMessage(color("&aLogged in successfully."));
-            } catch (SQLException e) {
-                p.sendMessage(color("&cDatabase error."));
-            }
+            });
             return true;
         }
     }
@@ -320,21 +897,19 @@ public class BetterLoginSecurity extends JavaPlugin implements Listener {
                 return true;
             }
             Player p = (Player) sender;
-            if (!authenticated.contains(p.getUniqueId())) {
+            Session session = sessions.get(p.getUniqueId());
+            if (session == null || !sessions.transition(session, Session.State.AUTHENTICATED, Session.State.MUST_LOGIN)) {
                 p.sendMessage(color("&cYou are not logged in."));
                 return true;
             }
             // save current location for next login
             Location loc = p.getLocation();
-            try {
-                db.saveLastLocation(p.getUniqueId().toString(), loc);
-            } catch (SQLException e) {
-                getLogger().warning("Could not save last location for logout: " + e.getMessage());
-            }
-            authenticated.remove(p.getUniqueId());
-            mustRegister.remove(p.getUniqueId());
-            savedLocations.put(p.getUniqueId(), loc);
+            db.saveLastLocation(p.getUniqueId().toString(), DB.StoredLocation.of(loc));
+            session.savedLocation = loc;
+            refreshGuards(0);
             freezeToLoginPosition(p);
+            startLoginTimer(p, session);
+            audit(AuditLog.Type.LOGOUT, p);
             p.sendMessage(color("&eYou have been logged out. Use /login <password> to login."));
             return true;
         }
@@ -348,19 +923,32 @@ public class BetterLoginSecurity extends JavaPlugin implements Listener {
                 return true;
             }
             Player p = (Player) sender;
-            try {
-                if (!db.existsPlayer(p.getUniqueId().toString(), p.getName())) {
+            Session session = sessions.open(p.getUniqueId());
+            String uuid = p.getUniqueId().toString();
+            String name = p.getName();
+            CompletableFuture<Outcome> result = sessionAccount(p, session).thenCompose(entry -> {
+                if (entry == null) return CompletableFuture.completedFuture(Outcome.NO_ACCOUNT);
+                return db.deletePlayer(uuid, name).thenApply(v -> {
+                    updateSessionAccount(uuid, null);
+                    return Outcome.OK;
+                });
+            });
+            completeSync(metrics.track("command.unregister", result), (outcome, err) -> {
+                if (err != null) {
+                    reportFailure(p, err, "unregister");
+                    return;
+                }
+                if (outcome == Outcome.NO_ACCOUNT) {
                     p.sendMessage(color("&cNo account to unregister."));
-                    return true;
+                    return;
                 }
-                db.deletePlayer(p.getUniqueId().toString(), p.getName());
-                authenticated.remove(p.getUniqueId());
-                mustRegister.add(p.getUniqueId());
+                audit(AuditLog.Type.UNREGISTER, p);
+                if (!sessions.force(session, Session.State.MUST_REGISTER)) return;
+                refreshGuards(0);
                 freezeToLoginPosition(p);
+                startLoginTimer(p, session);
                 p.sendMessage(color("&aYour account was unregistered. Use /register to create a new one."));
-            } catch (SQLException e) {
-                p.sendMessage(color("&cDatabase error."));
-            }
+            });
             return true;
         }
     }
@@ -379,22 +967,51 @@ public class BetterLoginSecurity extends JavaPlugin implements Listener {
             }
             String cur = args[0];
             String neu = args[1];
-            try {
-                if (!db.existsPlayer(p.getUniqueId().toString(), p.getName())) {
-                    p.sendMessage(color("&cNo account found."));
-                    return true;
+            if (neu.length() < minPasswordLength) {
+                p.sendMessage(color("&cNew password too short (min " + minPasswordLength + ")."));
+                return true;
+            }
+            Session session = sessions.open(p.getUniqueId());
+            if (!begin(p, session)) return true;
+            if (!admitAttempt(p)) {
+                session.end();
+                return true;
+            }
+            String uuid = p.getUniqueId().toString();
+            String name = p.getName();
+            CompletableFuture<Outcome> result = sessionAccount(p, session).thenCompose(entry -> {
+                if (entry == null) return CompletableFuture.completedFuture(Outcome.NO_ACCOUNT);
+                // verify and re-hash in one job; null means the current password was wrong
+                return isBreached(neu).thenCompose(bad -> bad ? CompletableFuture.completedFuture(Outcome.BREACHED_PASSWORD)
+                        : hashing.submit("change", () -> PasswordHashers.verify(cur, entry.password) ? hasher.hash(neu.toCharArray()) : null)
+                        .thenCompose(hash -> hash == null
+                                ? CompletableFuture.completedFuture(Outcome.WRONG_PASSWORD)
+                                : db.updatePassword(entry.uuid, null, hash).thenApply(v -> {
+                                    updateSessionAccount(uuid, entry.withPassword(hash));
+                                    return Outcome.OK;
+                                })));
+            });
+            releaseAttempt(result);
+            completeSync(metrics.track("command.changepassword", result), (outcome, err) -> {
+                session.end();
+                if (err != null) {
+                    reportFailure(p, err, "changepassword");
+                    return;
                 }
-                DB.StoredEntry entry = db.getPlayer(p.getUniqueId().toString(), p.getName());
-                if (!DB.verifyPassword(cur, entry.hash, entry.salt, entry.iterations)) {
+                if (outcome == Outcome.NO_ACCOUNT) {
+                    p.sendMessage(color("&cNo account found."));
+                } else if (outcome == Outcome.BREACHED_PASSWORD) {
+                    p.sendMessage(color(BREACHED_MESSAGE));
+                } else if (outcome == Outcome.WRONG_PASSWORD) {
                     p.sendMessage(color("&cCurrent password incorrect."));
-                    return true;
+                    audit(AuditLog.Type.PASSWORD_CHANGE_FAILED, p);
+                    failedAttempt(p);
+                } else {
+                    revokeResumption(p.getUniqueId());
+                    audit(AuditLog.Type.PASSWORD_CHANGED, p);
+                    p.sendMessage(color("&aPassword changed."));
                 }
-                DB.PasswordHash ph = DB.hashPassword(neu);
-                db.updatePassword(p.getUniqueId().toString(), p.getName(), ph.hash, ph.salt, ph.iterations);
-                p.sendMessage(color("&aPassword changed."));
-            } catch (SQLException e) {
-                p.sendMessage(color("&cDatabase error."));
-            }
+            });
             return true;
         }
     }
@@ -413,24 +1030,59 @@ public class BetterLoginSecurity extends JavaPlugin implements Listener {
             }
             String username = args[0];
             String newPass = (args.length >= 2) ? args[1] : null;
-            try {
-                // find by username
-                DB.StoredEntry entry = db.getPlayerByName(username);
-                if (entry == null) {
+            boolean clear = newPass == null || newPass.isEmpty();
+            if (!clear && newPass.length() < minPasswordLength) {
+                sender.sendMessage(color("&cPassword too short (min " + minPasswordLength + ")."));
+                return true;
+            }
+            String actor = sender.getName();
+            // find by username
+            CompletableFuture<Outcome> result = db.getPlayerByName(username).thenCompose(entry -> {
+                if (entry == null) return CompletableFuture.completedFuture(Outcome.NO_ACCOUNT);
+                UUID target = null;
+                try {
+                    target = UUID.fromString(entry.uuid);
+                    // an admin reset must not be bypassed by a pending resumption
+                    revokeResumption(target);
+                } catch (IllegalArgumentException ignored) {}
+                UUID targetId = target;
+                if (clear) {
+                    return db.deletePlayer(entry.uuid, username).thenApply(v -> {
+                        updateSessionAccount(entry.uuid, null);
+                        if (audit != null) audit.record(AuditLog.Type.PASSWORD_CLEARED, targetId, entry.username, null, actor);
+                        return Outcome.OK;
+                    });
+                }
+                return isBreached(newPass).thenCompose(bad -> bad ? CompletableFuture.completedFuture(Outcome.BREACHED_PASSWORD)
+                        : hashing.submit("hash", () -> hasher.hash(newPass.toCharArray()))
+                        .thenCompose(hash -> db.updatePassword(entry.uuid, username, hash).thenApply(v -> {
+                            updateSessionAccount(entry.uuid, entry.withPassword(hash));
+                            if (audit != null) audit.record(AuditLog.Type.PASSWORD_SET, targetId, entry.username, null, actor);
+                            return Outcome.OK;
+                        })));
+            });
+            completeSync(metrics.track("command.setpassword", result), (outcome, err) -> {
+                if (err != null) {
+                    reportFailure(sender, err, "setpassword");
+                    return;
+                }
+                if (outcome == Outcome.NO_ACCOUNT) {
                     sender.sendMessage(color("&cNo such user."));
-                    return true;
+                    return;
                 }
-                if (newPass == null || newPass.isEmpty()) {
-                    db.deletePlayer(entry.uuid, username);
+                if (outcome == Outcome.BREACHED_PASSWORD) {
+                    sender.sendMessage(color(BREACHED_MESSAGE));
+                    return;
+                }
+                // the row's uuid need not be the online player's, e.g. for an imported offline-mode account
+                Player online = Bukkit.getPlayerExact(username);
+                if (online != null) revokeResumption(online.getUniqueId());
+                if (clear) {
                     sender.sendMessage(color("&aUser unregistered (password cleared)."));
                 } else {
-                    DB.PasswordHash ph = DB.hashPassword(newPass);
-                    db.updatePassword(entry.uuid, username, ph.hash, ph.salt, ph.iterations);
                     sender.sendMessage(color("&aPassword set for user."));
                 }
-            } catch (SQLException e) {
-                sender.sendMessage(color("&cDatabase error."));
-            }
+            });
             return true;
         }
     }
@@ -445,29 +1097,44 @@ public class BetterLoginSecurity extends JavaPlugin implements Listener {
                 return true;
             }
             Player p = (Player) sender;
+            Session session = sessions.open(p.getUniqueId());
+            String uuid = p.getUniqueId().toString();
+            String name = p.getName();
             // NOTE: verifying "premium" (i.e., Mojang authenticated) accounts is only available if server is in online-mode
             if (!Bukkit.getOnlineMode()) {
                 p.sendMessage(color("&cServer is in offline-mode; true premium verification is not possible."));
                 p.sendMessage(color("&eThis command will mark your account as 'premium' locally after logout+login as you requested."));
-                try {
-                    db.setPremiumFlag(p.getUniqueId().toString(), p.getName(), true);
-                } catch (SQLException e) {
-                    p.sendMessage(color("&cDatabase error."));
-                }
-                p.sendMessage(color("&aMarked as premium locally. Please /logout and /login to ensure state refresh."));
+                completeSync(metrics.track("command.premiumlogin", db.setPremiumFlag(uuid, name, true).thenCompose(v -> sessionAccount(p, session))), (entry, err) -> {
+                    if (err != null) {
+                        reportFailure(p, err, "premiumlogin");
+                        return;
+                    }
+                    if (entry != null) updateSessionAccount(uuid, entry.withPremium(true));
+                    audit(AuditLog.Type.PREMIUM_MARKED, p);
+                    p.sendMessage(color("&aMarked as premium locally. Please /logout and /login to ensure state refresh."));
+                });
                 return true;
             }
             // If online-mode true, the player is already authenticated by Mojang. So we can mark premium.
-            try {
-                if (!db.existsPlayer(p.getUniqueId().toString(), p.getName())) {
+            CompletableFuture<Outcome> result = sessionAccount(p, session).thenCompose(entry -> {
+                if (entry == null) return CompletableFuture.completedFuture(Outcome.NO_ACCOUNT);
+                return db.setPremiumFlag(uuid, name, true).thenApply(v -> {
+                    updateSessionAccount(uuid, entry.withPremium(true));
+                    return Outcome.OK;
+                });
+            });
+            completeSync(metrics.track("command.premiumlogin", result), (outcome, err) -> {
+                if (err != null) {
+                    reportFailure(p, err, "premiumlogin");
+                    return;
+                }
+                if (outcome == Outcome.NO_ACCOUNT) {
                     p.sendMessage(color("&cNo account found to mark as premium."));
-                    return true;
+                } else {
+                    audit(AuditLog.Type.PREMIUM_MARKED, p);
+                    p.sendMessage(color("&aAccount marked as premium. You will be logged in automatically from now on."));
                 }
-                db.setPremiumFlag(p.getUniqueId().toString(), p.getName(), true);
-                p.sendMessage(color("&aAccount marked as premium."));
-            } catch (SQLException e) {
-                p.sendMessage(color("&cDatabase error."));
-            }
+            });
             return true;
         }
     }
@@ -489,211 +1156,201 @@ public class BetterLoginSecurity extends JavaPlugin implements Listener {
         }
     }
 
-    /* ---------------------------- Utilities ------------------------------ */
-
-    private static String color(String s) {
-        return ChatColor.translateAlternateColorCodes('&', s);
-    }
-
-    /* ------------------------------- DB --------------------------------- */
-    private static class DB {
-        private final Connection conn;
-
-        private DB(String dbPath) throws SQLException {
-            // Connect using SQLite JDBC. The JDBC driver must be available at runtime.
-            this.conn = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
-        }
-
-        private void prepare() throws SQLException {
-            try (Statement st = conn.createStatement()) {
-                st.execute("CREATE TABLE IF NOT EXISTS accounts (uuid TEXT PRIMARY KEY, username TEXT, hash TEXT, salt TEXT, iterations INTEGER, is_premium INTEGER DEFAULT 0, last_world TEXT, last_x REAL, last_y REAL, last_z REAL, last_yaw REAL, last_pitch REAL)");
+    // Admin command: /betterlogin stats | audit <player> [count] | backup | vacuum | prune run|dry-run|cancel | import <file> [table] | import cancel
+    private class CmdBetterLogin implements CommandExecutor {
+        @Override
+        public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+            if (!sender.hasPermission("betterlogin.admin")) {
+                sender.sendMessage(color("&cNo permission."));
+                return true;
             }
-        }
-
-        private boolean existsPlayer(String uuid, String username) throws SQLException {
-            try (PreparedStatement ps = conn.prepareStatement("SELECT 1 FROM accounts WHERE uuid = ? OR username = ? LIMIT 1")) {
-                ps.setString(1, uuid);
-                ps.setString(2, username);
-                try (ResultSet rs = ps.executeQuery()) {
-                    return rs.next();
+            if (args.length >= 1 && args[0].equalsIgnoreCase("stats")) {
+                sender.sendMessage(color("&6BetterLoginSecurity stats:"));
+                for (String line : metrics.describe()) {
+                    sender.sendMessage(color("&7" + line));
                 }
+                return true;
             }
-        }
-
-        private void createPlayer(String uuid, String username, String hash, String salt, int iterations) throws SQLException {
-            try (PreparedStatement ps = conn.prepareStatement("INSERT INTO accounts(uuid, username, hash, salt, iterations) VALUES(?,?,?,?,?)")) {
-                ps.setString(1, uuid);
-                ps.setString(2, username);
-                ps.setString(3, hash);
-                ps.setString(4, salt);
-                ps.setInt(5, iterations);
-                ps.executeUpdate();
-            }
-        }
-
-        private StoredEntry getPlayer(String uuid, String username) throws SQLException {
-            try (PreparedStatement ps = conn.prepareStatement("SELECT uuid, username, hash, salt, iterations, is_premium, last_world, last_x, last_y, last_z, last_yaw, last_pitch FROM accounts WHERE uuid = ? OR username = ? LIMIT 1")) {
-                ps.setString(1, uuid);
-                ps.setString(2, username);
-                try (ResultSet rs = ps.executeQuery()) {
-                    if (!rs.next()) return null;
-                    StoredEntry e = new StoredEntry();
-                    e.uuid = rs.getString(1);
-                    e.username = rs.getString(2);
-                    e.hash = rs.getString(3);
-                    e.salt = rs.getString(4);
-                    e.iterations = rs.getInt(5);
-                    e.isPremium = rs.getInt(6) == 1;
-                    String world = rs.getString(7);
-                    if (world != null) {
-                        try {
-                            World w = Bukkit.getWorld(world);
-                            if (w != null) {
-                                double x = rs.getDouble(8);
-                                double y = rs.getDouble(9);
-                                double z = rs.getDouble(10);
-                                float yaw = rs.getFloat(11);
-                                float pitch = rs.getFloat(12);
-                                e.lastLocation = new Location(w, x, y, z, yaw, pitch);
-                            }
-                        } catch (Exception ignored) {}
+            if (args.length >= 2 && args[0].equalsIgnoreCase("audit")) {
+                showAudit(sender, args);
+                return true;
+            }
+            if (args.length >= 1 && args[0].equalsIgnoreCase("backup")) {
+                if (maintenance == null) {
+                    sender.sendMessage(color("&cBackups are only taken of SQLite storage with maintenance enabled."));
+                    return true;
+                }
+                sender.sendMessage(color("&eBacking up passwords.db in the background."));
+                completeSync(maintenance.backupNow(), (file, err) -> {
+                    if (err != null) {
+                        getLogger().warning("Backup failed: " + err.getMessage());
+                        sender.sendMessage(color("&cBackup failed: " + err.getMessage()));
+                    } else {
+                        sender.sendMessage(color("&aBacked up to " + file.getName() + "."));
                     }
-                    return e;
+                });
+                return true;
+            }
+            if (args.length >= 1 && args[0].equalsIgnoreCase("vacuum")) {
+                if (maintenance == null) {
+                    sender.sendMessage(color("&cVacuum only applies to SQLite storage with maintenance enabled."));
+                    return true;
                 }
+                sender.sendMessage(color("&eConverting passwords.db to incremental vacuum in the background; logins wait until it is done."));
+                completeSync(maintenance.enableIncrementalVacuum(), (converted, err) -> {
+                    if (err != null) {
+                        getLogger().warning("Vacuum failed: " + err.getMessage());
+                        sender.sendMessage(color("&cVacuum failed: " + err.getMessage()));
+                    } else {
+                        sender.sendMessage(color(converted ? "&apasswords.db now uses incremental vacuum."
+                                : "&epasswords.db already uses incremental vacuum; the daily upkeep returns free pages."));
+                    }
+                });
+                return true;
             }
-        }
-
-        private StoredEntry getPlayerByName(String username) throws SQLException {
-            try (PreparedStatement ps = conn.prepareStatement("SELECT uuid, username, hash, salt, iterations, is_premium FROM accounts WHERE username = ? LIMIT 1")) {
-                ps.setString(1, username);
-                try (ResultSet rs = ps.executeQuery()) {
-                    if (!rs.next()) return null;
-                    StoredEntry e = new StoredEntry();
-                    e.uuid = rs.getString(1);
-                    e.username = rs.getString(2);
-                    e.hash = rs.getString(3);
-                    e.salt = rs.getString(4);
-                    e.iterations = rs.getInt(5);
-                    e.isPremium = rs.getInt(6) == 1;
-                    return e;
+            if (args.length >= 2 && args[0].equalsIgnoreCase("prune")) {
+                if (args[1].equalsIgnoreCase("cancel")) {
+                    boolean running = pruneThread != null && pruneThread.isAlive();
+                    if (running) accountPrune.cancel();
+                    sender.sendMessage(color(running ? "&ePrune will stop after the current batch." : "&cNo prune is running."));
+                    return true;
+                }
+                if (args[1].equalsIgnoreCase("run") || args[1].equalsIgnoreCase("dry-run")) {
+                    startPrune(sender, args[1].equalsIgnoreCase("dry-run"));
+                    return true;
                 }
             }
-        }
-
-        private void deletePlayer(String uuid, String username) throws SQLException {
-            try (PreparedStatement ps = conn.prepareStatement("DELETE FROM accounts WHERE uuid = ? OR username = ?")) {
-                ps.setString(1, uuid);
-                ps.setString(2, username);
-                ps.executeUpdate();
+            if (args.length >= 2 && args[0].equalsIgnoreCase("import")) {
+                startImport(sender, args);
+                return true;
             }
+            sender.sendMessage(color("&cUsage: /betterlogin stats | audit <player> [count] | backup | vacuum | prune run|dry-run|cancel | import <file> [table] | import cancel"));
+            return true;
         }
 
-        private void updatePassword(String uuid, String username, String hash, String salt, int iterations) throws SQLException {
-            try (PreparedStatement ps = conn.prepareStatement("UPDATE accounts SET hash = ?, salt = ?, iterations = ? WHERE uuid = ? OR username = ?")) {
-                ps.setString(1, hash);
-                ps.setString(2, salt);
-                ps.setInt(3, iterations);
-                ps.setString(4, uuid);
-                ps.setString(5, username);
-                ps.executeUpdate();
+        // segments are read on an async task; the newest ones are scanned first
+        private void showAudit(CommandSender sender, String[] args) {
+            if (audit == null) {
+                sender.sendMessage(color("&cThe audit journal is disabled."));
+                return;
             }
-        }
-
-        private void setPremiumFlag(String uuid, String username, boolean premium) throws SQLException {
-            try (PreparedStatement ps = conn.prepareStatement("UPDATE accounts SET is_premium = ? WHERE uuid = ? OR username = ?")) {
-                ps.setInt(1, premium ? 1 : 0);
-                ps.setString(2, uuid);
-                ps.setString(3, username);
-                ps.executeUpdate();
+            String who = args[1];
+            int count;
+            try {
+                count = args.length >= 3 ? Math.max(1, Math.min(100, Integer.parseInt(args[2]))) : 10;
+            } catch (NumberFormatException e) {
+                sender.sendMessage(color("&cNot a number: " + args[2]));
+                return;
             }
+            File dir = audit.directory();
+            CompletableFuture<List<AuditReader.Entry>> found = new CompletableFuture<>();
+            Bukkit.getScheduler().runTaskAsynchronously(BetterLoginSecurity.this, () -> {
+                try {
+                    found.complete(AuditReader.recent(dir, e -> e.concerns(who), count));
+                } catch (IOException | RuntimeException e) {
+                    found.completeExceptionally(e);
+                }
+            });
+            completeSync(found, (entries, err) -> {
+                if (err != null) {
+                    sender.sendMessage(color("&cCould not read the audit journal: " + err.getMessage()));
+                    return;
+                }
+                if (entries.isEmpty()) {
+                    sender.sendMessage(color("&eNo audit entries for " + who + "."));
+                    return;
+                }
+                sender.sendMessage(color("&6Last " + entries.size() + " audit entries for " + who + ":"));
+                for (AuditReader.Entry e : entries) {
+                    sender.sendMessage(color("&7" + e));
+                }
+            });
         }
 
-        private void saveLastLocation(String uuid, Location loc) throws SQLException {
-            try (PreparedStatement ps = conn.prepareStatement("UPDATE accounts SET last_world = ?, last_x = ?, last_y = ?, last_z = ?, last_yaw = ?, last_pitch = ? WHERE uuid = ?")) {
-                ps.setString(1, loc.getWorld().getName());
-                ps.setDouble(2, loc.getX());
-                ps.setDouble(3, loc.getY());
-                ps.setDouble(4, loc.getZ());
-                ps.setFloat(5, loc.getYaw());
-                ps.setFloat(6, loc.getPitch());
-                ps.setString(7, uuid);
-                ps.executeUpdate();
+        private void startImport(CommandSender sender, String[] args) {
+            boolean running = importThread != null && importThread.isAlive();
+            if (args[1].equalsIgnoreCase("cancel")) {
+                if (running) accountImport.cancel();
+                sender.sendMessage(color(running ? "&eImport will stop after the current batch." : "&cNo import is running."));
+                return;
             }
-        }
-
-        private Location getLastLocation(String uuid) throws SQLException {
-            try (PreparedStatement ps = conn.prepareStatement("SELECT last_world, last_x, last_y, last_z, last_yaw, last_pitch FROM accounts WHERE uuid = ?")) {
-                ps.setString(1, uuid);
-                try (ResultSet rs = ps.executeQuery()) {
-                    if (!rs.next()) return null;
-                    String world = rs.getString(1);
-                    if (world == null) return null;
-                    World w = Bukkit.getWorld(world);
-                    if (w == null) return null;
-                    double x = rs.getDouble(2);
-                    double y = rs.getDouble(3);
-                    double z = rs.getDouble(4);
-                    float yaw = rs.getFloat(5);
-                    float pitch = rs.getFloat(6);
-                    return new Location(w, x, y, z, yaw, pitch);
-                }
+            if (running) {
+                sender.sendMessage(color("&cAn import is already running."));
+                return;
             }
+            File file = new File(args[1]);
+            if (!file.isAbsolute()) file = new File(getDataFolder(), args[1]);
+            if (!file.isFile()) {
+                sender.sendMessage(color("&cNo such file: " + file.getPath()));
+                return;
+            }
+            String table = args.length >= 3 ? args[2] : "authme";
+            // progress lines go to the log and, from the main thread, to whoever started the import
+            accountImport = new AccountImport(db, file, table, getConfig().getInt("storage.import-batch-size", 1000), getLogger(), line -> {
+                getLogger().info(line);
+                if (sender instanceof Player && isEnabled()) {
+                    Bukkit.getScheduler().runTask(BetterLoginSecurity.this, () -> sender.sendMessage(color("&7" + line)));
+                }
+            });
+            importThread = new Thread(accountImport, "BetterLogin-Import");
+            importThread.setDaemon(true);
+            importThread.start();
+            sender.sendMessage(color("&eImporting " + file.getName() + " in the background."));
         }
+    }
 
-        private void close() throws SQLException {
-            conn.close();
-        }
-
-        static class StoredEntry {
-            String uuid;
-            String username;
-            String hash;
-            String salt;
-            int iterations;
-            boolean isPremium;
-            Location lastLocation;
-        }
-
-        static class PasswordHash {
-            String hash;
-            String salt;
-            int iterations;
+    /** Starts a prune with the settings under prune: in config.yml, unless one is already running. Main thread only. */
+    private void startPrune(CommandSender sender, boolean dryRun) {
+        if (pruneThread != null && pruneThread.isAlive()) {
+            sender.sendMessage(color("&cA prune is already running."));
+            return;
         }
+        FileConfiguration cfg = getConfig();
+        Set<String> whitelist = new HashSet<>();
+        for (String name : cfg.getStringList("prune.whitelist")) whitelist.add(DB.normalize(name));
+        accountPrune = new AccountPrune(db, cfg.getInt("prune.inactive-days", 180), !"delete".equalsIgnoreCase(cfg.getString("prune.mode", "archive")),
+                dryRun, whitelist, sessions::isOnline,
+                cfg.getInt("prune.batch-size", 500), cfg.getLong("prune.max-lock-ms", 5), cfg.getLong("prune.pause-ms", 50),
+                cfg.getInt("prune.max-pending-writes", 50), new File(getDataFolder(), "prune-report.csv"), getLogger(), metrics, line -> {
+                    getLogger().info(line);
+                    if (sender instanceof Player && isEnabled()) {
+                        Bukkit.getScheduler().runTask(this, () -> sender.sendMessage(color("&7" + line)));
+                    }
+                });
+        pruneThread = new Thread(accountPrune, "BetterLogin-Prune");
+        pruneThread.setDaemon(true);
+        pruneThread.start();
+        if (sender instanceof Player) sender.sendMessage(color("&e" + (dryRun ? "Dry run" : "Prune") + " started in the background."));
+    }
 
-        // Password utilities: PBKDF2WithHmacSHA256
-        private static final SecureRandom random = new SecureRandom();
+    /* ---------------------------- Utilities ------------------------------ */
 
-        static PasswordHash hashPassword(String pw) {
-            try {
-                int iterations = 65536;
-                byte[] salt = new byte[16];
-                random.nextBytes(salt);
-                byte[] hash = pbkdf2(pw.toCharArray(), salt, iterations, 256);
-                PasswordHash ph = new PasswordHash();
-                ph.hash = Base64.getEncoder().encodeToString(hash);
-                ph.salt = Base64.getEncoder().encodeToString(salt);
-                ph.iterations = iterations;
-                return ph;
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
-        }
+    static String color(String s) {
+        return ChatColor.translateAlternateColorCodes('&', s);
+    }
 
-        static boolean verifyPassword(String pw, String storedHashBase64, String saltBase64, int iterations) {
-            try {
-                byte[] salt = Base64.getDecoder().decode(saltBase64);
-                byte[] expected = Base64.getDecoder().decode(storedHashBase64);
-                byte[] got = pbkdf2(pw.toCharArray(), salt, iterations, expected.length * 8);
-                return Arrays.equals(expected, got);
-            } catch (Exception e) {
-                return false;
-            }
-        }
+    // hand the result of an off-thread job back to the main thread
+    private <T> void completeSync(CompletableFuture<T> future, BiConsumer<T, Throwable> handler) {
+        future.whenComplete((result, error) -> {
+            if (!isEnabled()) return;
+            Throwable cause = (error instanceof CompletionException && error.getCause() != null) ? error.getCause() : error;
+            Bukkit.getScheduler().runTask(this, () -> {
+                long start = System.nanoTime();
+                handler.accept(result, cause);
+                metrics.mainThread("main.callback", start);
+            });
+        });
+    }
 
-        private static byte[] pbkdf2(char[] password, byte[] salt, int iterations, int bits) throws Exception {
-            PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, bits);
-            SecretKeyFactory skf = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
-            return skf.generateSecret(spec).getEncoded();
+    private void reportFailure(CommandSender sender, Throwable err, String action) {
+        if (err instanceof RejectedExecutionException) {
+            sender.sendMessage(color("&cThe server is busy, please try again in a moment."));
+        } else if (err instanceof SQLException) {
+            sender.sendMessage(color("&cDatabase error."));
+            getLogger().severe("DB error during " + action + ": " + err.getMessage());
+        } else {
+            sender.sendMessage(color("&cInternal error - contact an admin."));
+            getLogger().severe("Error during " + action + ": " + err);
         }
     }
 
@@ -0,0 +1,138 @@
+package com.ma4z.betterlogin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Bloom filter of breached and common passwords, memory-mapped from a file built by
+ * {@link BreachedPasswordsBuilder}.
+ * <p>
+ * Keys are the SHA-1 of the UTF-8 password, which is also how Have I Been Pwned publishes its lists, so a
+ * filter can be built from plain wordlists and from hash dumps alike. The {@code k} bit positions come from
+ * the first 16 bytes of the digest by double hashing. The bit array stays off-heap in the page cache, in
+ * chunks of 1 GiB so it can exceed 2 GiB; a lookup is one SHA-1 and {@code k} byte reads. A page that is not
+ * cached yet is a disk read, so lookups belong off the main thread. Thread-safe.
+ * <p>
+ * File layout: magic {@code BLBF}, version, k, reserved (4 bytes each), bit count and entry count (8 bytes
+ * each), then the bits; bit {@code i} is bit {@code i & 7} of byte {@code i >>> 3}.
+ */
+final class BreachedPasswords {
+
+    static final int MAGIC = 0x424C4246;
+    static final int VERSION = 1;
+    static final int HEADER = 32;
+    static final int CHUNK_BITS = 30;
+
+    private static final ThreadLocal<MessageDigest> SHA1 = ThreadLocal.withInitial(BreachedPasswords::sha1);
+    private static final ThreadLocal<byte[]> DIGEST = ThreadLocal.withInitial(() -> new byte[20]);
+
+    private final MappedByteBuffer[] chunks;
+    private final long bits;
+    private final int k;
+    private final long entries;
+
+    private BreachedPasswords(MappedByteBuffer[] chunks, long bits, int k, long entries) {
+        this.chunks = chunks;
+        this.bits = bits;
+        this.k = k;
+        this.entries = entries;
+    }
+
+    /** Maps a filter file. Throws {@link IOException} if it is missing, truncated or not a filter. */
+    static BreachedPasswords open(File file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            while (header.hasRemaining() && ch.read(header) >= 0) {
+                // fill
+            }
+            header.flip();
+            if (header.remaining() < HEADER || header.getInt(0) != MAGIC) throw new IOException(file.getName() + " is not a password filter");
+            if (header.getInt(4) != VERSION) throw new IOException(file.getName() + " has unsupported version " + header.getInt(4));
+            int k = header.getInt(8);
+            long bits = header.getLong(16);
+            long entries = header.getLong(24);
+            long bytes = (bits + 7) >>> 3;
+            if (k < 1 || bits < 8 || ch.size() < HEADER + bytes) throw new IOException(file.getName() + " is truncated or corrupt");
+            // the mappings stay valid after the channel is closed
+            return new BreachedPasswords(map(ch, FileChannel.MapMode.READ_ONLY, bytes), bits, k, entries);
+        }
+    }
+
+    /** True if the password is probably in the list; false means it certainly is not. */
+    boolean contains(String password) {
+        byte[] d = DIGEST.get();
+        digest(password, d);
+        long h1 = seed(d, 0);
+        long h2 = seed(d, 8);
+        for (int i = 0; i < k; i++) {
+            long bit = index(h1, h2, i, bits);
+            long at = bit >>> 3;
+            if ((chunks[(int) (at >>> CHUNK_BITS)].get((int) (at & ((1L << CHUNK_BITS) - 1))) & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Number of passwords the filter was built from. */
+    long entries() {
+        return entries;
+    }
+
+    /** Probability that a password not in the list is reported as breached, given how full the filter is. */
+    double falsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) k * entries / bits), k);
+    }
+
+    /* ------------------------ Shared with the builder ------------------------ */
+
+    /** Maps {@code bytes} of bit array after the header, in chunks of {@code 1 << CHUNK_BITS} bytes. */
+    static MappedByteBuffer[] map(FileChannel ch, FileChannel.MapMode mode, long bytes) throws IOException {
+        long chunk = 1L << CHUNK_BITS;
+        MappedByteBuffer[] out = new MappedByteBuffer[(int) ((bytes + chunk - 1) / chunk)];
+        for (int i = 0; i < out.length; i++) {
+            long start = i * chunk;
+            out[i] = ch.map(mode, HEADER + start, Math.min(chunk, bytes - start));
+        }
+        return out;
+    }
+
+    /** SHA-1 of the UTF-8 password into {@code out}, which must hold 20 bytes. */
+    static void digest(String password, byte[] out) {
+        MessageDigest sha = SHA1.get();
+        sha.update(password.getBytes(StandardCharsets.UTF_8));
+        try {
+            sha.digest(out, 0, 20);
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Big-endian long at {@code offset} of a digest; bytes 0-7 and 8-15 seed the bit positions. */
+    static long seed(byte[] digest, int offset) {
+        long v = 0;
+        for (int i = offset; i < offset + 8; i++) v = v << 8 | (digest[i] & 0xff);
+        return v;
+    }
+
+    /** Kirsch-Mitzenmacher: the i-th of k positions is h1 + i * h2 modulo the filter size. */
+    static long index(long h1, long h2, int i, long bits) {
+        return Long.remainderUnsigned(h1 + i * (h2 | 1), bits);
+    }
+
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+}
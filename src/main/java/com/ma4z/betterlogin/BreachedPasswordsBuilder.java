@@ -0,0 +1,136 @@
+package com.ma4z.betterlogin;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Builds the filter file read by {@link BreachedPasswords} from one or more wordlists, without a server:
+ * <pre>
+ * java -cp BetterLoginSecurity.jar com.ma4z.betterlogin.BreachedPasswordsBuilder [--fpp 0.001]
+ *      [--expected N] [--plain] -o breached-passwords.bloom wordlist.txt [more.txt ...]
+ * </pre>
+ * Each line is one password. Lines that are a 40-digit hex SHA-1, optionally followed by {@code :count} as
+ * in Have I Been Pwned's downloads, are taken as the hash of a password unless {@code --plain} is given.
+ * <p>
+ * The filter is sized for {@code --expected} entries (by default the inputs are counted first) at the
+ * false-positive rate {@code --fpp}, about 1.8 bytes per entry at 0.001. The bits are set in a
+ * memory-mapped temporary file next to the output, so the heap stays small for any list size, and the
+ * header goes in last before the file is moved into place.
+ */
+public final class BreachedPasswordsBuilder {
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    private BreachedPasswordsBuilder() {}
+
+    public static void main(String[] args) throws IOException {
+        double fpp = 0.001;
+        long expected = 0;
+        boolean plain = false;
+        File out = null;
+        List<File> inputs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--fpp" -> fpp = Double.parseDouble(args[++i]);
+                case "--expected" -> expected = Long.parseLong(args[++i]);
+                case "--plain" -> plain = true;
+                case "-o", "--output" -> out = new File(args[++i]);
+                default -> inputs.add(new File(args[i]));
+            }
+        }
+        if (out == null || inputs.isEmpty() || fpp <= 0 || fpp >= 1) {
+            System.err.println("Usage: BreachedPasswordsBuilder [--fpp 0.001] [--expected N] [--plain] -o OUTPUT WORDLIST...");
+            System.exit(2);
+            return;
+        }
+
+        if (expected <= 0) {
+            System.err.println("Counting entries...");
+            for (File f : inputs) {
+                try (BufferedReader in = open(f)) {
+                    while (in.readLine() != null) expected++;
+                }
+            }
+        }
+        expected = Math.max(1, expected);
+        long bits = Math.max(64, (long) Math.ceil(-expected * Math.log(fpp) / (Math.log(2) * Math.log(2))));
+        bits = (bits + 7) & ~7L;
+        int k = (int) Math.max(1, Math.min(30, Math.round((double) bits / expected * Math.log(2))));
+        long bytes = bits >>> 3;
+        System.err.printf(Locale.ROOT, "Sizing for %d entries at %.4f%%: %d MiB, %d hashes per entry.%n",
+                expected, fpp * 100, bytes >> 20, k);
+
+        File tmp = new File(out.getAbsoluteFile().getParentFile(), out.getName() + ".tmp");
+        Files.deleteIfExists(tmp.toPath());
+        long added = 0;
+        long start = System.nanoTime();
+        try (FileChannel ch = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // sparse until written; every bit starts out clear
+            ch.write(ByteBuffer.allocate(1), BreachedPasswords.HEADER + bytes - 1);
+            MappedByteBuffer[] chunks = BreachedPasswords.map(ch, FileChannel.MapMode.READ_WRITE, bytes);
+            byte[] digest = new byte[20];
+            for (File f : inputs) {
+                try (BufferedReader in = open(f)) {
+                    for (String line = in.readLine(); line != null; line = in.readLine()) {
+                        if (line.isEmpty()) continue;
+                        if (!plain && isSha1(line)) {
+                            System.arraycopy(HEX.parseHex(line, 0, 40), 0, digest, 0, 20);
+                        } else {
+                            BreachedPasswords.digest(line, digest);
+                        }
+                        long h1 = BreachedPasswords.seed(digest, 0);
+                        long h2 = BreachedPasswords.seed(digest, 8);
+                        for (int i = 0; i < k; i++) {
+                            long bit = BreachedPasswords.index(h1, h2, i, bits);
+                            long at = bit >>> 3;
+                            MappedByteBuffer chunk = chunks[(int) (at >>> BreachedPasswords.CHUNK_BITS)];
+                            int off = (int) (at & ((1L << BreachedPasswords.CHUNK_BITS) - 1));
+                            chunk.put(off, (byte) (chunk.get(off) | (1 << (bit & 7))));
+                        }
+                        if (++added % 10_000_000 == 0) System.err.println(added + " entries...");
+                    }
+                }
+            }
+            for (MappedByteBuffer chunk : chunks) chunk.force();
+            ByteBuffer header = ByteBuffer.allocate(BreachedPasswords.HEADER)
+                    .putInt(BreachedPasswords.MAGIC).putInt(BreachedPasswords.VERSION).putInt(k).putInt(0)
+                    .putLong(bits).putLong(added);
+            header.flip();
+            ch.write(header, 0);
+            ch.force(true);
+        }
+        Files.move(tmp.toPath(), out.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        double fill = Math.pow(1 - Math.exp(-(double) k * added / bits), k);
+        System.err.printf(Locale.ROOT, "Wrote %s: %d entries in %.1fs, false-positive rate %.4f%%.%n",
+                out, added, (System.nanoTime() - start) / 1e9, fill * 100);
+    }
+
+    // wordlists are often not clean UTF-8; bad bytes become U+FFFD instead of failing the build
+    private static BufferedReader open(File f) throws IOException {
+        return new BufferedReader(new InputStreamReader(Files.newInputStream(f.toPath()),
+                StandardCharsets.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE)),
+                1 << 16);
+    }
+
+    private static boolean isSha1(String line) {
+        if (line.length() < 40 || (line.length() > 40 && line.charAt(40) != ':')) return false;
+        for (int i = 0; i < 40; i++) {
+            if (Character.digit(line.charAt(i), 16) < 0) return false;
+        }
+        return true;
+    }
+}
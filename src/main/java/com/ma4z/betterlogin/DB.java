@@ -0,0 +1,183 @@
+package com.ma4z.betterlogin;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Account storage.
+ * <p>
+ * Every method returns a {@link CompletableFuture} and never touches the database on the calling
+ * thread. Account rows are served from an {@link AccountCache} that lookups read through and every
+ * write updates. Last-location saves are write-behind: {@link #saveLastLocation} only buffers, and
+ * {@link #flushLocations()} commits the buffer in one batch.
+ * <p>
+ * {@link SqliteDB} keeps the accounts in this server's passwords.db. {@link PooledDB} keeps them in a
+ * MySQL, MariaDB or PostgreSQL database that every server of a network can share.
+ */
+interface DB {
+
+    /** Opens the write connection and runs pending schema migrations. Blocks until done. */
+    void prepare() throws SQLException;
+
+    CompletableFuture<Void> createPlayer(String uuid, String username, byte[] password);
+
+    /** The account with this UUID, else the one with this username (case-insensitive), else null. */
+    CompletableFuture<StoredEntry> getPlayer(String uuid, String username);
+
+    CompletableFuture<StoredEntry> getPlayerByName(String username);
+
+    CompletableFuture<Void> deletePlayer(String uuid, String username);
+
+    /** Updates the account with this UUID or username; a null username updates exactly the row with this UUID. */
+    CompletableFuture<Void> updatePassword(String uuid, String username, byte[] password);
+
+    CompletableFuture<Void> setPremiumFlag(String uuid, String username, boolean premium);
+
+    /** Buffers the location until the next {@link #flushLocations()}. */
+    void saveLastLocation(String uuid, StoredLocation loc);
+
+    /** Commits every buffered location in one batched transaction. Completes with the number of rows written. */
+    CompletableFuture<Integer> flushLocations();
+
+    CompletableFuture<Void> recordLogin(String uuid);
+
+    CompletableFuture<StoredLocation> getLastLocation(String uuid);
+
+    /**
+     * Inserts one batch of imported accounts and moves the source's checkpoint to {@code position}, in one
+     * transaction, so an interrupted import resumes right after its last committed batch. Rows whose UUID or
+     * username already exists are left alone and counted as skipped, together with {@code rejected}
+     * (rows of the batch the caller could not convert). Completes with the number of rows inserted.
+     */
+    CompletableFuture<Integer> importAccounts(String source, List<ImportedAccount> rows, long position, int rejected);
+
+    /** Checkpoint of an earlier import of {@code source}, or null if it was never imported. */
+    CompletableFuture<ImportProgress> importProgress(String source);
+
+    /**
+     * Up to {@code limit} accounts whose last login is before {@code cutoff}, in (last login, UUID) order
+     * and strictly after the given position in that order, so callers can page through them by key.
+     */
+    CompletableFuture<List<InactiveAccount>> inactiveAccounts(long cutoff, long afterLogin, String afterUuid, int limit);
+
+    /**
+     * Deletes these accounts in one transaction, copying them to accounts_archive first if {@code archive}.
+     * An account is left alone if it has logged in since {@code cutoff}. Completes with the number removed.
+     */
+    CompletableFuture<Integer> pruneAccounts(List<InactiveAccount> accounts, long cutoff, boolean archive);
+
+    AccountCache cache();
+
+    /** Number of write operations waiting for the writer thread. */
+    int pendingWrites();
+
+    /** Flushes buffered locations and drains queued writes, then closes every connection. */
+    void close();
+
+    /** Usernames are matched case-insensitively everywhere, like Minecraft itself does. */
+    static String normalize(String username) {
+        return username == null ? null : username.toLowerCase(Locale.ROOT);
+    }
+
+    static class StoredEntry {
+        String uuid;
+        String username;
+        // self-describing hash, see PasswordHasher; never modified in place
+        byte[] password;
+        boolean isPremium;
+        StoredLocation lastLocation;
+
+        static StoredEntry of(String uuid, String username, byte[] password) {
+            StoredEntry e = new StoredEntry();
+            e.uuid = uuid;
+            e.username = username;
+            e.password = password;
+            return e;
+        }
+
+        // entries may be shared between threads, so updates produce a copy
+        StoredEntry copy() {
+            StoredEntry e = new StoredEntry();
+            e.uuid = uuid;
+            e.username = username;
+            e.password = password;
+            e.isPremium = isPremium;
+            e.lastLocation = lastLocation;
+            return e;
+        }
+
+        StoredEntry withPassword(byte[] password) {
+            StoredEntry e = copy();
+            e.password = password;
+            return e;
+        }
+
+        StoredEntry withPremium(boolean premium) {
+            StoredEntry e = copy();
+            e.isPremium = premium;
+            return e;
+        }
+
+        StoredEntry withLocation(StoredLocation loc) {
+            StoredEntry e = copy();
+            e.lastLocation = loc;
+            return e;
+        }
+    }
+
+    /** An account row from another plugin's database, with its hash already converted. */
+    static class ImportedAccount {
+        String uuid;
+        String username;
+        byte[] password;
+        long lastLogin;
+    }
+
+    static class InactiveAccount {
+        String uuid;
+        String username;
+        long lastLogin;
+    }
+
+    static class ImportProgress {
+        long position;
+        long imported;
+        long skipped;
+    }
+
+    /**
+     * Raw last-location columns. Resolving the world name has to happen on the main thread,
+     * so rows are loaded as plain values and turned into a {@link Location} there.
+     */
+    static class StoredLocation {
+        String world;
+        double x;
+        double y;
+        double z;
+        float yaw;
+        float pitch;
+
+        static StoredLocation of(Location loc) {
+            StoredLocation l = new StoredLocation();
+            l.world = loc.getWorld().getName();
+            l.x = loc.getX();
+            l.y = loc.getY();
+            l.z = loc.getZ();
+            l.yaw = loc.getYaw();
+            l.pitch = loc.getPitch();
+            return l;
+        }
+
+        /** Main thread only. Returns null if the world is no longer loaded. */
+        Location toLocation() {
+            World w = Bukkit.getWorld(world);
+            return w == null ? null : new Location(w, x, y, z, yaw, pitch);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.ma4z.betterlogin;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.util.Locale;
+
+/**
+ * The SQL that differs between the supported databases. Everything else the storage layer runs is
+ * plain SQL that all of them accept.
+ */
+enum Dialect {
+
+    SQLITE,
+    // also MariaDB, and H2 in MODE=MySQL for local testing
+    MYSQL,
+    POSTGRESQL;
+
+    /** storage.type from config.yml. Throws {@link IllegalArgumentException} for an unknown type. */
+    static Dialect of(String type) {
+        switch (type == null ? "" : type.toLowerCase(Locale.ROOT)) {
+            case "sqlite":
+                return SQLITE;
+            case "mysql":
+            case "mariadb":
+                return MYSQL;
+            case "postgresql":
+            case "postgres":
+                return POSTGRESQL;
+            default:
+                throw new IllegalArgumentException("Unknown storage type '" + type + "' (use sqlite, mysql, mariadb or postgresql)");
+        }
+    }
+
+    /** INSERT that silently skips rows violating a primary key or unique constraint. */
+    String insertIgnore(String table, String columns, String values) {
+        switch (this) {
+            case SQLITE:
+                return "INSERT OR IGNORE INTO " + table + "(" + columns + ") VALUES(" + values + ")";
+            case MYSQL:
+                return "INSERT IGNORE INTO " + table + "(" + columns + ") VALUES(" + values + ")";
+            default:
+                return "INSERT INTO " + table + "(" + columns + ") VALUES(" + values + ") ON CONFLICT DO NOTHING";
+        }
+    }
+
+    /**
+     * Insert-or-update keyed on {@code key}: on conflict {@code replaced} takes the new value and each
+     * of {@code added} is increased by it. Parameters are key, replaced, then added in order.
+     */
+    String upsertAdding(String table, String key, String replaced, String... added) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append('(').append(key).append(", ").append(replaced);
+        for (String a : added) sql.append(", ").append(a);
+        sql.append(") VALUES(?, ?");
+        for (int i = 0; i < added.length; i++) sql.append(", ?");
+        sql.append(')');
+        if (this == MYSQL) {
+            sql.append(" ON DUPLICATE KEY UPDATE ").append(replaced).append(" = VALUES(").append(replaced).append(')');
+            for (String a : added) sql.append(", ").append(a).append(" = ").append(a).append(" + VALUES(").append(a).append(')');
+        } else {
+            sql.append(" ON CONFLICT(").append(key).append(") DO UPDATE SET ").append(replaced).append(" = excluded.").append(replaced);
+            for (String a : added) sql.append(", ").append(a).append(" = ").append(table).append('.').append(a).append(" + excluded.").append(a);
+        }
+        return sql.toString();
+    }
+
+    /** Column type for the password hashes. */
+    String binaryType() {
+        switch (this) {
+            case MYSQL:
+                return "VARBINARY(512)";
+            case POSTGRESQL:
+                return "BYTEA";
+            default:
+                return "BLOB";
+        }
+    }
+
+    String doubleType() {
+        return this == POSTGRESQL ? "DOUBLE PRECISION" : "DOUBLE";
+    }
+
+    /** True if the connection itself is broken (dropped by the server, network failure) rather than the statement. */
+    boolean isConnectionError(SQLException e) {
+        if (this == SQLITE) return false;
+        String state = e.getSQLState();
+        return e instanceof SQLRecoverableException || e instanceof SQLNonTransientConnectionException
+                || (state != null && state.startsWith("08"));
+    }
+}
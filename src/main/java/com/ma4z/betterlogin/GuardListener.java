@@ -0,0 +1,98 @@
+package com.ma4z.betterlogin;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityDamageEvent;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.player.AsyncPlayerChatEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+
+import java.util.UUID;
+import java.util.function.Predicate;
+
+/**
+ * Blocks movement, damage, inventory clicks and chat for players who have not logged in yet.
+ * <p>
+ * Only registered while at least one unauthenticated player is online (see
+ * {@code BetterLoginSecurity#refreshGuards}), so logged-in players pay nothing for these events
+ * the rest of the time. While registered they are the plugin's hottest main-thread code, so each
+ * handler's time is recorded under {@code guard.<event>} and counted towards {@code main.tick}. The
+ * histograms are looked up once, and moves within a block, which are most move events and cost four
+ * comparisons, are not timed at all.
+ */
+final class GuardListener implements Listener {
+
+    private final Predicate<UUID> authenticated;
+    private final Metrics metrics;
+    private final Histogram moveTime;
+    private final Histogram damageTime;
+    private final Histogram inventoryClickTime;
+    private final Histogram chatTime;
+
+    GuardListener(Predicate<UUID> authenticated, Metrics metrics) {
+        this.authenticated = authenticated;
+        this.metrics = metrics;
+        this.moveTime = metrics.timer("guard.move");
+        this.damageTime = metrics.timer("guard.damage");
+        this.inventoryClickTime = metrics.timer("guard.inventory-click");
+        this.chatTime = metrics.timer("guard.chat");
+    }
+
+    @EventHandler(ignoreCancelled = true)
+    public void onPlayerMove(PlayerMoveEvent e) {
+        Location from = e.getFrom();
+        Location to = e.getTo();
+        // allow head rotation and sub-block jitter but not moving to another block
+        if (to == null || (from.getBlockX() == to.getBlockX() && from.getBlockY() == to.getBlockY() && from.getBlockZ() == to.getBlockZ())) {
+            return;
+        }
+        long start = System.nanoTime();
+        if (!authenticated.test(e.getPlayer().getUniqueId())) {
+            e.setTo(from);
+        }
+        metrics.mainThread(moveTime, start);
+    }
+
+    @EventHandler
+    public void onDamage(EntityDamageEvent e) {
+        long start = System.nanoTime();
+        if (e.getEntity() instanceof Player) {
+            Player p = (Player) e.getEntity();
+            if (!authenticated.test(p.getUniqueId())) {
+                e.setCancelled(true);
+            }
+        }
+        metrics.mainThread(damageTime, start);
+    }
+
+    @EventHandler
+    public void onInventoryClick(InventoryClickEvent e) {
+        long start = System.nanoTime();
+        if (e.getWhoClicked() instanceof Player) {
+            Player p = (Player) e.getWhoClicked();
+            if (!authenticated.test(p.getUniqueId())) {
+                e.setCancelled(true);
+            }
+        }
+        metrics.mainThread(inventoryClickTime, start);
+    }
+
+    @EventHandler
+    public void onChat(AsyncPlayerChatEvent e) {
+        long start = System.nanoTime();
+        Player p = e.getPlayer();
+        if (!authenticated.test(p.getUniqueId())) {
+            // allow only login/register/premiumlogin/disablelogin/unregister messages? Simpler: cancel chat and remind
+            e.setCancelled(true);
+            p.sendMessage(BetterLoginSecurity.color("&cYou must login or register before chatting. Use /login or /register."));
+        }
+        // player chat normally arrives on a network thread and costs the tick nothing
+        if (e.isAsynchronous()) {
+            chatTime.record(System.nanoTime() - start);
+        } else {
+            metrics.mainThread(chatTime, start);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.ma4z.betterlogin;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Small bounded worker pool for password hashing.
+ * PBKDF2 costs tens of milliseconds per call, so it must never run on the main server thread.
+ * When both the workers and the queue are full, new work is rejected instead of piling up.
+ */
+final class HashingPool {
+
+    private final ThreadPoolExecutor executor;
+    private final Metrics metrics;
+
+    HashingPool(int threads, int queueSize, Metrics metrics) {
+        this.metrics = metrics;
+        int size = Math.max(1, threads);
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r, "BetterLogin-Hash-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            // keep hashing from competing with the tick thread
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        };
+        this.executor = new ThreadPoolExecutor(size, size, 30L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)), factory, new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Runs the task on a hashing worker and records its run time (without queue wait) as {@code hash.<op>}.
+     * If the pool is saturated the returned future fails with {@link RejectedExecutionException}.
+     */
+    <T> CompletableFuture<T> submit(String op, Supplier<T> task) {
+        Histogram timer = metrics.timer("hash." + op);
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                long start = System.nanoTime();
+                try {
+                    return task.get();
+                } finally {
+                    timer.record(System.nanoTime() - start);
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    int queued() {
+        return executor.getQueue().size();
+    }
+
+    int active() {
+        return executor.getActiveCount();
+    }
+
+    void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
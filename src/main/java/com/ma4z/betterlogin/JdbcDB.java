@@ -0,0 +1,541 @@
+package com.ma4z.betterlogin;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * JDBC storage engine shared by the SQLite and the pooled backends.
+ * <p>
+ * All writes go through a single writer thread which owns the only write connection, so writes
+ * commit in submission order and never contend with each other. Reads run on a fixed pool of
+ * connections, one per reader thread; together with the writer that bounds the connections a
+ * backend ever opens. Prepared statements are cached per connection, and a connection that fails
+ * with a connection-level error is dropped and reopened by its thread on the next call.
+ * <p>
+ * Last-location saves are write-behind: they are coalesced per UUID in memory and committed in
+ * batched transactions by {@link #flushLocations()}, which runs on a timer, when the buffer hits its
+ * threshold, and from {@link #close()}. Lookups overlay buffered locations, so they are never stale.
+ */
+abstract class JdbcDB implements DB {
+
+    private static final String ACCOUNT_COLUMNS = "uuid, username, password, is_premium, last_world, last_x, last_y, last_z, last_yaw, last_pitch";
+
+    protected final Dialect dialect;
+    protected final Logger logger;
+    private final AccountCache cache;
+    // false when other servers write the same rows: lookups then always query and only refresh the cache
+    private final boolean cacheReads;
+    private final Metrics metrics;
+    private final int locationFlushThreshold;
+    // latest unsaved location per UUID; an entry stays here until its value is committed
+    private final ConcurrentHashMap<String, StoredLocation> pendingLocations = new ConcurrentHashMap<>();
+    private final AtomicBoolean locationFlushQueued = new AtomicBoolean();
+    // a pooled connection idle for this long is validated before use
+    private static final long IDLE_CHECK_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private final ThreadPoolExecutor writer;
+    private final ThreadPoolExecutor readers;
+    private final ThreadLocal<Handle> readHandle = new ThreadLocal<>();
+    private final List<Handle> openHandles = new CopyOnWriteArrayList<>();
+    // only ever touched from the writer thread
+    private Handle writeHandle;
+
+    JdbcDB(Dialect dialect, int readConnections, AccountCache cache, boolean cacheReads, Logger logger, Metrics metrics, int locationFlushThreshold) {
+        this.dialect = dialect;
+        this.cache = cache;
+        this.cacheReads = cacheReads;
+        this.logger = logger;
+        this.metrics = metrics;
+        this.locationFlushThreshold = Math.max(1, locationFlushThreshold);
+        this.writer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), namedThreads("BetterLogin-DB-Writer"));
+        int n = Math.max(1, readConnections);
+        this.readers = new ThreadPoolExecutor(n, n, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), namedThreads("BetterLogin-DB-Reader"));
+    }
+
+    /** Opens a new connection; read-only ones only ever run SELECTs. */
+    protected abstract Connection connect(boolean readOnly) throws SQLException;
+
+    /** Brings the schema up to date. Runs once, on the write connection. */
+    protected abstract void migrate(Connection conn) throws SQLException;
+
+    @Override
+    public void prepare() throws SQLException {
+        try {
+            write("migrate", h -> {
+                migrate(h.conn);
+                return null;
+            }).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SQLException) throw (SQLException) e.getCause();
+            throw new SQLException(e.getCause());
+        }
+    }
+
+    /* ------------------------------ Queries ------------------------------ */
+
+    @Override
+    public CompletableFuture<Void> createPlayer(String uuid, String username, byte[] password) {
+        return write("createPlayer", h -> {
+            PreparedStatement ps = h.prepare("INSERT INTO accounts(uuid, username, username_lc, password, last_login) VALUES(?,?,?,?,?)");
+            ps.setString(1, uuid);
+            ps.setString(2, username);
+            ps.setString(3, DB.normalize(username));
+            ps.setBytes(4, password);
+            ps.setLong(5, System.currentTimeMillis());
+            ps.executeUpdate();
+            cache.put(StoredEntry.of(uuid, username, password));
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<StoredEntry> getPlayer(String uuid, String username) {
+        StoredEntry cached = cacheReads ? cache.get(uuid, username) : null;
+        if (cached != null) return CompletableFuture.completedFuture(withPendingLocation(cached));
+        long epoch = cache.epoch();
+        return read("getPlayer", h -> {
+            // two primary/unique index probes instead of a scan; a compound SELECT has no defined row order,
+            // so the priority column is what makes the uuid match win
+            PreparedStatement ps = h.prepare("SELECT " + ACCOUNT_COLUMNS + ", 0 AS p FROM accounts WHERE uuid = ? UNION ALL SELECT "
+                    + ACCOUNT_COLUMNS + ", 1 AS p FROM accounts WHERE username_lc = ? ORDER BY p LIMIT 1");
+            ps.setString(1, uuid);
+            ps.setString(2, DB.normalize(username));
+            try (ResultSet rs = ps.executeQuery()) {
+                StoredEntry e = rs.next() ? readEntry(rs) : null;
+                cache.putLoaded(e, epoch);
+                return withPendingLocation(e);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<StoredEntry> getPlayerByName(String username) {
+        StoredEntry cached = cacheReads ? cache.getByName(username) : null;
+        if (cached != null) return CompletableFuture.completedFuture(withPendingLocation(cached));
+        long epoch = cache.epoch();
+        return read("getPlayerByName", h -> {
+            PreparedStatement ps = h.prepare("SELECT " + ACCOUNT_COLUMNS + " FROM accounts WHERE username_lc = ?");
+            ps.setString(1, DB.normalize(username));
+            try (ResultSet rs = ps.executeQuery()) {
+                StoredEntry e = rs.next() ? readEntry(rs) : null;
+                cache.putLoaded(e, epoch);
+                return withPendingLocation(e);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> deletePlayer(String uuid, String username) {
+        return write("deletePlayer", h -> {
+            PreparedStatement ps = h.prepare("DELETE FROM accounts WHERE uuid = ? OR username_lc = ?");
+            ps.setString(1, uuid);
+            ps.setString(2, DB.normalize(username));
+            ps.executeUpdate();
+            cache.remove(uuid, username);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> updatePassword(String uuid, String username, byte[] password) {
+        return write("updatePassword", h -> {
+            PreparedStatement ps = h.prepare("UPDATE accounts SET password = ? WHERE uuid = ? OR username_lc = ?");
+            ps.setBytes(1, password);
+            ps.setString(2, uuid);
+            ps.setString(3, DB.normalize(username));
+            ps.executeUpdate();
+            cache.update(uuid, username, e -> e.withPassword(password));
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> setPremiumFlag(String uuid, String username, boolean premium) {
+        return write("setPremiumFlag", h -> {
+            PreparedStatement ps = h.prepare("UPDATE accounts SET is_premium = ? WHERE uuid = ? OR username_lc = ?");
+            ps.setInt(1, premium ? 1 : 0);
+            ps.setString(2, uuid);
+            ps.setString(3, DB.normalize(username));
+            ps.executeUpdate();
+            cache.update(uuid, username, e -> e.withPremium(premium));
+            return null;
+        });
+    }
+
+    /** Repeated saves for the same UUID before a flush collapse into one UPDATE. */
+    @Override
+    public void saveLastLocation(String uuid, StoredLocation loc) {
+        pendingLocations.put(uuid, loc);
+        if (pendingLocations.size() >= locationFlushThreshold) {
+            flushLocations();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Integer> flushLocations() {
+        if (pendingLocations.isEmpty() || !locationFlushQueued.compareAndSet(false, true)) {
+            return CompletableFuture.completedFuture(0);
+        }
+        CompletableFuture<Integer> result = write("flushLocations", h -> {
+            locationFlushQueued.set(false);
+            Map<String, StoredLocation> batch = new HashMap<>(pendingLocations);
+            if (batch.isEmpty()) return 0;
+            PreparedStatement ps = h.prepare("UPDATE accounts SET last_world = ?, last_x = ?, last_y = ?, last_z = ?, last_yaw = ?, last_pitch = ? WHERE uuid = ?");
+            h.conn.setAutoCommit(false);
+            try {
+                for (Map.Entry<String, StoredLocation> en : batch.entrySet()) {
+                    StoredLocation loc = en.getValue();
+                    ps.setString(1, loc.world);
+                    ps.setDouble(2, loc.x);
+                    ps.setDouble(3, loc.y);
+                    ps.setDouble(4, loc.z);
+                    ps.setFloat(5, loc.yaw);
+                    ps.setFloat(6, loc.pitch);
+                    ps.setString(7, en.getKey());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                h.conn.commit();
+            } catch (SQLException e) {
+                h.conn.rollback();
+                throw e;
+            } finally {
+                h.conn.setAutoCommit(true);
+            }
+            for (Map.Entry<String, StoredLocation> en : batch.entrySet()) {
+                StoredLocation loc = en.getValue();
+                cache.update(en.getKey(), null, e -> e.withLocation(loc));
+                // a newer save that arrived during the commit stays buffered
+                pendingLocations.remove(en.getKey(), loc);
+            }
+            return batch.size();
+        });
+        result.exceptionally(e -> {
+            locationFlushQueued.set(false);
+            logger.warning("Could not save buffered last locations: " + e.getMessage());
+            return 0;
+        });
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<Void> recordLogin(String uuid) {
+        return write("recordLogin", h -> {
+            PreparedStatement ps = h.prepare("UPDATE accounts SET last_login = ? WHERE uuid = ?");
+            ps.setLong(1, System.currentTimeMillis());
+            ps.setString(2, uuid);
+            ps.executeUpdate();
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<StoredLocation> getLastLocation(String uuid) {
+        StoredLocation buffered = pendingLocations.get(uuid);
+        if (buffered != null) return CompletableFuture.completedFuture(buffered);
+        return read("getLastLocation", h -> {
+            PreparedStatement ps = h.prepare("SELECT last_world, last_x, last_y, last_z, last_yaw, last_pitch FROM accounts WHERE uuid = ?");
+            ps.setString(1, uuid);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? readLocation(rs, 1) : null;
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Integer> importAccounts(String source, List<ImportedAccount> rows, long position, int rejected) {
+        return write("importAccounts", h -> {
+            PreparedStatement insert = h.prepare(dialect.insertIgnore("accounts", "uuid, username, username_lc, password, last_login", "?,?,?,?,?"));
+            PreparedStatement progress = h.prepare(dialect.upsertAdding("import_progress", "source", "position", "imported", "skipped"));
+            h.conn.setAutoCommit(false);
+            int inserted = 0;
+            try {
+                for (ImportedAccount a : rows) {
+                    insert.setString(1, a.uuid);
+                    insert.setString(2, a.username);
+                    insert.setString(3, DB.normalize(a.username));
+                    insert.setBytes(4, a.password);
+                    insert.setLong(5, a.lastLogin);
+                    insert.addBatch();
+                }
+                for (int n : insert.executeBatch()) {
+                    // drivers that rewrite batches report SUCCESS_NO_INFO; those rows count as inserted
+                    if (n > 0 || n == Statement.SUCCESS_NO_INFO) inserted++;
+                }
+                progress.setString(1, source);
+                progress.setLong(2, position);
+                progress.setInt(3, inserted);
+                progress.setInt(4, rows.size() - inserted + rejected);
+                progress.executeUpdate();
+                h.conn.commit();
+            } catch (SQLException e) {
+                h.conn.rollback();
+                throw e;
+            } finally {
+                h.conn.setAutoCommit(true);
+            }
+            return inserted;
+        });
+    }
+
+    @Override
+    public CompletableFuture<ImportProgress> importProgress(String source) {
+        return read("importProgress", h -> {
+            PreparedStatement ps = h.prepare("SELECT position, imported, skipped FROM import_progress WHERE source = ?");
+            ps.setString(1, source);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return null;
+                ImportProgress p = new ImportProgress();
+                p.position = rs.getLong(1);
+                p.imported = rs.getLong(2);
+                p.skipped = rs.getLong(3);
+                return p;
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<InactiveAccount>> inactiveAccounts(long cutoff, long afterLogin, String afterUuid, int limit) {
+        return read("inactiveAccounts", h -> {
+            // a range scan of idx_accounts_last_login; rows without a last login never match
+            PreparedStatement ps = h.prepare("SELECT uuid, username, last_login FROM accounts WHERE last_login < ? AND (last_login, uuid) > (?, ?) ORDER BY last_login, uuid LIMIT ?");
+            ps.setLong(1, cutoff);
+            ps.setLong(2, afterLogin);
+            ps.setString(3, afterUuid);
+            ps.setInt(4, limit);
+            List<InactiveAccount> out = new ArrayList<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    InactiveAccount a = new InactiveAccount();
+                    a.uuid = rs.getString(1);
+                    a.username = rs.getString(2);
+                    a.lastLogin = rs.getLong(3);
+                    out.add(a);
+                }
+            }
+            return out;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Integer> pruneAccounts(List<InactiveAccount> accounts, long cutoff, boolean archive) {
+        return write("pruneAccounts", h -> {
+            PreparedStatement copy = archive ? h.prepare("INSERT INTO accounts_archive(uuid, username, username_lc, password, is_premium, last_login, archived_at) "
+                    + "SELECT uuid, username, username_lc, password, is_premium, last_login, ? FROM accounts WHERE uuid = ? AND last_login < ?") : null;
+            PreparedStatement delete = h.prepare("DELETE FROM accounts WHERE uuid = ? AND last_login < ?");
+            long now = System.currentTimeMillis();
+            h.conn.setAutoCommit(false);
+            int removed = 0;
+            try {
+                for (InactiveAccount a : accounts) {
+                    if (copy != null) {
+                        copy.setLong(1, now);
+                        copy.setString(2, a.uuid);
+                        copy.setLong(3, cutoff);
+                        copy.addBatch();
+                    }
+                    delete.setString(1, a.uuid);
+                    delete.setLong(2, cutoff);
+                    delete.addBatch();
+                }
+                if (copy != null) copy.executeBatch();
+                for (int n : delete.executeBatch()) {
+                    if (n > 0 || n == Statement.SUCCESS_NO_INFO) removed++;
+                }
+                h.conn.commit();
+            } catch (SQLException e) {
+                h.conn.rollback();
+                throw e;
+            } finally {
+                h.conn.setAutoCommit(true);
+            }
+            for (InactiveAccount a : accounts) {
+                cache.remove(a.uuid, a.username);
+            }
+            return removed;
+        });
+    }
+
+    @Override
+    public AccountCache cache() {
+        return cache;
+    }
+
+    @Override
+    public int pendingWrites() {
+        return writer.getQueue().size();
+    }
+
+    @Override
+    public void close() {
+        flushLocations();
+        writer.shutdown();
+        readers.shutdown();
+        try {
+            if (!writer.awaitTermination(30, TimeUnit.SECONDS)) {
+                writer.shutdownNow();
+            }
+            if (!readers.awaitTermination(5, TimeUnit.SECONDS)) {
+                readers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            writer.shutdownNow();
+            readers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        for (Handle h : openHandles) {
+            h.close();
+        }
+        openHandles.clear();
+    }
+
+    /* ----------------------------- Internals ----------------------------- */
+
+    @FunctionalInterface
+    interface SqlCall<T> {
+        T call(Handle h) throws SQLException;
+    }
+
+    // op names the histogram (sql.<op>) that records the time from submission to completion
+    protected <T> CompletableFuture<T> write(String op, SqlCall<T> call) {
+        return submit(op, writer, () -> {
+            writeHandle = usable(writeHandle, false);
+            try {
+                return call.call(writeHandle);
+            } catch (SQLException e) {
+                if (dialect.isConnectionError(e)) writeHandle = discard(writeHandle);
+                throw e;
+            }
+        });
+    }
+
+    private <T> CompletableFuture<T> read(String op, SqlCall<T> call) {
+        return submit(op, readers, () -> {
+            Handle h = usable(readHandle.get(), true);
+            readHandle.set(h);
+            try {
+                return call.call(h);
+            } catch (SQLException e) {
+                if (dialect.isConnectionError(e)) readHandle.set(discard(h));
+                throw e;
+            }
+        });
+    }
+
+    /** The thread's handle, reopened if it is missing or has been idle long enough for the server to drop it. */
+    private Handle usable(Handle h, boolean readOnly) throws SQLException {
+        long now = System.nanoTime();
+        if (h != null && now - h.lastUsed > IDLE_CHECK_NANOS && !h.conn.isValid(2)) {
+            h = discard(h);
+        }
+        if (h == null) {
+            Connection conn = connect(readOnly);
+            h = new Handle(conn);
+            openHandles.add(h);
+        }
+        h.lastUsed = now;
+        return h;
+    }
+
+    private Handle discard(Handle h) {
+        openHandles.remove(h);
+        h.close();
+        return null;
+    }
+
+    private interface Job<T> {
+        T run() throws SQLException;
+    }
+
+    private <T> CompletableFuture<T> submit(String op, ExecutorService executor, Job<T> job) {
+        CompletableFuture<T> future = metrics.track("sql." + op, new CompletableFuture<>());
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(job.run());
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(new SQLException("Database is closed", e));
+        }
+        return future;
+    }
+
+    private StoredEntry withPendingLocation(StoredEntry e) {
+        if (e == null || pendingLocations.isEmpty()) return e;
+        StoredLocation buffered = pendingLocations.get(e.uuid);
+        return buffered == null ? e : e.withLocation(buffered);
+    }
+
+    private static ThreadFactory namedThreads(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    private static StoredEntry readEntry(ResultSet rs) throws SQLException {
+        StoredEntry e = new StoredEntry();
+        e.uuid = rs.getString(1);
+        e.username = rs.getString(2);
+        e.password = rs.getBytes(3);
+        e.isPremium = rs.getInt(4) == 1;
+        e.lastLocation = readLocation(rs, 5);
+        return e;
+    }
+
+    private static StoredLocation readLocation(ResultSet rs, int first) throws SQLException {
+        String world = rs.getString(first);
+        if (world == null) return null;
+        StoredLocation l = new StoredLocation();
+        l.world = world;
+        l.x = rs.getDouble(first + 1);
+        l.y = rs.getDouble(first + 2);
+        l.z = rs.getDouble(first + 3);
+        l.yaw = rs.getFloat(first + 4);
+        l.pitch = rs.getFloat(first + 5);
+        return l;
+    }
+
+    /** A connection plus its cached prepared statements. Confined to a single thread. */
+    static final class Handle {
+        final Connection conn;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+        private long lastUsed;
+
+        private Handle(Connection conn) {
+            this.conn = conn;
+        }
+
+        PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement ps = statements.get(sql);
+            if (ps == null) {
+                ps = conn.prepareStatement(sql);
+                statements.put(sql, ps);
+            } else {
+                ps.clearParameters();
+            }
+            return ps;
+        }
+
+        private void close() {
+            for (PreparedStatement ps : statements.values()) {
+                try {
+                    ps.close();
+                } catch (SQLException ignored) {}
+            }
+            statements.clear();
+            try {
+                conn.close();
+            } catch (SQLException ignored) {}
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.ma4z.betterlogin;
+
+import org.bukkit.entity.Player;
+
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+
+/**
+ * Spreads join-state work over ticks during a reconnect wave.
+ * <p>
+ * Joining players are queued instead of each getting their own delayed task. {@link #tick()} runs
+ * once per server tick and processes queued players until the per-tick time budget is used up.
+ * Players whose account row is already in memory go first, because their join is cheap.
+ * Main thread only.
+ */
+final class JoinAdmission {
+
+    private static final class Pending {
+        final Player player;
+        final long readyAt;
+
+        Pending(Player player, long readyAt) {
+            this.player = player;
+            this.readyAt = readyAt;
+        }
+    }
+
+    private final ArrayDeque<Pending> cached = new ArrayDeque<>();
+    private final ArrayDeque<Pending> uncached = new ArrayDeque<>();
+    private final Consumer<Player> handler;
+    private final long budgetNanos;
+    private final int delayTicks;
+    private long tick;
+    private int peakDepth;
+
+    /**
+     * @param handler    join-state work to run for each admitted player
+     * @param budgetMs   main-thread time the queue may use per tick
+     * @param delayTicks minimum ticks between join and handling, to let the player fully initialize
+     */
+    JoinAdmission(Consumer<Player> handler, double budgetMs, int delayTicks) {
+        this.handler = handler;
+        this.budgetNanos = (long) (Math.max(0.1, budgetMs) * 1_000_000L);
+        this.delayTicks = Math.max(0, delayTicks);
+    }
+
+    void enqueue(Player player, boolean accountCached) {
+        Pending p = new Pending(player, tick + delayTicks);
+        (accountCached ? cached : uncached).addLast(p);
+        peakDepth = Math.max(peakDepth, depth());
+    }
+
+    /** Runs queued join work until the budget for this tick is spent. At least one player is handled per tick. */
+    void tick() {
+        tick++;
+        if (cached.isEmpty() && uncached.isEmpty()) return;
+        long deadline = System.nanoTime() + budgetNanos;
+        boolean first = true;
+        while (first || System.nanoTime() < deadline) {
+            Pending next = poll(cached);
+            if (next == null) next = poll(uncached);
+            if (next == null) return;
+            first = false;
+            if (next.player.isOnline()) {
+                handler.accept(next.player);
+            }
+        }
+    }
+
+    // both queues are in join order, so only the head needs checking
+    private Pending poll(ArrayDeque<Pending> queue) {
+        Pending head = queue.peekFirst();
+        if (head == null || head.readyAt > tick) return null;
+        return queue.pollFirst();
+    }
+
+    int depth() {
+        return cached.size() + uncached.size();
+    }
+
+    int peakDepth() {
+        return peakDepth;
+    }
+}
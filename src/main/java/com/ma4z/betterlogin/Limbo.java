@@ -0,0 +1,130 @@
+package com.ma4z.betterlogin;
+
+import org.bukkit.Bukkit;
+import org.bukkit.GameRule;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.WorldCreator;
+import org.bukkit.entity.Player;
+import org.bukkit.generator.ChunkGenerator;
+import org.bukkit.plugin.Plugin;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Where unauthenticated players wait.
+ * <ul>
+ *     <li>{@code spawn}: teleport to the first world's spawn (the original behaviour).</li>
+ *     <li>{@code in-place}: no teleport at all; the guards keep the player where they joined.</li>
+ *     <li>{@code void-world}: teleport into an empty world whose single chunk is kept loaded,
+ *     so waiting players never load or keep real terrain busy.</li>
+ * </ul>
+ */
+final class Limbo {
+
+    enum Mode { SPAWN, IN_PLACE, VOID_WORLD }
+
+    private final Plugin plugin;
+    private final Mode mode;
+    private final String worldName;
+    private World voidWorld;
+
+    Limbo(Plugin plugin, String mode, String worldName) {
+        this.plugin = plugin;
+        this.mode = parse(mode);
+        this.worldName = worldName;
+    }
+
+    private Mode parse(String s) {
+        try {
+            return Mode.valueOf(s.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (RuntimeException e) {
+            plugin.getLogger().warning("Unknown limbo.mode '" + s + "', using spawn.");
+            return Mode.SPAWN;
+        }
+    }
+
+    /** Creates or loads the void world when that mode is selected. Main thread, during enable. */
+    void enable() {
+        if (mode != Mode.VOID_WORLD) return;
+        voidWorld = new WorldCreator(worldName).generator(new VoidGenerator()).generateStructures(false).createWorld();
+        if (voidWorld == null) {
+            plugin.getLogger().warning("Could not create limbo world '" + worldName + "', falling back to in-place limbo.");
+            return;
+        }
+        voidWorld.setGameRule(GameRule.SPAWN_CHUNK_RADIUS, 0);
+        voidWorld.setGameRule(GameRule.DO_MOB_SPAWNING, false);
+        voidWorld.setGameRule(GameRule.DO_DAYLIGHT_CYCLE, false);
+        voidWorld.setGameRule(GameRule.DO_WEATHER_CYCLE, false);
+        voidWorld.setSpawnLocation(0, 64, 0);
+        // the only chunk anyone ever stands in
+        voidWorld.addPluginChunkTicket(0, 0, plugin);
+    }
+
+    void disable() {
+        if (voidWorld != null) {
+            voidWorld.removePluginChunkTicket(0, 0, plugin);
+        }
+    }
+
+    /** Where to put a player while they are unauthenticated, or null to leave them where they are. */
+    Location holdingLocation() {
+        switch (mode) {
+            case SPAWN:
+                Location spawn = Bukkit.getWorlds().get(0).getSpawnLocation().clone();
+                spawn.setY(spawn.getY() + 2);
+                return spawn;
+            case VOID_WORLD:
+                return voidWorld == null ? null : new Location(voidWorld, 0.5, 64, 0.5);
+            default:
+                return null;
+        }
+    }
+
+    boolean teleports() {
+        return holdingLocation() != null;
+    }
+
+    boolean isLimboWorld(World w) {
+        return voidWorld != null && voidWorld.equals(w);
+    }
+
+    /** Generates nothing: every chunk is empty air. */
+    private static final class VoidGenerator extends ChunkGenerator {
+        @Override
+        public boolean shouldGenerateNoise() {
+            return false;
+        }
+
+        @Override
+        public boolean shouldGenerateSurface() {
+            return false;
+        }
+
+        @Override
+        public boolean shouldGenerateCaves() {
+            return false;
+        }
+
+        @Override
+        public boolean shouldGenerateDecorations() {
+            return false;
+        }
+
+        @Override
+        public boolean shouldGenerateMobs() {
+            return false;
+        }
+
+        @Override
+        public boolean shouldGenerateStructures() {
+            return false;
+        }
+
+        @Override
+        public Location getFixedSpawnLocation(World world, Random random) {
+            return new Location(world, 0.5, 64, 0.5);
+        }
+    }
+}
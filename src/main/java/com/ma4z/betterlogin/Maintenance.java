@@ -0,0 +1,249 @@
+package com.ma4z.betterlogin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * Backups and upkeep of passwords.db, on a thread of its own.
+ * <p>
+ * {@link #poll()} is called once a minute. A backup is taken when the newest one is older than the
+ * configured interval; backups are named by time and only the newest few are kept. Once a day inside
+ * the off-peak window it checks the file's integrity, runs ANALYZE and returns free pages with an
+ * incremental vacuum in short steps. Every step is skipped while more than {@code maxPendingWrites}
+ * writes are queued and retried on a later poll. A failed integrity check stops the rotation from
+ * deleting older backups.
+ * <p>
+ * Files created before incremental auto-vacuum was the default need a one-time full VACUUM to switch
+ * over, which holds every write until it is done. That only happens on {@link #enableIncrementalVacuum()};
+ * until then the scheduled upkeep leaves free pages alone.
+ */
+final class Maintenance {
+
+    private static final DateTimeFormatter BACKUP_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final String PREFIX = "passwords-";
+
+    private final SqliteDB db;
+    private final File backupDir;
+    private final long backupIntervalMillis;
+    private final int keep;
+    private final LocalTime windowStart;
+    private final LocalTime windowEnd;
+    private final int maxPendingWrites;
+    private final int vacuumPagesPerStep;
+    private final Logger logger;
+    private final Metrics metrics;
+    private final ExecutorService worker;
+    private final AtomicBoolean queued = new AtomicBoolean();
+
+    // worker thread only
+    private long lastBackup;
+    private LocalDate lastUpkeep;
+    private boolean damaged;
+    private boolean vacuumHintLogged;
+
+    /**
+     * @param window off-peak window as {@code HH:mm-HH:mm} in server local time; may wrap past midnight
+     * @throws IllegalArgumentException if the window is malformed
+     */
+    Maintenance(SqliteDB db, File backupDir, long backupIntervalHours, int keep, String window,
+                int maxPendingWrites, int vacuumPagesPerStep, Logger logger, Metrics metrics) {
+        this.db = db;
+        this.backupDir = backupDir;
+        this.backupIntervalMillis = TimeUnit.HOURS.toMillis(Math.max(0, backupIntervalHours));
+        this.keep = Math.max(1, keep);
+        String[] parts = window == null ? new String[0] : window.split("-");
+        try {
+            if (parts.length != 2) throw new DateTimeParseException("expected HH:mm-HH:mm", String.valueOf(window), 0);
+            this.windowStart = LocalTime.parse(parts[0].trim());
+            this.windowEnd = LocalTime.parse(parts[1].trim());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid maintenance window '" + window + "' (use HH:mm-HH:mm)");
+        }
+        this.maxPendingWrites = Math.max(0, maxPendingWrites);
+        this.vacuumPagesPerStep = Math.max(1, vacuumPagesPerStep);
+        this.logger = logger;
+        this.metrics = metrics;
+        this.worker = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "BetterLogin-Maintenance");
+            t.setDaemon(true);
+            return t;
+        });
+        File[] existing = backups();
+        this.lastBackup = existing.length == 0 ? 0 : existing[0].lastModified();
+    }
+
+    /** Runs whatever is due, unless the previous run is still going. Any thread. */
+    void poll() {
+        if (!queued.compareAndSet(false, true)) return;
+        try {
+            worker.execute(() -> {
+                try {
+                    runDue();
+                } finally {
+                    queued.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            queued.set(false);
+        }
+    }
+
+    /** Takes a backup now, regardless of the interval. Completes with the new file. */
+    CompletableFuture<File> backupNow() {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return backup();
+            } catch (SQLException | IOException e) {
+                throw new CompletionException(e);
+            }
+        }, worker);
+    }
+
+    /**
+     * Switches passwords.db to incremental auto-vacuum with a full VACUUM, after any running step.
+     * Completes with false if the file was already in that mode.
+     */
+    CompletableFuture<Boolean> enableIncrementalVacuum() {
+        return CompletableFuture.supplyAsync(() -> {
+            if (db.incrementalVacuumEnabled().join()) return false;
+            logger.info("Switching passwords.db to incremental vacuum (one-time full VACUUM, logins wait until it is done)...");
+            long start = System.nanoTime();
+            db.enableIncrementalVacuum().join();
+            metrics.record("maintenance.vacuum", System.nanoTime() - start);
+            logger.info("passwords.db now uses incremental vacuum.");
+            return true;
+        }, worker);
+    }
+
+    /** Lets a running step finish, then stops the worker. Call before closing the database. */
+    void shutdown() {
+        worker.shutdown();
+        try {
+            if (!worker.awaitTermination(30, TimeUnit.SECONDS)) worker.shutdownNow();
+        } catch (InterruptedException e) {
+            worker.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runDue() {
+        try {
+            if (backupIntervalMillis > 0 && System.currentTimeMillis() - lastBackup >= backupIntervalMillis && !busy()) {
+                backup();
+            }
+            LocalDateTime now = LocalDateTime.now();
+            if (!now.toLocalDate().equals(lastUpkeep) && inWindow(now.toLocalTime()) && upkeep()) {
+                lastUpkeep = now.toLocalDate();
+            }
+        } catch (Exception e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            metrics.increment("maintenance.failures");
+            logger.warning("Database maintenance failed: " + cause.getMessage());
+        }
+    }
+
+    private File backup() throws SQLException, IOException {
+        long start = System.nanoTime();
+        backupDir.mkdirs();
+        File target = new File(backupDir, PREFIX + LocalDateTime.now().format(BACKUP_TIME) + ".db");
+        File tmp = new File(backupDir, target.getName() + ".tmp");
+        Files.deleteIfExists(tmp.toPath());
+        db.backup(tmp);
+        Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        lastBackup = System.currentTimeMillis();
+        metrics.record("maintenance.backup", System.nanoTime() - start);
+        logger.info("Backed up passwords.db to " + target.getName());
+        rotate();
+        return target;
+    }
+
+    private void rotate() {
+        if (damaged) return;
+        File[] all = backups();
+        for (int i = keep; i < all.length; i++) {
+            if (!all[i].delete()) logger.warning("Could not delete old backup " + all[i].getName());
+        }
+    }
+
+    /** Newest first. */
+    private File[] backups() {
+        File[] files = backupDir.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(".db"));
+        if (files == null) return new File[0];
+        // the timestamp in the name sorts chronologically
+        Arrays.sort(files, Comparator.comparing(File::getName).reversed());
+        return files;
+    }
+
+    /** Integrity check, ANALYZE, incremental vacuum. False if it backed off before finishing. */
+    private boolean upkeep() throws SQLException {
+        if (busy()) return false;
+        long start = System.nanoTime();
+        List<String> problems = db.quickCheck();
+        metrics.record("maintenance.integrity-check", System.nanoTime() - start);
+        if (!problems.isEmpty()) {
+            damaged = true;
+            metrics.increment("maintenance.integrity-failures");
+            logger.severe("passwords.db failed its integrity check; older backups are kept until a restart. First problems: "
+                    + problems.subList(0, Math.min(5, problems.size())));
+            return true;
+        }
+
+        if (busy()) return false;
+        start = System.nanoTime();
+        db.analyze().join();
+        metrics.record("maintenance.analyze", System.nanoTime() - start);
+
+        // converting the file blocks every write for a full VACUUM, so it is left to an admin
+        if (!db.incrementalVacuumEnabled().join()) {
+            if (!vacuumHintLogged) {
+                vacuumHintLogged = true;
+                logger.info("passwords.db is not in incremental vacuum mode, so free pages are not returned to the disk. "
+                        + "Run /betterlogin vacuum at a quiet time to convert it once.");
+            }
+            return true;
+        }
+        int free;
+        do {
+            if (busy()) return false;
+            start = System.nanoTime();
+            free = db.incrementalVacuum(vacuumPagesPerStep).join();
+            metrics.record("maintenance.incremental-vacuum", System.nanoTime() - start);
+        } while (free > 0);
+        return true;
+    }
+
+    // back off while players are waiting on the writer
+    private boolean busy() {
+        if (db.pendingWrites() <= maxPendingWrites) return false;
+        metrics.increment("maintenance.postponed");
+        return true;
+    }
+
+    private boolean inWindow(LocalTime t) {
+        if (windowStart.isBefore(windowEnd)) {
+            return !t.isBefore(windowStart) && t.isBefore(windowEnd);
+        }
+        // wraps past midnight
+        return !t.isBefore(windowStart) || t.isBefore(windowEnd);
+    }
+}
@@ -0,0 +1,246 @@
+package com.ma4z.betterlogin;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters, gauges and latency histograms for the plugin.
+ * <p>
+ * Names are dotted ({@code sql.getPlayer}, {@code command.login}). Recording is lock-free and safe
+ * from any thread. The same values are shown by {@code /betterlogin stats}, published as a JMX MBean
+ * and optionally written as a Prometheus text file.
+ * <p>
+ * Main-thread cost is tracked separately: code running on the server thread adds its elapsed time with
+ * {@link #mainThread(String, long)}, and {@link #endTick()} (called once per tick) moves the total into the
+ * {@code main.tick} histogram.
+ */
+final class Metrics {
+
+    private final ConcurrentHashMap<String, Histogram> timers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private final Histogram tickTime = timer("main.tick");
+    // main thread only
+    private long mainThreadNanos;
+    private ObjectName mbeanName;
+
+    Histogram timer(String name) {
+        return timers.computeIfAbsent(name, k -> new Histogram());
+    }
+
+    void record(String name, long nanos) {
+        timer(name).record(nanos);
+    }
+
+    void increment(String name) {
+        counters.computeIfAbsent(name, k -> new LongAdder()).increment();
+    }
+
+    void add(String name, long delta) {
+        counters.computeIfAbsent(name, k -> new LongAdder()).add(delta);
+    }
+
+    void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /** Records the time from now until the future completes, successfully or not. */
+    <T> CompletableFuture<T> track(String name, CompletableFuture<T> future) {
+        long start = System.nanoTime();
+        Histogram h = timer(name);
+        future.whenComplete((r, e) -> h.record(System.nanoTime() - start));
+        return future;
+    }
+
+    /** Main thread only: records the time since {@code startNanos} under {@code name} and adds it to this tick's plugin time. */
+    void mainThread(String name, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        timer(name).record(elapsed);
+        mainThreadNanos += elapsed;
+    }
+
+    /** As {@link #mainThread(String, long)} with a histogram looked up once by the caller, for per-event handlers. */
+    void mainThread(Histogram timer, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        timer.record(elapsed);
+        mainThreadNanos += elapsed;
+    }
+
+    /** Main thread only, once per tick. */
+    void endTick() {
+        tickTime.record(mainThreadNanos);
+        mainThreadNanos = 0;
+    }
+
+    /** Number of recordings per timer whose name starts with {@code prefix}, sorted by name. */
+    Map<String, Long> counts(String prefix) {
+        Map<String, Long> out = new TreeMap<>();
+        timers.forEach((k, h) -> {
+            if (k.startsWith(prefix)) out.put(k, h.count());
+        });
+        return out;
+    }
+
+    /* ------------------------------ Output ------------------------------ */
+
+    /** One line per metric, for /betterlogin stats. */
+    List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, Long> en : values(counters, gauges).entrySet()) {
+            lines.add(en.getKey() + ": " + en.getValue());
+        }
+        for (Map.Entry<String, Histogram> en : new TreeMap<>(timers).entrySet()) {
+            Histogram h = en.getValue();
+            if (h.count() == 0) continue;
+            lines.add(String.format(Locale.ROOT, "%s: n=%d avg=%.2fms p50=%.2fms p99=%.2fms max=%.2fms", en.getKey(), h.count(),
+                    millis(h.sum()) / h.count(), millis(h.quantile(0.5)), millis(h.quantile(0.99)), millis(h.max())));
+        }
+        return lines;
+    }
+
+    /** Prometheus text exposition format: counters, gauges and one summary per histogram (in seconds). */
+    String prometheus() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, LongAdder> en : new TreeMap<>(counters).entrySet()) {
+            String n = promName(en.getKey()) + "_total";
+            sb.append("# TYPE ").append(n).append(" counter\n").append(n).append(' ').append(en.getValue().sum()).append('\n');
+        }
+        for (Map.Entry<String, LongSupplier> en : new TreeMap<>(gauges).entrySet()) {
+            String n = promName(en.getKey());
+            sb.append("# TYPE ").append(n).append(" gauge\n").append(n).append(' ').append(en.getValue().getAsLong()).append('\n');
+        }
+        for (Map.Entry<String, Histogram> en : new TreeMap<>(timers).entrySet()) {
+            String n = promName(en.getKey()) + "_seconds";
+            Histogram h = en.getValue();
+            sb.append("# TYPE ").append(n).append(" summary\n");
+            for (double q : new double[] {0.5, 0.9, 0.99}) {
+                sb.append(n).append("{quantile=\"").append(q).append("\"} ").append(seconds(h.quantile(q))).append('\n');
+            }
+            sb.append(n).append("_sum ").append(seconds(h.sum())).append('\n');
+            sb.append(n).append("_count ").append(h.count()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /** Writes {@link #prometheus()} next to the target and renames it over, so scrapers never read a partial file. */
+    void writePrometheus(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        Files.write(tmp.toPath(), prometheus().getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    void registerMBean() throws Exception {
+        mbeanName = new ObjectName("com.ma4z.betterlogin:type=Metrics");
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new MBean(), mbeanName);
+    }
+
+    void unregisterMBean() {
+        if (mbeanName == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+        } catch (Exception ignored) {}
+        mbeanName = null;
+    }
+
+    /* ----------------------------- Internals ----------------------------- */
+
+    private static Map<String, Long> values(Map<String, LongAdder> counters, Map<String, LongSupplier> gauges) {
+        Map<String, Long> out = new TreeMap<>();
+        counters.forEach((k, v) -> out.put(k, v.sum()));
+        gauges.forEach((k, v) -> out.put(k, v.getAsLong()));
+        return out;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    private static String promName(String name) {
+        return "betterlogin_" + name.replaceAll("[^A-Za-z0-9]", "_").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Read-only view for JMX consoles. Counters and gauges are long attributes under their own names;
+     * each histogram contributes {@code <name>.count}, {@code .p50Millis}, {@code .p99Millis} and {@code .maxMillis}.
+     */
+    private final class MBean implements DynamicMBean {
+
+        private Map<String, Object> attributes() {
+            Map<String, Object> out = new TreeMap<>(values(counters, gauges));
+            timers.forEach((k, h) -> {
+                out.put(k + ".count", h.count());
+                out.put(k + ".p50Millis", millis(h.quantile(0.5)));
+                out.put(k + ".p99Millis", millis(h.quantile(0.99)));
+                out.put(k + ".maxMillis", millis(h.max()));
+            });
+            return out;
+        }
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Object v = attributes().get(attribute);
+            if (v == null) throw new AttributeNotFoundException(attribute);
+            return v;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] names) {
+            Map<String, Object> all = attributes();
+            AttributeList list = new AttributeList();
+            for (String n : names) {
+                if (all.containsKey(n)) list.add(new Attribute(n, all.get(n)));
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) {
+            throw new UnsupportedOperationException("read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException("no operations");
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> infos = new ArrayList<>();
+            for (Map.Entry<String, Object> en : attributes().entrySet()) {
+                infos.add(new MBeanAttributeInfo(en.getKey(), en.getValue().getClass().getName(), en.getKey(), true, false, false));
+            }
+            return new MBeanInfo(Metrics.class.getName(), "BetterLoginSecurity metrics",
+                    infos.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+    }
+}
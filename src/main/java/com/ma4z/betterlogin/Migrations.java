@@ -0,0 +1,229 @@
+package com.ma4z.betterlogin;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Ordered schema migrations for passwords.db.
+ * <p>
+ * The applied version is kept in {@code schema_version}. At startup every migration above that
+ * version runs in its own transaction together with the version bump, so an interrupted upgrade
+ * leaves the file at the last fully applied version. Never edit a released migration; append a new one.
+ * <p>
+ * A shared database ({@link PooledDB}) starts from {@link #runShared}'s baseline, which is the schema as of
+ * the latest migration, and only runs migrations added after that. Migrations must therefore use SQL that
+ * SQLite, MySQL and PostgreSQL all accept, and the baseline must be kept in step with them.
+ */
+final class Migrations {
+
+    @FunctionalInterface
+    private interface Step {
+        void apply(Connection conn, Dialect dialect, Logger log) throws SQLException;
+    }
+
+    private static final class Migration {
+        final int version;
+        final String description;
+        final Step step;
+
+        Migration(int version, String description, Step step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+
+    private static final List<Migration> MIGRATIONS = new ArrayList<>();
+
+    static {
+        MIGRATIONS.add(new Migration(1, "create accounts table", (conn, dialect, log) -> {
+            // files created before versioning already have this table
+            exec(conn, "CREATE TABLE IF NOT EXISTS accounts (uuid TEXT PRIMARY KEY, username TEXT, hash TEXT, salt TEXT, iterations INTEGER, is_premium INTEGER DEFAULT 0, last_world TEXT, last_x REAL, last_y REAL, last_z REAL, last_yaw REAL, last_pitch REAL)");
+        }));
+        MIGRATIONS.add(new Migration(2, "case-normalized unique username index", (conn, dialect, log) -> {
+            exec(conn, "ALTER TABLE accounts ADD COLUMN username_lc TEXT");
+            // Minecraft names are ASCII, so SQLite's lower() matches toLowerCase(Locale.ROOT)
+            exec(conn, "UPDATE accounts SET username_lc = lower(username)");
+            // older versions compared names case-sensitively; the oldest row keeps each name and the others are
+            // moved, unchanged, to accounts_conflicts for an admin to resolve
+            exec(conn, "CREATE TABLE accounts_conflicts AS SELECT * FROM accounts WHERE 0");
+            String newer = "username_lc IS NOT NULL AND rowid NOT IN (SELECT min(rowid) FROM accounts WHERE username_lc IS NOT NULL GROUP BY username_lc)";
+            int moved = update(conn, "INSERT INTO accounts_conflicts SELECT * FROM accounts WHERE " + newer);
+            if (moved > 0) {
+                List<String> names = new ArrayList<>();
+                try (Statement st = conn.createStatement();
+                     ResultSet rs = st.executeQuery("SELECT username FROM accounts_conflicts ORDER BY username_lc LIMIT 50")) {
+                    while (rs.next()) names.add(rs.getString(1));
+                }
+                if (moved > names.size()) names.add("and " + (moved - names.size()) + " more");
+                update(conn, "DELETE FROM accounts WHERE " + newer);
+                log.warning(moved + " account(s) had a username that only differs in case from an older account and were moved to "
+                        + "the accounts_conflicts table: " + String.join(", ", names) + ". Those players have to register again "
+                        + "unless an admin restores their row.");
+            }
+            exec(conn, "CREATE UNIQUE INDEX idx_accounts_username_lc ON accounts(username_lc)");
+        }));
+        MIGRATIONS.add(new Migration(3, "last_login column", (conn, dialect, log) -> {
+            exec(conn, "ALTER TABLE accounts ADD COLUMN last_login INTEGER");
+            // existing accounts count as seen at upgrade time
+            try (PreparedStatement ps = conn.prepareStatement("UPDATE accounts SET last_login = ?")) {
+                ps.setLong(1, System.currentTimeMillis());
+                ps.executeUpdate();
+            }
+        }));
+        MIGRATIONS.add(new Migration(4, "binary password column", (conn, dialect, log) -> {
+            exec(conn, "ALTER TABLE accounts ADD COLUMN password BLOB");
+            // the Base64 TEXT columns always held PBKDF2WithHmacSHA256; convert them once instead of decoding on every login
+            Map<String, byte[]> converted = new HashMap<>();
+            int broken = 0;
+            try (Statement st = conn.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT uuid, hash, salt, iterations FROM accounts WHERE hash IS NOT NULL")) {
+                while (rs.next()) {
+                    try {
+                        converted.put(rs.getString(1), Pbkdf2Hasher.fromLegacy(rs.getString(2), rs.getString(3), rs.getInt(4)));
+                    } catch (IllegalArgumentException | NullPointerException e) {
+                        broken++;
+                    }
+                }
+            }
+            try (PreparedStatement ps = conn.prepareStatement("UPDATE accounts SET password = ?, hash = NULL, salt = NULL, iterations = NULL WHERE uuid = ?")) {
+                int n = 0;
+                for (Map.Entry<String, byte[]> en : converted.entrySet()) {
+                    ps.setBytes(1, en.getValue());
+                    ps.setString(2, en.getKey());
+                    ps.addBatch();
+                    if (++n % 500 == 0) ps.executeBatch();
+                }
+                ps.executeBatch();
+            }
+            if (broken > 0) {
+                // left untouched; these players cannot log in until an admin uses /setpassword
+                log.warning(broken + " account(s) have an unreadable password hash and were not converted.");
+            }
+        }));
+        MIGRATIONS.add(new Migration(5, "import progress table", (conn, dialect, log) -> {
+            // one row per import source; updated in the same transaction as each imported batch
+            exec(conn, "CREATE TABLE import_progress (source TEXT PRIMARY KEY, position INTEGER NOT NULL, imported INTEGER NOT NULL, skipped INTEGER NOT NULL)");
+        }));
+        MIGRATIONS.add(new Migration(6, "inactivity index and accounts archive", (conn, dialect, log) -> {
+            // lets pruning page through inactive accounts in (last_login, uuid) order without sorting
+            createIndex(conn, dialect, "idx_accounts_last_login", "accounts", "last_login, uuid");
+            // pruned accounts moved out of accounts; not unique, a name can be pruned more than once
+            exec(conn, "CREATE TABLE IF NOT EXISTS accounts_archive (uuid VARCHAR(36) NOT NULL, username VARCHAR(32), username_lc VARCHAR(32), "
+                    + "password " + dialect.binaryType() + ", is_premium INTEGER, last_login BIGINT, archived_at BIGINT NOT NULL)");
+            createIndex(conn, dialect, "idx_accounts_archive_username_lc", "accounts_archive", "username_lc");
+        }));
+    }
+
+    private Migrations() {}
+
+    /** Brings the schema up to date. Must run on the connection that owns writes. */
+    static void run(Connection conn, Dialect dialect, Logger log) throws SQLException {
+        exec(conn, "CREATE TABLE IF NOT EXISTS schema_version (version INTEGER NOT NULL)");
+        int current = currentVersion(conn);
+        for (Migration m : MIGRATIONS) {
+            if (m.version <= current) continue;
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                m.step.apply(conn, dialect, log);
+                setVersion(conn, m.version);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw new SQLException("Schema migration " + m.version + " (" + m.description + ") failed: " + e.getMessage(), e);
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+            log.info("Applied schema migration " + m.version + ": " + m.description);
+            current = m.version;
+        }
+    }
+
+    /**
+     * Schema setup for a shared database: an empty one gets the current schema in one step, an existing one
+     * the migrations added since it was created. Servers starting at the same time may race here; every
+     * statement tolerates that.
+     */
+    static void runShared(Connection conn, Dialect dialect, Logger log) throws SQLException {
+        exec(conn, "CREATE TABLE IF NOT EXISTS schema_version (version INTEGER NOT NULL)");
+        if (currentVersion(conn) > 0) {
+            run(conn, dialect, log);
+            return;
+        }
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            exec(conn, "CREATE TABLE IF NOT EXISTS accounts (uuid VARCHAR(36) NOT NULL PRIMARY KEY, username VARCHAR(32), username_lc VARCHAR(32), "
+                    + "password " + dialect.binaryType() + ", is_premium INTEGER DEFAULT 0, last_world VARCHAR(64), last_x " + dialect.doubleType()
+                    + ", last_y " + dialect.doubleType() + ", last_z " + dialect.doubleType() + ", last_yaw REAL, last_pitch REAL, last_login BIGINT, "
+                    + "UNIQUE (username_lc))");
+            exec(conn, "CREATE TABLE IF NOT EXISTS import_progress (source VARCHAR(512) NOT NULL PRIMARY KEY, position BIGINT NOT NULL, imported BIGINT NOT NULL, skipped BIGINT NOT NULL)");
+            createIndex(conn, dialect, "idx_accounts_last_login", "accounts", "last_login, uuid");
+            exec(conn, "CREATE TABLE IF NOT EXISTS accounts_archive (uuid VARCHAR(36) NOT NULL, username VARCHAR(32), username_lc VARCHAR(32), "
+                    + "password " + dialect.binaryType() + ", is_premium INTEGER, last_login BIGINT, archived_at BIGINT NOT NULL)");
+            createIndex(conn, dialect, "idx_accounts_archive_username_lc", "accounts_archive", "username_lc");
+            setVersion(conn, latestVersion());
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw new SQLException("Creating the shared schema failed: " + e.getMessage(), e);
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        log.info("Created the shared schema at version " + latestVersion());
+    }
+
+    static int latestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+    }
+
+    private static int currentVersion(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SELECT max(version) FROM schema_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static void setVersion(Connection conn, int version) throws SQLException {
+        exec(conn, "DELETE FROM schema_version");
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO schema_version(version) VALUES(?)")) {
+            ps.setInt(1, version);
+            ps.executeUpdate();
+        }
+    }
+
+    private static void exec(Connection conn, String sql) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute(sql);
+        }
+    }
+
+    /** CREATE INDEX that is a no-op if another server created the index first. */
+    private static void createIndex(Connection conn, Dialect dialect, String name, String table, String columns) throws SQLException {
+        if (dialect != Dialect.MYSQL) {
+            exec(conn, "CREATE INDEX IF NOT EXISTS " + name + " ON " + table + "(" + columns + ")");
+            return;
+        }
+        // MySQL has no IF NOT EXISTS for indexes; its DDL commits on its own, so the error aborts nothing
+        try {
+            exec(conn, "CREATE INDEX " + name + " ON " + table + "(" + columns + ")");
+        } catch (SQLException e) {
+            // ER_DUP_KEYNAME
+            if (e.getErrorCode() != 1061) throw e;
+        }
+    }
+
+    private static int update(Connection conn, String sql) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            return st.executeUpdate(sql);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.ma4z.betterlogin;
+
+/**
+ * A password hashing scheme that can make new hashes, and so can be the configured one.
+ * Implementations are stateless apart from their cost settings.
+ */
+interface PasswordHasher extends PasswordVerifier {
+
+    /** Hashes with a fresh random salt and this hasher's current parameters. */
+    byte[] hash(char[] password);
+
+    /** True if {@code stored} was made by this scheme with (close enough to) its current parameters. */
+    boolean isCurrent(byte[] stored);
+}
@@ -0,0 +1,52 @@
+package com.ma4z.betterlogin;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Picks the configured {@link PasswordHasher} and verifies stored hashes with whichever scheme made them,
+ * including the verify-only {@link PasswordVerifier}s kept for imported accounts.
+ */
+final class PasswordHashers {
+
+    // verification only reads parameters from the hash, so one default instance per id is enough
+    private static final Map<Integer, PasswordVerifier> VERIFIERS = new HashMap<>();
+
+    static {
+        register(new Pbkdf2Hasher(Pbkdf2Hasher.SHA256, 65536));
+        register(new Pbkdf2Hasher(Pbkdf2Hasher.SHA512, 65536));
+        register(new ScryptHasher(14, 8, 1));
+        register(new AuthMeSha256Verifier());
+    }
+
+    private PasswordHashers() {}
+
+    private static void register(PasswordVerifier verifier) {
+        VERIFIERS.put(verifier.id(), verifier);
+    }
+
+    /**
+     * Creates the hasher named in config.yml. {@code cost} is the PBKDF2 iteration count, or log2(N) for scrypt.
+     * Throws {@link IllegalArgumentException} for an unknown name or out-of-range parameters.
+     */
+    static PasswordHasher create(String name, int cost, int blockSize, int parallelism) {
+        switch (name == null ? "" : name.toLowerCase(Locale.ROOT)) {
+            case "pbkdf2-sha256":
+                return new Pbkdf2Hasher(Pbkdf2Hasher.SHA256, cost);
+            case "pbkdf2-sha512":
+                return new Pbkdf2Hasher(Pbkdf2Hasher.SHA512, cost);
+            case "scrypt":
+                return new ScryptHasher(cost, blockSize, parallelism);
+            default:
+                throw new IllegalArgumentException("Unknown hashing algorithm '" + name + "' (use pbkdf2-sha256, pbkdf2-sha512 or scrypt)");
+        }
+    }
+
+    /** Verifies with the scheme recorded in the hash's first byte. False for empty or unknown hashes. */
+    static boolean verify(String password, byte[] stored) {
+        if (stored == null || stored.length == 0) return false;
+        PasswordVerifier h = VERIFIERS.get(stored[0] & 0xff);
+        return h != null && h.verify(password.toCharArray(), stored);
+    }
+}
@@ -0,0 +1,23 @@
+package com.ma4z.betterlogin;
+
+/**
+ * Checks passwords against hashes of one scheme.
+ * <p>
+ * Every hash is a self-describing byte string: the first byte is the scheme's {@link #id()}, followed
+ * by whatever parameters and salt the scheme needs and then the derived key. A hash can therefore be
+ * verified by the scheme that made it even after the configured scheme or its cost has changed.
+ * Schemes that are only kept for hashes imported from elsewhere implement just this interface, so they
+ * can never be configured for new hashes; the others are {@link PasswordHasher}s.
+ * Implementations are safe to call from any thread.
+ */
+interface PasswordVerifier {
+
+    /** Leading byte of every hash of this scheme. Never reuse or renumber an id. */
+    int id();
+
+    /** Name of the scheme; for a {@link PasswordHasher}, the one used in config.yml. */
+    String name();
+
+    /** Checks a password against a hash with this scheme's id, using the parameters stored in the hash. */
+    boolean verify(char[] password, byte[] stored);
+}
@@ -0,0 +1,169 @@
+package com.ma4z.betterlogin;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PBKDF2 with HMAC-SHA256 or HMAC-SHA512.
+ * <p>
+ * Layout: {@code id(1) | iterations(4) | saltLength(1) | salt | key}. The key factory is looked up
+ * once per thread instead of on every call. Iteration counts above {@link #MAX_ITERATIONS} are never
+ * produced, converted or verified, so one crafted row cannot hold a hashing thread for minutes.
+ */
+final class Pbkdf2Hasher implements PasswordHasher {
+
+    static final int SHA256 = 1;
+    static final int SHA512 = 2;
+
+    /** Ten times the highest cost calibration picks by default. */
+    static final int MAX_ITERATIONS = 10_000_000;
+
+    private static final int SALT_BYTES = 16;
+    private static final SecureRandom random = new SecureRandom();
+
+    private final int id;
+    private final String name;
+    private final int iterations;
+    private final int keyBytes;
+    private final ThreadLocal<SecretKeyFactory> factory;
+
+    Pbkdf2Hasher(int id, int iterations) {
+        if (id != SHA256 && id != SHA512) throw new IllegalArgumentException("Unknown PBKDF2 id " + id);
+        this.id = id;
+        this.name = id == SHA256 ? "pbkdf2-sha256" : "pbkdf2-sha512";
+        this.iterations = Math.max(1, Math.min(MAX_ITERATIONS, iterations));
+        this.keyBytes = id == SHA256 ? 32 : 64;
+        String algorithm = id == SHA256 ? "PBKDF2WithHmacSHA256" : "PBKDF2WithHmacSHA512";
+        this.factory = ThreadLocal.withInitial(() -> {
+            try {
+                return SecretKeyFactory.getInstance(algorithm);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(algorithm + " is not available", e);
+            }
+        });
+    }
+
+    @Override
+    public int id() {
+        return id;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    int iterations() {
+        return iterations;
+    }
+
+    @Override
+    public byte[] hash(char[] password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        return encode(id, iterations, salt, derive(password, salt, iterations, keyBytes));
+    }
+
+    @Override
+    public boolean verify(char[] password, byte[] stored) {
+        if (stored == null || stored.length < 6 || stored[0] != id) return false;
+        ByteBuffer buf = ByteBuffer.wrap(stored, 1, stored.length - 1);
+        int storedIterations = buf.getInt();
+        int saltLength = buf.get() & 0xff;
+        if (storedIterations <= 0 || storedIterations > MAX_ITERATIONS || buf.remaining() <= saltLength) return false;
+        byte[] salt = new byte[saltLength];
+        buf.get(salt);
+        byte[] expected = new byte[buf.remaining()];
+        buf.get(expected);
+        return MessageDigest.isEqual(expected, derive(password, salt, storedIterations, expected.length));
+    }
+
+    /** Same scheme, and an iteration count within 20% so calibration jitter does not re-hash everyone after a restart. */
+    @Override
+    public boolean isCurrent(byte[] stored) {
+        if (stored == null || stored.length < 5 || stored[0] != id) return false;
+        int storedIterations = ByteBuffer.wrap(stored, 1, 4).getInt();
+        return Math.abs(storedIterations - iterations) <= iterations / 5;
+    }
+
+    /**
+     * Converts a hash from the old Base64 TEXT columns (always PBKDF2WithHmacSHA256) to the binary layout.
+     * Throws {@link IllegalArgumentException} if the columns are not valid Base64.
+     */
+    static byte[] fromLegacy(String hashBase64, String saltBase64, int iterations) {
+        byte[] salt = Base64.getDecoder().decode(saltBase64);
+        byte[] key = Base64.getDecoder().decode(hashBase64);
+        if (salt.length > 255 || key.length == 0) throw new IllegalArgumentException("Unexpected hash length");
+        return encode(SHA256, iterations, salt, key);
+    }
+
+    /**
+     * Converts AuthMe's {@code pbkdf2_sha256$iterations$salt$key} (PBKDF2 and PBKDF2DJANGO; the key is hex or
+     * Base64 respectively) to the binary layout. The salt is used as its text bytes, as AuthMe does.
+     * Throws {@link IllegalArgumentException} if the string is not in that format or its iteration count is
+     * above {@link #MAX_ITERATIONS}.
+     */
+    static byte[] fromAuthMe(String hash) {
+        String[] parts = hash.split("\\$");
+        if (parts.length != 4 || !parts[0].equals("pbkdf2_sha256")) throw new IllegalArgumentException("Not a PBKDF2 hash");
+        int iterations = Integer.parseInt(parts[1]);
+        byte[] salt = parts[2].getBytes(StandardCharsets.UTF_8);
+        byte[] key = parts[3].matches("[0-9a-fA-F]+") && parts[3].length() % 2 == 0
+                ? HexFormat.of().parseHex(parts[3])
+                : Base64.getDecoder().decode(parts[3]);
+        if (iterations <= 0 || iterations > MAX_ITERATIONS || salt.length > 255 || key.length == 0) {
+            throw new IllegalArgumentException("Unexpected PBKDF2 parameters");
+        }
+        return encode(SHA256, iterations, salt, key);
+    }
+
+    /**
+     * Measures this scheme on this machine and returns the iteration count that takes about
+     * {@code targetMillis} per hash, rounded to a multiple of 1000 and clamped to [min, max].
+     * Takes a few hundred milliseconds, so never call it on the main thread.
+     */
+    int calibrate(long targetMillis, int min, int max) {
+        final int probe = 10000;
+        char[] pw = "calibration".toCharArray();
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        // let the JIT compile the HMAC loop before timing it
+        for (int i = 0; i < 3; i++) derive(pw, salt, probe, keyBytes);
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long start = System.nanoTime();
+            derive(pw, salt, probe, keyBytes);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        long result = probe * TimeUnit.MILLISECONDS.toNanos(targetMillis) / Math.max(1, best);
+        result = Math.round(result / 1000.0) * 1000;
+        return (int) Math.max(min, Math.min(max, result));
+    }
+
+    private byte[] derive(char[] password, byte[] salt, int rounds, int length) {
+        PBEKeySpec spec = new PBEKeySpec(password, salt, rounds, length * 8);
+        try {
+            return factory.get().generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static byte[] encode(int id, int iterations, byte[] salt, byte[] key) {
+        ByteBuffer buf = ByteBuffer.allocate(1 + 4 + 1 + salt.length + key.length);
+        buf.put((byte) id).putInt(iterations).put((byte) salt.length).put(salt).put(key);
+        Arrays.fill(key, (byte) 0);
+        return buf.array();
+    }
+}
@@ -0,0 +1,40 @@
+package com.ma4z.betterlogin;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * Storage in a MySQL, MariaDB or PostgreSQL database shared by several servers.
+ * <p>
+ * The plugin holds at most {@code poolSize + 1} connections: one per reader thread and one for the
+ * writer. Other servers change the same rows, so lookups always query the database and only refresh
+ * the local cache; writes still go through it.
+ */
+final class PooledDB extends JdbcDB {
+
+    private final String url;
+    private final Properties properties = new Properties();
+
+    PooledDB(Dialect dialect, String url, String username, String password, int poolSize,
+             AccountCache cache, Logger logger, Metrics metrics, int locationFlushThreshold) {
+        super(dialect, poolSize, cache, false, logger, metrics, locationFlushThreshold);
+        this.url = url;
+        if (username != null && !username.isEmpty()) properties.setProperty("user", username);
+        if (password != null && !password.isEmpty()) properties.setProperty("password", password);
+    }
+
+    @Override
+    protected Connection connect(boolean readOnly) throws SQLException {
+        Connection conn = DriverManager.getConnection(url, properties);
+        conn.setReadOnly(readOnly);
+        return conn;
+    }
+
+    @Override
+    protected void migrate(Connection conn) throws SQLException {
+        Migrations.runShared(conn, dialect, logger);
+    }
+}
@@ -0,0 +1,263 @@
+package com.ma4z.betterlogin;
+
+import java.net.InetAddress;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throttles password attempts before they reach the hashing pool.
+ * <p>
+ * Every attempt must take a token from both the client IP's and the player's token bucket, and
+ * a slot from a global cap on concurrent hash computations. Repeated wrong passwords lock the
+ * IP and player out of further attempts for an escalating time; only an IP lockout also refuses
+ * connections. Tracked keys expire after a period of inactivity and
+ * the tables are size-bounded, so a flood of distinct IPs cannot grow memory without limit.
+ */
+final class RateLimiter {
+
+    enum Decision { ALLOWED, RATE_LIMITED, LOCKED_OUT, BUSY }
+
+    /** Result of a failed attempt. */
+    static final class Failure {
+        final boolean lockedOut;
+        final long lockoutMillis;
+
+        Failure(boolean lockedOut, long lockoutMillis) {
+            this.lockedOut = lockedOut;
+            this.lockoutMillis = lockoutMillis;
+        }
+    }
+
+    private final Table<InetAddress> byIp;
+    private final Table<UUID> byPlayer;
+    private final Semaphore hashSlots;
+    private final int lockoutFailures;
+    private final long lockoutBaseMillis;
+    private final long lockoutMaxMillis;
+
+    RateLimiter(int ipCapacity, int ipRefillPerMinute, int playerCapacity, int playerRefillPerMinute,
+                int maxConcurrentHashes, int lockoutFailures, long lockoutBaseSeconds, long lockoutMaxSeconds,
+                int maxTracked, long expireMinutes) {
+        long ttl = Math.max(1, expireMinutes) * 60_000L;
+        this.byIp = new Table<>(ipCapacity, ipRefillPerMinute, maxTracked, ttl);
+        this.byPlayer = new Table<>(playerCapacity, playerRefillPerMinute, maxTracked, ttl);
+        this.hashSlots = new Semaphore(Math.max(1, maxConcurrentHashes));
+        this.lockoutFailures = Math.max(1, lockoutFailures);
+        this.lockoutBaseMillis = Math.max(1, lockoutBaseSeconds) * 1000L;
+        this.lockoutMaxMillis = Math.max(lockoutBaseSeconds, lockoutMaxSeconds) * 1000L;
+    }
+
+    /**
+     * Checks lockouts and takes a token from both buckets plus a global hash slot. A refused attempt
+     * spends nothing: otherwise one rate-limited name could drain the bucket of an IP that many players
+     * share. On ALLOWED the caller must call {@link #releaseHashSlot()} once the hash work is finished.
+     */
+    Decision tryAttempt(InetAddress ip, UUID player) {
+        long now = System.currentTimeMillis();
+        Record ipRec = ip == null ? null : byIp.get(ip, now);
+        Record playerRec = byPlayer.get(player, now);
+        if ((ip != null && ipRec == null) || playerRec == null) {
+            // tables are full of live entries: we are under a flood, refuse rather than grow
+            return Decision.RATE_LIMITED;
+        }
+        if ((ipRec != null && ipRec.lockedUntil > now) || playerRec.lockedUntil > now) {
+            return Decision.LOCKED_OUT;
+        }
+        if (!playerRec.bucket.tryTake(now)) {
+            return Decision.RATE_LIMITED;
+        }
+        if (ipRec != null && !ipRec.bucket.tryTake(now)) {
+            playerRec.bucket.refund();
+            return Decision.RATE_LIMITED;
+        }
+        if (!hashSlots.tryAcquire()) {
+            playerRec.bucket.refund();
+            if (ipRec != null) ipRec.bucket.refund();
+            return Decision.BUSY;
+        }
+        return Decision.ALLOWED;
+    }
+
+    void releaseHashSlot() {
+        hashSlots.release();
+    }
+
+    /**
+     * Milliseconds left on a lockout of this IP, or 0. Used to refuse connections at pre-login. A player's
+     * own lockout is deliberately not checked there: offline-mode UUIDs follow from the name, so anyone could
+     * earn one for somebody else and keep them off the server; {@link #tryAttempt} enforces it instead.
+     */
+    long ipLockedFor(InetAddress ip) {
+        Record r = ip == null ? null : byIp.peek(ip);
+        return r == null ? 0 : Math.max(0, r.lockedUntil - System.currentTimeMillis());
+    }
+
+    /** Milliseconds left on a lockout of this IP or player, whichever ends later, or 0. */
+    long lockedFor(InetAddress ip, UUID player) {
+        long now = System.currentTimeMillis();
+        long until = 0;
+        Record r = ip == null ? null : byIp.peek(ip);
+        if (r != null) until = Math.max(until, r.lockedUntil);
+        r = byPlayer.peek(player);
+        if (r != null) until = Math.max(until, r.lockedUntil);
+        return Math.max(0, until - now);
+    }
+
+    /** Records a wrong password. Every {@code lockoutFailures} failures start a lockout twice as long as the last one. */
+    Failure recordFailure(InetAddress ip, UUID player) {
+        long now = System.currentTimeMillis();
+        long lockout = 0;
+        Record r = ip == null ? null : byIp.get(ip, now);
+        if (r != null) lockout = Math.max(lockout, r.fail(now));
+        r = byPlayer.get(player, now);
+        if (r != null) lockout = Math.max(lockout, r.fail(now));
+        return new Failure(lockout > 0, lockout);
+    }
+
+    void recordSuccess(InetAddress ip, UUID player) {
+        Record r = ip == null ? null : byIp.peek(ip);
+        if (r != null) r.failures.set(0);
+        r = byPlayer.peek(player);
+        if (r != null) {
+            r.failures.set(0);
+            r.lockouts.set(0);
+        }
+    }
+
+    /** Drops entries that have been idle longer than the expiry. Safe from any thread. */
+    void sweep() {
+        long now = System.currentTimeMillis();
+        byIp.sweep(now);
+        byPlayer.sweep(now);
+    }
+
+    int tracked() {
+        return byIp.size() + byPlayer.size();
+    }
+
+    /* ----------------------------- Internals ----------------------------- */
+
+    private final class Record {
+        final Bucket bucket;
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicInteger lockouts = new AtomicInteger();
+        volatile long lockedUntil;
+        volatile long lastSeen;
+
+        Record(Bucket bucket, long now) {
+            this.bucket = bucket;
+            this.lastSeen = now;
+        }
+
+        // returns the lockout started by this failure, or 0
+        long fail(long now) {
+            if (failures.incrementAndGet() % lockoutFailures != 0) return 0;
+            int n = Math.min(lockouts.getAndIncrement(), 20);
+            long duration = Math.min(lockoutMaxMillis, lockoutBaseMillis << n);
+            lockedUntil = now + duration;
+            return duration;
+        }
+    }
+
+    private final class Table<K> {
+        private final ConcurrentHashMap<K, Record> map = new ConcurrentHashMap<>();
+        private final int capacity;
+        private final int refillPerMinute;
+        private final int maxSize;
+        private final long ttlMillis;
+
+        Table(int capacity, int refillPerMinute, int maxSize, long ttlMillis) {
+            this.capacity = capacity;
+            this.refillPerMinute = refillPerMinute;
+            this.maxSize = Math.max(16, maxSize);
+            this.ttlMillis = ttlMillis;
+        }
+
+        Record peek(K key) {
+            return map.get(key);
+        }
+
+        // existing or new record; null when the table is full of live entries
+        Record get(K key, long now) {
+            Record r = map.get(key);
+            if (r == null) {
+                if (map.size() >= maxSize) {
+                    sweep(now);
+                    if (map.size() >= maxSize) return null;
+                }
+                r = map.computeIfAbsent(key, k -> new Record(new Bucket(capacity, refillPerMinute, now), now));
+            }
+            r.lastSeen = now;
+            return r;
+        }
+
+        void sweep(long now) {
+            Iterator<Map.Entry<K, Record>> it = map.entrySet().iterator();
+            while (it.hasNext()) {
+                Record r = it.next().getValue();
+                if (now - r.lastSeen > ttlMillis && r.lockedUntil < now) {
+                    it.remove();
+                }
+            }
+        }
+
+        int size() {
+            return map.size();
+        }
+    }
+
+    /**
+     * Lock-free token bucket. Tokens (in thousandths) and the last refill time are packed into
+     * one long and updated with compare-and-set.
+     */
+    static final class Bucket {
+        private static final int TIME_BITS = 42;
+        private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+        private static final long MAX_MILLI_TOKENS = (1L << (64 - TIME_BITS)) - 1;
+
+        private final AtomicLong state;
+        private final long capacity;
+        private final long refillPerMinute;
+
+        Bucket(int capacity, int refillPerMinute, long now) {
+            this.capacity = Math.min(MAX_MILLI_TOKENS, Math.max(1, capacity) * 1000L);
+            this.refillPerMinute = Math.max(0, refillPerMinute);
+            this.state = new AtomicLong(pack(this.capacity, now));
+        }
+
+        boolean tryTake(long now) {
+            while (true) {
+                long s = state.get();
+                long tokens = s >>> TIME_BITS;
+                long last = s & TIME_MASK;
+                long elapsed = Math.max(0, (now & TIME_MASK) - last);
+                // milli-tokens earned since the last refill; keep the old timestamp until at least one is earned
+                long earned = elapsed * refillPerMinute / 60;
+                if (earned > 0) {
+                    tokens = Math.min(capacity, tokens + earned);
+                    last = now & TIME_MASK;
+                }
+                if (tokens < 1000) return false;
+                if (state.compareAndSet(s, pack(tokens - 1000, last))) return true;
+            }
+        }
+
+        /** Gives back a token taken by {@link #tryTake} for an attempt that was refused after all. */
+        void refund() {
+            while (true) {
+                long s = state.get();
+                long tokens = Math.min(capacity, (s >>> TIME_BITS) + 1000);
+                if (state.compareAndSet(s, pack(tokens, s & TIME_MASK))) return;
+            }
+        }
+
+        private static long pack(long milliTokens, long time) {
+            return (milliTokens << TIME_BITS) | (time & TIME_MASK);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.ma4z.betterlogin;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * scrypt (RFC 7914), a memory-hard scheme, in plain Java.
+ * <p>
+ * Layout: {@code id(1) | log2(N)(1) | r(1) | p(1) | saltLength(1) | salt | key}. Each hash needs
+ * {@code 128 * r * N} bytes of scratch memory (16 MiB at the defaults N=2^14, r=8), once per hashing thread.
+ */
+final class ScryptHasher implements PasswordHasher {
+
+    static final int ID = 3;
+
+    private static final int SALT_BYTES = 16;
+    private static final int KEY_BYTES = 32;
+    private static final SecureRandom random = new SecureRandom();
+
+    private final int log2N;
+    private final int r;
+    private final int p;
+
+    ScryptHasher(int log2N, int r, int p) {
+        if (log2N < 1 || log2N > 24) throw new IllegalArgumentException("scrypt cost must be between 1 and 24");
+        if (r < 1 || r > 255 || p < 1 || p > 255) throw new IllegalArgumentException("scrypt block-size and parallelism must be between 1 and 255");
+        this.log2N = log2N;
+        this.r = r;
+        this.p = p;
+    }
+
+    @Override
+    public int id() {
+        return ID;
+    }
+
+    @Override
+    public String name() {
+        return "scrypt";
+    }
+
+    @Override
+    public byte[] hash(char[] password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        byte[] pw = utf8(password);
+        try {
+            byte[] key = scrypt(pw, salt, 1 << log2N, r, p, KEY_BYTES);
+            ByteBuffer buf = ByteBuffer.allocate(5 + salt.length + key.length);
+            buf.put((byte) ID).put((byte) log2N).put((byte) r).put((byte) p).put((byte) salt.length).put(salt).put(key);
+            return buf.array();
+        } finally {
+            Arrays.fill(pw, (byte) 0);
+        }
+    }
+
+    @Override
+    public boolean verify(char[] password, byte[] stored) {
+        if (stored == null || stored.length < 6 || stored[0] != ID) return false;
+        int n = stored[1] & 0xff;
+        int storedR = stored[2] & 0xff;
+        int storedP = stored[3] & 0xff;
+        int saltLength = stored[4] & 0xff;
+        if (n < 1 || n > 24 || storedR == 0 || storedP == 0 || stored.length <= 5 + saltLength) return false;
+        byte[] salt = Arrays.copyOfRange(stored, 5, 5 + saltLength);
+        byte[] expected = Arrays.copyOfRange(stored, 5 + saltLength, stored.length);
+        byte[] pw = utf8(password);
+        try {
+            return MessageDigest.isEqual(expected, scrypt(pw, salt, 1 << n, storedR, storedP, expected.length));
+        } finally {
+            Arrays.fill(pw, (byte) 0);
+        }
+    }
+
+    @Override
+    public boolean isCurrent(byte[] stored) {
+        return stored != null && stored.length > 4 && stored[0] == ID
+                && (stored[1] & 0xff) == log2N && (stored[2] & 0xff) == r && (stored[3] & 0xff) == p;
+    }
+
+    /* ----------------------------- Internals ----------------------------- */
+
+    static byte[] scrypt(byte[] password, byte[] salt, int n, int r, int p, int length) {
+        Mac mac = hmac(password);
+        byte[] b = pbkdf2(mac, salt, p * 128 * r);
+        int blockWords = 32 * r;
+        int[] x = new int[blockWords];
+        int[] y = new int[blockWords];
+        int[] v = new int[blockWords * n];
+        int[] t = new int[16];
+        for (int i = 0; i < p; i++) {
+            roMix(b, i * 128 * r, x, y, v, t, r, n);
+        }
+        return pbkdf2(mac, b, length);
+    }
+
+    // sequential memory-hard mix of one 128*r byte block, in place
+    private static void roMix(byte[] b, int offset, int[] x, int[] y, int[] v, int[] t, int r, int n) {
+        int words = x.length;
+        for (int i = 0; i < words; i++) {
+            int o = offset + i * 4;
+            x[i] = (b[o] & 0xff) | (b[o + 1] & 0xff) << 8 | (b[o + 2] & 0xff) << 16 | (b[o + 3] & 0xff) << 24;
+        }
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(x, 0, v, i * words, words);
+            blockMix(x, y, t, r);
+        }
+        for (int i = 0; i < n; i++) {
+            int j = x[(2 * r - 1) * 16] & (n - 1);
+            int base = j * words;
+            for (int k = 0; k < words; k++) x[k] ^= v[base + k];
+            blockMix(x, y, t, r);
+        }
+        for (int i = 0; i < words; i++) {
+            int o = offset + i * 4;
+            b[o] = (byte) x[i];
+            b[o + 1] = (byte) (x[i] >>> 8);
+            b[o + 2] = (byte) (x[i] >>> 16);
+            b[o + 3] = (byte) (x[i] >>> 24);
+        }
+    }
+
+    private static void blockMix(int[] b, int[] y, int[] t, int r) {
+        System.arraycopy(b, (2 * r - 1) * 16, t, 0, 16);
+        for (int i = 0; i < 2 * r; i++) {
+            for (int k = 0; k < 16; k++) t[k] ^= b[i * 16 + k];
+            salsa20_8(t);
+            // even blocks go to the first half of the output, odd blocks to the second
+            int dest = (i / 2 + (i % 2) * r) * 16;
+            System.arraycopy(t, 0, y, dest, 16);
+        }
+        System.arraycopy(y, 0, b, 0, 32 * r);
+    }
+
+    private static void salsa20_8(int[] b) {
+        int x0 = b[0], x1 = b[1], x2 = b[2], x3 = b[3], x4 = b[4], x5 = b[5], x6 = b[6], x7 = b[7];
+        int x8 = b[8], x9 = b[9], x10 = b[10], x11 = b[11], x12 = b[12], x13 = b[13], x14 = b[14], x15 = b[15];
+        for (int i = 0; i < 8; i += 2) {
+            x4 ^= Integer.rotateLeft(x0 + x12, 7);   x8 ^= Integer.rotateLeft(x4 + x0, 9);
+            x12 ^= Integer.rotateLeft(x8 + x4, 13);  x0 ^= Integer.rotateLeft(x12 + x8, 18);
+            x9 ^= Integer.rotateLeft(x5 + x1, 7);    x13 ^= Integer.rotateLeft(x9 + x5, 9);
+            x1 ^= Integer.rotateLeft(x13 + x9, 13);  x5 ^= Integer.rotateLeft(x1 + x13, 18);
+            x14 ^= Integer.rotateLeft(x10 + x6, 7);  x2 ^= Integer.rotateLeft(x14 + x10, 9);
+            x6 ^= Integer.rotateLeft(x2 + x14, 13);  x10 ^= Integer.rotateLeft(x6 + x2, 18);
+            x3 ^= Integer.rotateLeft(x15 + x11, 7);  x7 ^= Integer.rotateLeft(x3 + x15, 9);
+            x11 ^= Integer.rotateLeft(x7 + x3, 13);  x15 ^= Integer.rotateLeft(x11 + x7, 18);
+            x1 ^= Integer.rotateLeft(x0 + x3, 7);    x2 ^= Integer.rotateLeft(x1 + x0, 9);
+            x3 ^= Integer.rotateLeft(x2 + x1, 13);   x0 ^= Integer.rotateLeft(x3 + x2, 18);
+            x6 ^= Integer.rotateLeft(x5 + x4, 7);    x7 ^= Integer.rotateLeft(x6 + x5, 9);
+            x4 ^= Integer.rotateLeft(x7 + x6, 13);   x5 ^= Integer.rotateLeft(x4 + x7, 18);
+            x11 ^= Integer.rotateLeft(x10 + x9, 7);  x8 ^= Integer.rotateLeft(x11 + x10, 9);
+            x9 ^= Integer.rotateLeft(x8 + x11, 13);  x10 ^= Integer.rotateLeft(x9 + x8, 18);
+            x12 ^= Integer.rotateLeft(x15 + x14, 7); x13 ^= Integer.rotateLeft(x12 + x15, 9);
+            x14 ^= Integer.rotateLeft(x13 + x12, 13); x15 ^= Integer.rotateLeft(x14 + x13, 18);
+        }
+        b[0] += x0; b[1] += x1; b[2] += x2; b[3] += x3; b[4] += x4; b[5] += x5; b[6] += x6; b[7] += x7;
+        b[8] += x8; b[9] += x9; b[10] += x10; b[11] += x11; b[12] += x12; b[13] += x13; b[14] += x14; b[15] += x15;
+    }
+
+    // PBKDF2-HMAC-SHA256 with a single iteration, as scrypt uses it
+    private static byte[] pbkdf2(Mac mac, byte[] salt, int length) {
+        byte[] out = new byte[length];
+        byte[] counter = new byte[4];
+        for (int block = 1, off = 0; off < length; block++, off += 32) {
+            counter[0] = (byte) (block >>> 24);
+            counter[1] = (byte) (block >>> 16);
+            counter[2] = (byte) (block >>> 8);
+            counter[3] = (byte) block;
+            mac.update(salt);
+            byte[] u = mac.doFinal(counter);
+            System.arraycopy(u, 0, out, off, Math.min(32, length - off));
+        }
+        return out;
+    }
+
+    private static Mac hmac(byte[] key) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            // HMAC zero-pads its key, so an empty password is the same key as one zero byte (SecretKeySpec rejects empty keys)
+            mac.init(new SecretKeySpec(key.length == 0 ? new byte[1] : key, "HmacSHA256"));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    private static byte[] utf8(char[] password) {
+        ByteBuffer buf = StandardCharsets.UTF_8.encode(CharBuffer.wrap(password));
+        byte[] out = new byte[buf.remaining()];
+        buf.get(out);
+        if (buf.hasArray()) Arrays.fill(buf.array(), (byte) 0);
+        return out;
+    }
+}
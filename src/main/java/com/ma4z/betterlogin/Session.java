@@ -0,0 +1,79 @@
+package com.ma4z.betterlogin;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Everything the plugin tracks about one connected player.
+ * <p>
+ * The state only moves through {@link Sessions#transition}, which uses compare-and-set, so a
+ * command completing, a delayed join task and a quit can never interleave into an impossible state.
+ */
+final class Session {
+
+    enum State {
+        /** Connected, account row not applied yet. */
+        PENDING_LOAD,
+        MUST_REGISTER,
+        MUST_LOGIN,
+        AUTHENTICATED,
+        /** Player left; every further transition fails. */
+        CLOSED
+    }
+
+    final AtomicReference<State> state = new AtomicReference<>(State.PENDING_LOAD);
+
+    // location to restore after login (main thread only)
+    volatile Location savedLocation;
+
+    // login timeout/reminder while unauthenticated, and the wheel tick it kicks at (main thread only)
+    TimingWheel.Timeout<Player> loginTimer;
+    long loginDeadline;
+
+    // account row for this player; only meaningful once accountLoaded is set (null = not registered)
+    private volatile DB.StoredEntry account;
+    private volatile boolean accountLoaded;
+
+    // the password changed while online, so leaving must not issue a resumption ticket
+    volatile boolean passwordChanged;
+
+    // a database/hashing request for this player is in flight
+    private final AtomicBoolean busy = new AtomicBoolean();
+
+    State state() {
+        return state.get();
+    }
+
+    boolean is(State s) {
+        return state.get() == s;
+    }
+
+    boolean accountLoaded() {
+        return accountLoaded;
+    }
+
+    DB.StoredEntry account() {
+        return account;
+    }
+
+    void setAccount(DB.StoredEntry entry) {
+        account = entry;
+        accountLoaded = true;
+    }
+
+    /** Claims the in-flight slot; false if another request is still running. */
+    boolean tryBegin() {
+        return busy.compareAndSet(false, true);
+    }
+
+    void end() {
+        busy.set(false);
+    }
+
+    boolean isBusy() {
+        return busy.get();
+    }
+}
@@ -0,0 +1,106 @@
+package com.ma4z.betterlogin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Short-lived login sessions. When an authenticated player leaves, their UUID and IP are remembered
+ * for a configurable window; if they come back from the same IP within it, they are logged in
+ * without a password (and without a hash). A ticket is single use. /logout leaves none, and after
+ * /changepassword or an admin's /setpassword the player gets none until they log in with the new
+ * password; a re-hash keeps the password and changes nothing. The table is written to disk on
+ * shutdown so a server restart counts as a short disconnect too.
+ */
+final class SessionResumption {
+
+    private static final int FORMAT = 1;
+
+    private static final class Ticket {
+        final byte[] ip;
+        final long expiresAt;
+
+        Ticket(byte[] ip, long expiresAt) {
+            this.ip = ip;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final long windowMillis;
+    private final ConcurrentHashMap<UUID, Ticket> tickets = new ConcurrentHashMap<>();
+
+    SessionResumption(long windowSeconds) {
+        this.windowMillis = Math.max(0, windowSeconds) * 1000L;
+    }
+
+    /** Opens a resumption window for a player that is leaving while logged in. */
+    void remember(UUID uuid, InetAddress ip) {
+        if (ip == null || windowMillis == 0) return;
+        tickets.put(uuid, new Ticket(ip.getAddress(), System.currentTimeMillis() + windowMillis));
+    }
+
+    /** True (once) if the player left within the window and is back from the same IP. */
+    boolean consume(UUID uuid, InetAddress ip) {
+        Ticket t = tickets.remove(uuid);
+        return t != null && ip != null && t.expiresAt > System.currentTimeMillis() && Arrays.equals(t.ip, ip.getAddress());
+    }
+
+    void forget(UUID uuid) {
+        tickets.remove(uuid);
+    }
+
+    void purge() {
+        long now = System.currentTimeMillis();
+        tickets.values().removeIf(t -> t.expiresAt <= now);
+    }
+
+    int size() {
+        return tickets.size();
+    }
+
+    /** Loads tickets saved by {@link #save}, skipping expired ones. A missing file is not an error. */
+    void load(File file) throws IOException {
+        if (!file.isFile()) return;
+        long now = System.currentTimeMillis();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != FORMAT) return;
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                UUID uuid = new UUID(in.readLong(), in.readLong());
+                byte[] ip = new byte[in.readUnsignedByte()];
+                in.readFully(ip);
+                long expiresAt = in.readLong();
+                if (expiresAt > now) tickets.put(uuid, new Ticket(ip, expiresAt));
+            }
+        }
+    }
+
+    /** Writes live tickets next to the target and renames it over, so a crash never leaves a torn file. */
+    void save(File file) throws IOException {
+        purge();
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp.toPath())))) {
+            Map<UUID, Ticket> snapshot = Map.copyOf(tickets);
+            out.writeInt(FORMAT);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<UUID, Ticket> en : snapshot.entrySet()) {
+                out.writeLong(en.getKey().getMostSignificantBits());
+                out.writeLong(en.getKey().getLeastSignificantBits());
+                out.writeByte(en.getValue().ip.length);
+                out.write(en.getValue().ip);
+                out.writeLong(en.getValue().expiresAt);
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,79 @@
+package com.ma4z.betterlogin;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registry of {@link Session}s by player UUID. Also keeps the number of authenticated sessions,
+ * which decides whether the guard listener has to be registered.
+ */
+final class Sessions {
+
+    private final ConcurrentHashMap<UUID, Session> byId = new ConcurrentHashMap<>();
+    private final AtomicInteger authenticated = new AtomicInteger();
+
+    Session get(UUID uuid) {
+        return byId.get(uuid);
+    }
+
+    /** Returns the player's session, creating a PENDING_LOAD one if there is none. */
+    Session open(UUID uuid) {
+        return byId.computeIfAbsent(uuid, k -> new Session());
+    }
+
+    /** Hot path for the guards: one lookup and one field read. */
+    boolean isAuthenticated(UUID uuid) {
+        Session s = byId.get(uuid);
+        return s != null && s.state.get() == Session.State.AUTHENTICATED;
+    }
+
+    /**
+     * True if a connected player owns the account row with this uuid. The row can differ from the player's
+     * own UUID when it was matched by name, so loaded accounts are checked as well. Walks every session.
+     */
+    boolean isOnline(String accountUuid) {
+        for (Map.Entry<UUID, Session> e : byId.entrySet()) {
+            DB.StoredEntry account = e.getValue().account();
+            if (e.getKey().toString().equals(accountUuid) || account != null && accountUuid.equals(account.uuid)) return true;
+        }
+        return false;
+    }
+
+    /** Atomically moves the session from {@code expected} to {@code next}; false if it was in another state. */
+    boolean transition(Session s, Session.State expected, Session.State next) {
+        if (!s.state.compareAndSet(expected, next)) return false;
+        if (expected == next) return true;
+        if (next == Session.State.AUTHENTICATED) {
+            authenticated.incrementAndGet();
+        } else if (expected == Session.State.AUTHENTICATED) {
+            authenticated.decrementAndGet();
+        }
+        return true;
+    }
+
+    /** Moves the session to {@code next} from whatever live state it is in; false if it is closed. */
+    boolean force(Session s, Session.State next) {
+        while (true) {
+            Session.State cur = s.state.get();
+            if (cur == Session.State.CLOSED) return false;
+            if (transition(s, cur, next)) return true;
+        }
+    }
+
+    /** Removes and closes the session; returns the state it was in, or null if there was none. */
+    Session.State close(UUID uuid) {
+        Session s = byId.remove(uuid);
+        if (s == null) return null;
+        Session.State last = s.state.getAndSet(Session.State.CLOSED);
+        if (last == Session.State.AUTHENTICATED) {
+            authenticated.decrementAndGet();
+        }
+        return last;
+    }
+
+    int authenticatedCount() {
+        return authenticated.get();
+    }
+}
@@ -0,0 +1,132 @@
+package com.ma4z.betterlogin;
+
+import org.sqlite.SQLiteConnection;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+
+/**
+ * Storage in the server's own passwords.db. The file is switched to WAL, so reads proceed while the
+ * writer is committing; read connections are opened with {@code query_only}.
+ */
+final class SqliteDB extends JdbcDB {
+
+    private final String url;
+
+    SqliteDB(String dbPath, int readConnections, AccountCache cache, Logger logger, Metrics metrics, int locationFlushThreshold) {
+        super(Dialect.SQLITE, readConnections, cache, true, logger, metrics, locationFlushThreshold);
+        this.url = "jdbc:sqlite:" + dbPath;
+    }
+
+    @Override
+    protected Connection connect(boolean readOnly) throws SQLException {
+        // Connect using SQLite JDBC. The JDBC driver must be available at runtime.
+        Connection conn = DriverManager.getConnection(url);
+        try (Statement st = conn.createStatement()) {
+            st.execute("PRAGMA busy_timeout = 5000");
+            if (readOnly) {
+                st.execute("PRAGMA query_only = 1");
+            } else {
+                // only takes effect on a file without tables yet; older files are converted by enableIncrementalVacuum
+                st.execute("PRAGMA auto_vacuum = INCREMENTAL");
+                // WAL lets readers run during commits; NORMAL only fsyncs on checkpoint
+                st.execute("PRAGMA journal_mode = WAL");
+                st.execute("PRAGMA synchronous = NORMAL");
+            }
+        }
+        return conn;
+    }
+
+    @Override
+    protected void migrate(Connection conn) throws SQLException {
+        Migrations.run(conn, dialect, logger);
+    }
+
+    /* --------------------------- Maintenance ---------------------------- */
+
+    /**
+     * Copies the database into {@code target} with SQLite's backup API, in a single step over a connection of
+     * its own. In WAL mode that step only holds a read snapshot, so the writer and readers carry on meanwhile;
+     * a step-wise copy would instead restart every time the writer commits. Runs on the calling thread.
+     */
+    void backup(File target) throws SQLException {
+        try (Connection conn = connect(true)) {
+            int rc = conn.unwrap(SQLiteConnection.class).getDatabase().backup("main", target.getAbsolutePath(), null, 100, 50, -1);
+            if (rc != 0) throw new SQLException("Backup failed with SQLite error " + rc);
+        }
+    }
+
+    /** {@code PRAGMA quick_check} over a connection of its own; an empty list means the file is healthy. Runs on the calling thread. */
+    List<String> quickCheck() throws SQLException {
+        List<String> problems = new ArrayList<>();
+        try (Connection conn = connect(true); Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("PRAGMA quick_check")) {
+            while (rs.next()) {
+                String row = rs.getString(1);
+                if (!"ok".equals(row)) problems.add(row);
+            }
+        }
+        return problems;
+    }
+
+    /** Refreshes the query planner statistics, sampling at most 1000 rows per index so it stays short. */
+    CompletableFuture<Void> analyze() {
+        return write("analyze", h -> {
+            try (Statement st = h.conn.createStatement()) {
+                st.execute("PRAGMA analysis_limit = 1000");
+                st.execute("ANALYZE");
+            }
+            return null;
+        });
+    }
+
+    /** True once the file is in incremental auto-vacuum mode, which {@link #incrementalVacuum} needs. */
+    CompletableFuture<Boolean> incrementalVacuumEnabled() {
+        return write("autoVacuumMode", h -> {
+            try (Statement st = h.conn.createStatement(); ResultSet rs = st.executeQuery("PRAGMA auto_vacuum")) {
+                return rs.next() && rs.getInt(1) == 2;
+            }
+        });
+    }
+
+    /**
+     * One-time switch to incremental auto-vacuum for files created without it. Rewrites the whole file, so
+     * writes wait until it is done.
+     */
+    CompletableFuture<Void> enableIncrementalVacuum() {
+        return write("vacuum", h -> {
+            try (Statement st = h.conn.createStatement()) {
+                st.execute("PRAGMA auto_vacuum = INCREMENTAL");
+                st.execute("VACUUM");
+            }
+            return null;
+        });
+    }
+
+    /** Returns up to {@code pages} free pages to the file system. Completes with the free pages left. */
+    CompletableFuture<Integer> incrementalVacuum(int pages) {
+        return write("incrementalVacuum", h -> {
+            try (Statement st = h.conn.createStatement()) {
+                // each result row is one freed page and the pragma only runs as far as the rows are read;
+                // with nothing to free there is no result set at all
+                if (st.execute("PRAGMA incremental_vacuum(" + pages + ")")) {
+                    try (ResultSet rs = st.getResultSet()) {
+                        while (rs.next()) {
+                            // drain
+                        }
+                    }
+                }
+                try (ResultSet rs = st.executeQuery("PRAGMA freelist_count")) {
+                    return rs.next() ? rs.getInt(1) : 0;
+                }
+            }
+        });
+    }
+}
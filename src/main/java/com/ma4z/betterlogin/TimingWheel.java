@@ -0,0 +1,139 @@
+package com.ma4z.betterlogin;
+
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel with one-tick resolution.
+ * <p>
+ * Timeouts live in a ring of slots, each a doubly linked list; a timeout due in {@code d} ticks goes into
+ * slot {@code (cursor + d) mod slots} with {@code (d - 1) / slots} extra rounds. Scheduling and cancelling
+ * are O(1), and {@link #tick()} only walks the one slot the cursor moves to, so thousands of pending
+ * timeouts cost nothing per tick until they are due. Main thread only.
+ */
+final class TimingWheel<T> {
+
+    static final class Timeout<T> {
+        final T value;
+        private long rounds;
+        private int slot = -1;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+        // chain of timeouts that expired in the current tick
+        private Timeout<T> nextExpired;
+
+        private Timeout(T value) {
+            this.value = value;
+        }
+
+        boolean isPending() {
+            return slot >= 0;
+        }
+    }
+
+    private final Timeout<T>[] slots;
+    private final int mask;
+    private final Consumer<Timeout<T>> onExpire;
+    private int cursor;
+    private long now;
+    private int size;
+
+    /**
+     * @param slots    ring size, rounded up to a power of two; delays longer than this cost one
+     *                 decrement per revolution
+     * @param onExpire called on {@link #tick()} for each due timeout, which may be rescheduled from there
+     */
+    TimingWheel(int slots, Consumer<Timeout<T>> onExpire) {
+        int n = slots <= 1 ? 1 : Integer.highestOneBit(slots - 1) << 1;
+        // no generic array creation in Java; the array never leaves this class and only ever holds Timeout<T>
+        @SuppressWarnings("unchecked")
+        Timeout<T>[] ring = (Timeout<T>[]) new Timeout<?>[n];
+        this.slots = ring;
+        this.mask = n - 1;
+        this.onExpire = onExpire;
+    }
+
+    /** Fires {@code value} after {@code delayTicks} (at least one) calls to {@link #tick()}. */
+    Timeout<T> schedule(T value, long delayTicks) {
+        Timeout<T> t = new Timeout<>(value);
+        insert(t, delayTicks);
+        return t;
+    }
+
+    /** Moves a pending or already fired timeout to {@code delayTicks} from now. */
+    void reschedule(Timeout<T> t, long delayTicks) {
+        cancel(t);
+        insert(t, delayTicks);
+    }
+
+    /** False if the timeout already fired or was cancelled. */
+    boolean cancel(Timeout<T> t) {
+        if (t == null || t.slot < 0) return false;
+        unlink(t);
+        return true;
+    }
+
+    /** Advances one tick and fires every timeout that is now due. */
+    void tick() {
+        now++;
+        cursor = (cursor + 1) & mask;
+        // detach first: handlers may schedule or cancel anything, including entries of this slot
+        Timeout<T> expired = null;
+        for (Timeout<T> t = slots[cursor]; t != null; ) {
+            Timeout<T> next = t.next;
+            if (t.rounds > 0) {
+                t.rounds--;
+            } else {
+                unlink(t);
+                t.nextExpired = expired;
+                expired = t;
+            }
+            t = next;
+        }
+        while (expired != null) {
+            Timeout<T> t = expired;
+            expired = t.nextExpired;
+            t.nextExpired = null;
+            onExpire.accept(t);
+        }
+    }
+
+    /** Ticks since creation. */
+    long now() {
+        return now;
+    }
+
+    /** Number of slots in the ring. */
+    int slots() {
+        return slots.length;
+    }
+
+    /** Timeouts still pending. */
+    int size() {
+        return size;
+    }
+
+    private void insert(Timeout<T> t, long delayTicks) {
+        long delay = Math.max(1, delayTicks);
+        int slot = (int) ((cursor + delay) & mask);
+        t.rounds = (delay - 1) / slots.length;
+        t.slot = slot;
+        t.prev = null;
+        t.next = slots[slot];
+        if (t.next != null) t.next.prev = t;
+        slots[slot] = t;
+        size++;
+    }
+
+    private void unlink(Timeout<T> t) {
+        if (t.prev != null) {
+            t.prev.next = t.next;
+        } else {
+            slots[t.slot] = t.next;
+        }
+        if (t.next != null) t.next.prev = t.prev;
+        t.prev = null;
+        t.next = null;
+        t.slot = -1;
+        size--;
+    }
+}
@@ -0,0 +1,114 @@
+package com.ma4z.betterlogin;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AccountCacheTest {
+
+    private static final byte[] HASH = {1, 2, 3};
+
+    private static DB.StoredEntry entry(String uuid, String name) {
+        return DB.StoredEntry.of(uuid, name, HASH);
+    }
+
+    @Test
+    void looksUpByUuidThenCaseInsensitiveName() {
+        AccountCache cache = new AccountCache(10, 1, TimeUnit.HOURS);
+        DB.StoredEntry steve = entry("u1", "Steve");
+        cache.put(steve);
+
+        assertSame(steve, cache.get("u1", null));
+        assertSame(steve, cache.get("other", "STEVE"));
+        assertSame(steve, cache.getByName("steve"));
+        assertNull(cache.get("other", "alex"));
+        assertEquals(3, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    void entriesExpireAfterTheTtl() throws InterruptedException {
+        AccountCache cache = new AccountCache(10, 20, TimeUnit.MILLISECONDS);
+        cache.put(entry("u1", "Steve"));
+        assertNotNull(cache.get("u1", null));
+
+        Thread.sleep(50);
+        assertNull(cache.get("u1", "Steve"));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.evictions());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedEntry() {
+        AccountCache cache = new AccountCache(2, 1, TimeUnit.HOURS);
+        cache.put(entry("u1", "a"));
+        cache.put(entry("u2", "b"));
+        cache.get("u1", null);
+        cache.put(entry("u3", "c"));
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("u1", null));
+        assertNull(cache.get("u2", "b"));
+        assertNotNull(cache.getByName("c"));
+        assertEquals(1, cache.evictions());
+    }
+
+    @Test
+    void dropsALoadThatRacedWithAWrite() {
+        AccountCache cache = new AccountCache(10, 1, TimeUnit.HOURS);
+        long epoch = cache.epoch();
+        // a write commits while the read is in flight
+        cache.remove("u1", "Steve");
+        cache.putLoaded(entry("u1", "Steve"), epoch);
+        assertNull(cache.get("u1", null));
+
+        cache.putLoaded(entry("u1", "Steve"), cache.epoch());
+        assertNotNull(cache.get("u1", null));
+    }
+
+    @Test
+    void writesInvalidateEveryLoadStartedBeforeThem() {
+        AccountCache cache = new AccountCache(10, 1, TimeUnit.HOURS);
+        long beforePut = cache.epoch();
+        cache.put(entry("u1", "Steve"));
+        long beforeUpdate = cache.epoch();
+        cache.update("u1", "Steve", e -> e.withPremium(true));
+        long beforeClear = cache.epoch();
+        cache.clear();
+
+        assertTrue(beforePut < beforeUpdate && beforeUpdate < beforeClear && beforeClear < cache.epoch());
+        cache.putLoaded(entry("u2", "Alex"), beforeClear);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void updateAppliesToTheUuidAndTheNameMatch() {
+        AccountCache cache = new AccountCache(10, 1, TimeUnit.HOURS);
+        cache.put(entry("u1", "Steve"));
+        cache.put(entry("u2", "Alex"));
+        byte[] changed = {9};
+        // same as UPDATE ... WHERE uuid = 'u1' OR username_lc = 'alex'
+        cache.update("u1", "alex", e -> e.withPassword(changed));
+
+        assertArrayEquals(changed, cache.get("u1", null).password);
+        assertArrayEquals(changed, cache.get("u2", null).password);
+    }
+
+    @Test
+    void reinsertingANameMovesItToTheNewUuid() {
+        AccountCache cache = new AccountCache(10, 1, TimeUnit.HOURS);
+        cache.put(entry("u1", "Steve"));
+        cache.put(entry("u2", "steve"));
+
+        assertNull(cache.get("u1", null));
+        assertEquals("u2", cache.getByName("Steve").uuid);
+        assertEquals(1, cache.size());
+    }
+}
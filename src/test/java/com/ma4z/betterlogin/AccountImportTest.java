@@ -0,0 +1,189 @@
+package com.ma4z.betterlogin;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AccountImportTest {
+
+    private static final HexFormat HEX = HexFormat.of();
+    private static final Logger LOG = Logger.getLogger("AccountImportTest");
+
+    @TempDir
+    Path dir;
+
+    private SqliteDB db;
+    private final List<String> reports = new ArrayList<>();
+
+    @BeforeEach
+    void openDatabase() throws Exception {
+        db = new SqliteDB(dir.resolve("passwords.db").toString(), 2, new AccountCache(100, 1, TimeUnit.HOURS), LOG, new Metrics(), 100);
+        db.prepare();
+    }
+
+    @AfterEach
+    void closeDatabase() {
+        db.close();
+    }
+
+    /** AuthMe's SHA256: {@code $SHA$salt$sha256hex(sha256hex(password) + salt)}. */
+    private static String authMeSha(String password, String salt) throws Exception {
+        MessageDigest sha = MessageDigest.getInstance("SHA-256");
+        String inner = HEX.formatHex(sha.digest(password.getBytes(StandardCharsets.UTF_8)));
+        return "$SHA$" + salt + "$" + HEX.formatHex(sha.digest((inner + salt).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static byte[] pbkdf2(String password, String salt, int iterations) throws Exception {
+        return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256")
+                .generateSecret(new PBEKeySpec(password.toCharArray(), salt.getBytes(StandardCharsets.UTF_8), iterations, 256)).getEncoded();
+    }
+
+    private AccountImport importer(File file, String table, int batchSize) {
+        return new AccountImport(db, file, table, batchSize, LOG, reports::add);
+    }
+
+    private DB.StoredEntry account(String name) {
+        return db.getPlayerByName(name).join();
+    }
+
+    @Test
+    void convertsAuthMeSha256() throws Exception {
+        byte[] hash = AccountImport.convertHash(authMeSha("secret", "0123456789abcdef"));
+        assertNotNull(hash);
+        assertEquals(AuthMeSha256Verifier.ID, hash[0]);
+        assertTrue(PasswordHashers.verify("secret", hash));
+        assertFalse(PasswordHashers.verify("Secret", hash));
+        assertThrows(IllegalArgumentException.class, () -> AccountImport.convertHash("$SHA$salt$tooshort"));
+    }
+
+    @Test
+    void convertsAuthMePbkdf2InHexAndBase64() throws Exception {
+        byte[] key = pbkdf2("secret", "saltsalt", 1000);
+        byte[] hex = AccountImport.convertHash("pbkdf2_sha256$1000$saltsalt$" + HEX.formatHex(key));
+        byte[] django = AccountImport.convertHash("pbkdf2_sha256$1000$saltsalt$" + Base64.getEncoder().encodeToString(key));
+
+        assertTrue(PasswordHashers.verify("secret", hex));
+        assertTrue(PasswordHashers.verify("secret", django));
+        assertFalse(PasswordHashers.verify("secreT", django));
+        // a cost no real AuthMe install uses would tie up a hashing thread on every login attempt
+        assertThrows(IllegalArgumentException.class,
+                () -> AccountImport.convertHash("pbkdf2_sha256$" + (Pbkdf2Hasher.MAX_ITERATIONS + 1) + "$saltsalt$" + HEX.formatHex(key)));
+        // imported hashes are never current, so the next login re-hashes them with the configured scheme
+        assertFalse(new Pbkdf2Hasher(Pbkdf2Hasher.SHA256, 65536).isCurrent(hex));
+    }
+
+    @Test
+    void leavesOtherFormatsUnconverted() {
+        assertNull(AccountImport.convertHash("$2a$10$N9qo8uLOickgx2ZMRZoMyeIjZAgcfl7p92ldGxad68LJZdL17lhWy"));
+        assertNull(AccountImport.convertHash("$argon2id$v=19$m=65536,t=3,p=4$c2FsdA$aGFzaA"));
+        assertNull(AccountImport.convertHash("plaintext"));
+    }
+
+    @Test
+    void importsCsvInBatchesAndResumes() throws Exception {
+        db.createPlayer(UUID.randomUUID().toString(), "Existing", new Pbkdf2Hasher(Pbkdf2Hasher.SHA256, 1000).hash("pw".toCharArray())).join();
+        UUID alexId = UUID.randomUUID();
+        File csv = dir.resolve("accounts.csv").toFile();
+        Files.write(csv.toPath(), List.of(
+                "username,realname,password,uuid,lastlogin",
+                "steve,Steve," + authMeSha("one", "aaaaaaaaaaaaaaaa") + ",,1000",
+                "alex,\"Alex\"," + authMeSha("two", "bbbbbbbbbbbbbbbb") + "," + alexId + ",2000",
+                "bob,Bob,$2a$10$N9qo8uLOickgx2ZMRZoMyeIjZAgcfl7p92ldGxad68LJZdL17lhWy,,",
+                "eve,Eve,pbkdf2_sha256$2000000000$saltsalt$" + HEX.formatHex(pbkdf2("x", "saltsalt", 1000)) + ",,",
+                ",,$SHA$x$y,,",
+                "existing,EXISTING," + authMeSha("three", "cccccccccccccccc") + ",,"), StandardCharsets.UTF_8);
+
+        importer(csv, null, 2).run();
+        assertTrue(reports.get(reports.size() - 1).startsWith("Import finished: 6 rows read, 2 imported, 2 unsupported hashes, 1 invalid, 1 already existed"),
+                reports.get(reports.size() - 1));
+
+        DB.StoredEntry steve = account("steve");
+        assertEquals("Steve", steve.username);
+        assertEquals(UUID.nameUUIDFromBytes("OfflinePlayer:Steve".getBytes(StandardCharsets.UTF_8)).toString(), steve.uuid);
+        assertTrue(PasswordHashers.verify("one", steve.password));
+        assertEquals(alexId.toString(), account("alex").uuid);
+        // the existing account keeps its own password
+        assertTrue(PasswordHashers.verify("pw", account("existing").password));
+
+        DB.ImportProgress progress = db.importProgress(importer(csv, null, 2).source()).join();
+        assertEquals(6, progress.position);
+        assertEquals(2, progress.imported);
+        assertEquals(4, progress.skipped);
+
+        // a second run only reads rows added since
+        Files.write(csv.toPath(), List.of("carol,Carol," + authMeSha("four", "dddddddddddddddd") + ",,"), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        reports.clear();
+        importer(csv, null, 2).run();
+        assertTrue(reports.get(0).startsWith("Resuming import of accounts.csv after 6 rows."), reports.get(0));
+        assertTrue(reports.get(1).startsWith("Import finished: 1 rows read, 1 imported"), reports.get(1));
+        assertTrue(PasswordHashers.verify("four", account("carol").password));
+    }
+
+    @Test
+    void importsAnAuthMeSqliteFileByKeyset() throws Exception {
+        File authme = dir.resolve("authme.db").toFile();
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + authme);
+             Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE authme (id INTEGER PRIMARY KEY, username TEXT, realname TEXT, password TEXT, lastlogin INTEGER)");
+            try (PreparedStatement ps = conn.prepareStatement("INSERT INTO authme(id, username, realname, password, lastlogin) VALUES(?,?,?,?,?)")) {
+                for (int i = 1; i <= 25; i++) {
+                    // gaps in the ids must not matter
+                    ps.setInt(1, i * 3);
+                    ps.setString(2, "player" + i);
+                    ps.setString(3, "Player" + i);
+                    ps.setString(4, authMeSha("pw" + i, "salt" + i));
+                    ps.setLong(5, 1000L * i);
+                    ps.executeUpdate();
+                }
+            }
+        }
+
+        importer(authme, "authme", 10).run();
+        assertTrue(reports.get(reports.size() - 1).startsWith("Import finished: 25 rows read, 25 imported"), reports.get(reports.size() - 1));
+        assertTrue(PasswordHashers.verify("pw17", account("PLAYER17").password));
+        assertEquals(75, db.importProgress(importer(authme, "authme", 10).source()).join().position);
+
+        reports.clear();
+        importer(authme, "authme", 10).run();
+        assertTrue(reports.get(1).startsWith("Import finished: 0 rows read"), reports.get(1));
+    }
+
+    @Test
+    void reportsAMissingTable() throws Exception {
+        File authme = dir.resolve("other.db").toFile();
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + authme); Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE users (id INTEGER PRIMARY KEY, name TEXT)");
+        }
+        importer(authme, "authme", 10).run();
+        assertTrue(reports.get(reports.size() - 1).startsWith("Import failed (Table authme needs id, username and password columns)"),
+                reports.get(reports.size() - 1));
+    }
+}
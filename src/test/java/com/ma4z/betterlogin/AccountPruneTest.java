@@ -0,0 +1,90 @@
+package com.ma4z.betterlogin;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AccountPruneTest {
+
+    private static final Logger LOG = Logger.getLogger("AccountPruneTest");
+    // a year ago, well past the 30 days the prunes below allow
+    private static final long LONG_AGO = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(365);
+
+    @TempDir
+    Path dir;
+
+    private SqliteDB db;
+    private final Sessions sessions = new Sessions();
+    private final List<String> reports = new ArrayList<>();
+
+    @BeforeEach
+    void openDatabase() throws Exception {
+        db = new SqliteDB(dir.resolve("passwords.db").toString(), 1, new AccountCache(100, 1, TimeUnit.HOURS), LOG, new Metrics(), 100);
+        db.prepare();
+        // Steve's row came from an import under an offline UUID, so it never matches his player UUID
+        db.createPlayer("row-uuid", "Steve", new byte[] {1}).join();
+        db.createPlayer("u2", "Alex", new byte[] {2}).join();
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dir.resolve("passwords.db"));
+             PreparedStatement ps = conn.prepareStatement("UPDATE accounts SET last_login = ?")) {
+            ps.setLong(1, LONG_AGO);
+            ps.executeUpdate();
+        }
+    }
+
+    @AfterEach
+    void closeDatabase() {
+        db.close();
+    }
+
+    private void prune() {
+        new AccountPrune(db, 30, true, false, Set.of(), sessions::isOnline, 100, 1000, 0, 1000,
+                dir.resolve("prune-report.csv").toFile(), LOG, new Metrics(), reports::add).run();
+    }
+
+    @Test
+    void keepsAnOnlinePlayerWhoseRowMatchedByName() {
+        UUID player = UUID.randomUUID();
+        DB.StoredEntry entry = db.getPlayer(player.toString(), "Steve").join();
+        assertEquals("row-uuid", entry.uuid);
+        sessions.open(player).setAccount(entry);
+        assertTrue(sessions.isOnline("row-uuid"));
+        assertTrue(sessions.isOnline(player.toString()));
+        assertFalse(sessions.isOnline("u2"));
+
+        prune();
+        assertNotNull(db.getPlayerByName("steve").join(), reports.toString());
+        assertNull(db.getPlayerByName("alex").join(), reports.toString());
+    }
+
+    @Test
+    void aLoginRecordedOnTheMatchedRowKeepsItActive() {
+        UUID player = UUID.randomUUID();
+        DB.StoredEntry entry = db.getPlayer(player.toString(), "Steve").join();
+        // the player's own UUID names no row, so only the matched one refreshes the last login
+        db.recordLogin(player.toString()).join();
+        db.recordLogin(entry.uuid).join();
+
+        // nobody is connected any more
+        prune();
+        assertNotNull(db.getPlayerByName("steve").join(), reports.toString());
+        assertNull(db.getPlayerByName("alex").join(), reports.toString());
+    }
+}
@@ -0,0 +1,214 @@
+package com.ma4z.betterlogin;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AuditLogTest {
+
+    private static final Logger LOG = Logger.getLogger("AuditLogTest");
+    private static final long SEGMENT = 64 * 1024;
+
+    @TempDir
+    Path dir;
+
+    private File journal() {
+        return dir.resolve("audit").toFile();
+    }
+
+    private AuditLog open(int bufferSize, int keepSegments) throws IOException {
+        return new AuditLog(journal(), bufferSize, SEGMENT, keepSegments, LOG);
+    }
+
+    private static void awaitDrained(AuditLog log) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (log.queued() > 0) {
+            assertTrue(System.currentTimeMillis() < deadline, "journal did not drain");
+            Thread.sleep(1);
+        }
+    }
+
+    private List<AuditReader.Entry> all() throws IOException {
+        List<AuditReader.Entry> entries = new ArrayList<>();
+        for (File segment : AuditReader.segments(journal())) AuditReader.scan(segment, entries::add);
+        return entries;
+    }
+
+    private static int number(AuditReader.Entry e) {
+        return Integer.parseInt(e.name.substring(1));
+    }
+
+    @Test
+    void writesAndReadsBackEveryField() throws IOException {
+        UUID uuid = UUID.randomUUID();
+        AuditLog log = open(64, 4);
+        long before = System.currentTimeMillis();
+        log.record(AuditLog.Type.LOGIN, uuid, "Steve", InetAddress.getByName("10.0.0.1"), null);
+        log.record(AuditLog.Type.PASSWORD_SET, null, "Alex", InetAddress.getByName("2001:db8::1"), "Admin \"root\"");
+        log.record(AuditLog.Type.TIMEOUT, uuid, null, null, null);
+        log.close();
+
+        List<AuditReader.Entry> entries = all();
+        assertEquals(3, entries.size());
+        AuditReader.Entry login = entries.get(0);
+        assertEquals(AuditLog.Type.LOGIN, login.type);
+        assertEquals(uuid, login.uuid);
+        assertEquals("Steve", login.name);
+        assertEquals("10.0.0.1", login.ip);
+        assertNull(login.actor);
+        assertTrue(login.time >= before && login.time <= System.currentTimeMillis());
+
+        AuditReader.Entry set = entries.get(1);
+        assertNull(set.uuid);
+        assertEquals(InetAddress.getByName("2001:db8::1").getHostAddress(), set.ip);
+        assertTrue(set.concerns("admin \"ROOT\""));
+        assertTrue(set.concerns("alex"));
+        assertTrue(set.toJson().endsWith(",\"name\":\"Alex\",\"ip\":\"" + set.ip + "\",\"actor\":\"Admin \\\"root\\\"\"}"), set.toJson());
+
+        AuditReader.Entry timeout = entries.get(2);
+        assertNull(timeout.name);
+        assertNull(timeout.ip);
+        assertTrue(timeout.concerns(uuid.toString().toUpperCase()));
+    }
+
+    @Test
+    void cutsLongNamesOnACharacterBoundary() throws IOException {
+        // 100 three-byte characters are 300 bytes; 85 of them fit in 255
+        String name = "\u20ac".repeat(100);
+        // a four-byte character that would straddle the limit is left out whole
+        String emoji = "x".repeat(253) + "\ud83d\ude00";
+        AuditLog log = open(64, 4);
+        log.record(AuditLog.Type.REGISTER, null, name, null, emoji);
+        log.close();
+
+        AuditReader.Entry e = all().get(0);
+        assertEquals("\u20ac".repeat(85), e.name);
+        assertEquals("x".repeat(253), e.actor);
+        assertEquals(255, e.name.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Test
+    void reusesTheRingAfterItWrapsAround() throws Exception {
+        // a ring of 4 slots, filled and drained 50 times over
+        AuditLog log = open(4, 4);
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < 4; i++) log.record(AuditLog.Type.LOGIN, null, "p" + (round * 4 + i), null, null);
+            awaitDrained(log);
+        }
+        log.close();
+
+        assertEquals(0, log.dropped());
+        List<AuditReader.Entry> entries = all();
+        assertEquals(200, entries.size());
+        for (int i = 0; i < entries.size(); i++) assertEquals(i, number(entries.get(i)));
+    }
+
+    @Test
+    void dropsInsteadOfWaitingWhenTheRingIsFull() throws Exception {
+        AuditLog log = open(2, 1000);
+        int total = 50_000;
+        for (int i = 0; i < total; i++) log.record(AuditLog.Type.LOGIN, null, "p" + i, null, null);
+        log.close();
+
+        List<AuditReader.Entry> entries = all();
+        assertTrue(log.dropped() > 0, "nothing dropped");
+        assertEquals(total, entries.size() + log.dropped());
+        // what was kept is still in order
+        for (int i = 1; i < entries.size(); i++) assertTrue(number(entries.get(i - 1)) < number(entries.get(i)));
+
+        // after close every event is dropped
+        long dropped = log.dropped();
+        log.record(AuditLog.Type.LOGIN, null, "late", null, null);
+        assertEquals(dropped + 1, log.dropped());
+        assertEquals(0, log.queued());
+    }
+
+    @Test
+    void rotatesSegmentsAndKeepsTheNewest() throws Exception {
+        // records of about 230 bytes, so a 64 KiB segment holds under 300
+        String pad = "a".repeat(200);
+        int total = 3000;
+        AuditLog log = open(total, 3);
+        for (int i = 0; i < total; i++) log.record(AuditLog.Type.LOGIN_FAILED, null, "p" + i, null, pad);
+        log.close();
+        assertEquals(0, log.dropped());
+
+        File[] segments = AuditReader.segments(journal());
+        assertEquals(3, segments.length);
+        long first = AuditReader.number(segments[0]);
+        assertTrue(first > 1, "no rotation");
+        assertEquals(first + 1, AuditReader.number(segments[1]));
+        assertEquals(first + 2, AuditReader.number(segments[2]));
+        for (File segment : segments) assertEquals(SEGMENT, segment.length());
+
+        // the kept segments hold an unbroken run up to the last event
+        List<AuditReader.Entry> entries = all();
+        int start = number(entries.get(0));
+        for (int i = 0; i < entries.size(); i++) assertEquals(start + i, number(entries.get(i)));
+        assertEquals(total - 1, number(entries.get(entries.size() - 1)));
+
+        List<AuditReader.Entry> recent = AuditReader.recent(journal(), e -> number(e) % 2 == 0, 5);
+        assertEquals(List.of(2990, 2992, 2994, 2996, 2998), recent.stream().map(AuditLogTest::number).toList());
+    }
+
+    @Test
+    void resumesAfterTheLastCompleteRecord() throws IOException {
+        AuditLog log = open(64, 4);
+        for (int i = 0; i < 3; i++) log.record(AuditLog.Type.LOGIN, null, "p" + i, null, null);
+        log.close();
+
+        // a crash in the middle of a record leaves bytes without a length in front of them
+        File segment = AuditReader.segments(journal())[0];
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.seek(AuditReader.end(ByteBuffer.wrap(Files.readAllBytes(segment.toPath()))) + 2);
+            raf.write(new byte[] {7, 7, 7, 7});
+        }
+
+        log = open(64, 4);
+        for (int i = 3; i < 5; i++) log.record(AuditLog.Type.LOGIN, null, "p" + i, null, null);
+        log.close();
+
+        assertEquals(1, AuditReader.segments(journal()).length);
+        List<AuditReader.Entry> entries = all();
+        assertEquals(5, entries.size());
+        for (int i = 0; i < 5; i++) assertEquals(i, number(entries.get(i)));
+    }
+
+    @Test
+    void startsANewSegmentAfterAForeignFile() throws IOException {
+        assertTrue(journal().mkdirs());
+        File foreign = new File(journal(), AuditReader.name(7));
+        Files.write(foreign.toPath(), new byte[(int) SEGMENT]);
+        assertThrows(IOException.class, () -> AuditReader.scan(foreign, e -> { }));
+
+        AuditLog log = open(64, 4);
+        log.record(AuditLog.Type.LOGOUT, null, "p0", null, null);
+        log.close();
+
+        File[] segments = AuditReader.segments(journal());
+        assertEquals(2, segments.length);
+        assertEquals(8, AuditReader.number(segments[1]));
+        List<AuditReader.Entry> entries = new ArrayList<>();
+        AuditReader.scan(segments[1], entries::add);
+        assertEquals(1, entries.size());
+        assertFalse(entries.get(0).concerns("p1"));
+    }
+}
@@ -0,0 +1,119 @@
+package com.ma4z.betterlogin;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BreachedPasswordsTest {
+
+    @TempDir
+    Path dir;
+
+    private File build(List<String> lines, String... options) throws IOException {
+        Path list = dir.resolve("list-" + System.nanoTime() + ".txt");
+        Files.write(list, lines, StandardCharsets.UTF_8);
+        File out = dir.resolve("breached-" + System.nanoTime() + ".bloom").toFile();
+        List<String> args = new ArrayList<>(List.of(options));
+        args.addAll(List.of("-o", out.getPath(), list.toString()));
+        BreachedPasswordsBuilder.main(args.toArray(new String[0]));
+        return out;
+    }
+
+    private static String sha1(String password) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(password.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void findsEveryListedPasswordAndFewOthers() throws Exception {
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) words.add("password" + i);
+        words.add("");
+        words.add("p\u00e4ssw\u00f6rd");
+        BreachedPasswords filter = BreachedPasswords.open(build(words, "--fpp", "0.01"));
+
+        // empty lines are skipped
+        assertEquals(10_001, filter.entries());
+        for (String w : words) {
+            if (!w.isEmpty()) assertTrue(filter.contains(w), w);
+        }
+        double rate = filter.falsePositiveRate();
+        assertTrue(rate > 0.005 && rate < 0.015, "rate " + rate);
+
+        int falsePositives = 0;
+        int trials = 100_000;
+        for (int i = 0; i < trials; i++) {
+            if (filter.contains("unlisted" + i)) falsePositives++;
+        }
+        assertTrue(falsePositives < trials * 0.02, falsePositives + " false positives");
+    }
+
+    @Test
+    void takesSha1LinesAsHashesUnlessPlain() throws Exception {
+        List<String> lines = List.of(
+                sha1("hunter2").toUpperCase(Locale.ROOT) + ":17",
+                sha1("letmein"),
+                "correct horse");
+        BreachedPasswords hashed = BreachedPasswords.open(build(lines));
+        assertTrue(hashed.contains("hunter2"));
+        assertTrue(hashed.contains("letmein"));
+        assertTrue(hashed.contains("correct horse"));
+        assertFalse(hashed.contains(sha1("letmein")));
+
+        BreachedPasswords plain = BreachedPasswords.open(build(lines, "--plain"));
+        assertTrue(plain.contains(sha1("letmein")));
+        assertFalse(plain.contains("letmein"));
+    }
+
+    @Test
+    void sizesForTheExpectedCount() throws Exception {
+        File file = build(List.of("a", "b", "c"), "--expected", "1000000", "--fpp", "0.001");
+        ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(file.toPath()), 0, BreachedPasswords.HEADER);
+        assertEquals(BreachedPasswords.MAGIC, header.getInt(0));
+        assertEquals(10, header.getInt(8));
+        long bits = header.getLong(16);
+        // about 1.8 bytes per entry at 0.001
+        assertTrue(bits > 14_000_000 && bits < 15_000_000, "bits " + bits);
+        assertEquals(BreachedPasswords.HEADER + bits / 8, file.length());
+        assertEquals(3, BreachedPasswords.open(file).entries());
+    }
+
+    @Test
+    void rejectsFilesThatAreNotFilters() throws Exception {
+        assertThrows(IOException.class, () -> BreachedPasswords.open(dir.resolve("missing.bloom").toFile()));
+
+        File file = build(List.of("a", "b", "c"));
+        byte[] good = Files.readAllBytes(file.toPath());
+        File bad = dir.resolve("bad.bloom").toFile();
+
+        Files.write(bad.toPath(), "not a filter at all, just some text".getBytes(StandardCharsets.US_ASCII));
+        assertThrows(IOException.class, () -> BreachedPasswords.open(bad));
+
+        byte[] version = good.clone();
+        ByteBuffer.wrap(version).putInt(4, BreachedPasswords.VERSION + 1);
+        Files.write(bad.toPath(), version);
+        assertThrows(IOException.class, () -> BreachedPasswords.open(bad));
+
+        Files.write(bad.toPath(), Arrays.copyOf(good, good.length - 1));
+        assertThrows(IOException.class, () -> BreachedPasswords.open(bad));
+
+        Files.write(bad.toPath(), Arrays.copyOf(good, 10));
+        assertThrows(IOException.class, () -> BreachedPasswords.open(bad));
+    }
+}
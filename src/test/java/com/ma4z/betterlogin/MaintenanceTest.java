@@ -0,0 +1,107 @@
+package com.ma4z.betterlogin;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MaintenanceTest {
+
+    // start == end wraps past midnight, so the window never closes
+    private static final String ALWAYS = "00:00-00:00";
+
+    @TempDir
+    Path dir;
+
+    private final List<String> messages = new ArrayList<>();
+    private final List<SqliteDB> opened = new ArrayList<>();
+    private Logger log;
+
+    @BeforeEach
+    void captureLog() {
+        log = Logger.getAnonymousLogger();
+        log.setUseParentHandlers(false);
+        log.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord r) {
+                messages.add(r.getMessage());
+            }
+
+            @Override
+            public void flush() {}
+
+            @Override
+            public void close() {}
+        });
+    }
+
+    @AfterEach
+    void closeAll() {
+        for (SqliteDB db : opened) db.close();
+    }
+
+    private SqliteDB open(String name) throws Exception {
+        SqliteDB db = new SqliteDB(dir.resolve(name).toString(), 1, new AccountCache(100, 1, TimeUnit.HOURS), log, new Metrics(), 100);
+        opened.add(db);
+        db.prepare();
+        return db;
+    }
+
+    /** A file created before the plugin asked for incremental auto-vacuum. */
+    private SqliteDB openOldFile() throws Exception {
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dir.resolve("old.db")); Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE notes (x TEXT)");
+        }
+        return open("old.db");
+    }
+
+    private Maintenance maintenance(SqliteDB db) {
+        return new Maintenance(db, new File(dir.toFile(), "backups"), 0, 8, ALWAYS, 50, 1000, log, new Metrics());
+    }
+
+    @Test
+    void newFilesStartInIncrementalMode() throws Exception {
+        assertTrue(open("new.db").incrementalVacuumEnabled().join());
+    }
+
+    @Test
+    void scheduledUpkeepNeverConvertsTheFile() throws Exception {
+        SqliteDB db = openOldFile();
+        Maintenance maintenance = maintenance(db);
+        maintenance.poll();
+        maintenance.shutdown();
+
+        assertFalse(db.incrementalVacuumEnabled().join());
+        assertTrue(messages.stream().anyMatch(m -> m.contains("/betterlogin vacuum")), messages.toString());
+        assertFalse(messages.stream().anyMatch(m -> m.startsWith("Switching")), messages.toString());
+    }
+
+    @Test
+    void convertsOnlyWhenAsked() throws Exception {
+        SqliteDB db = openOldFile();
+        db.createPlayer("u1", "Steve", new byte[] {1}).join();
+        Maintenance maintenance = maintenance(db);
+
+        assertTrue(maintenance.enableIncrementalVacuum().join());
+        assertTrue(db.incrementalVacuumEnabled().join());
+        assertFalse(maintenance.enableIncrementalVacuum().join());
+        maintenance.shutdown();
+        assertEquals("Steve", db.getPlayerByName("steve").join().username);
+    }
+}
@@ -0,0 +1,183 @@
+package com.ma4z.betterlogin;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MigrationsTest {
+
+    @TempDir
+    Path dir;
+
+    private final List<String> warnings = new ArrayList<>();
+    private Logger log;
+
+    @BeforeEach
+    void captureWarnings() {
+        log = Logger.getAnonymousLogger();
+        log.setUseParentHandlers(false);
+        log.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord r) {
+                if (r.getLevel().intValue() >= Level.WARNING.intValue()) warnings.add(r.getMessage());
+            }
+
+            @Override
+            public void flush() {}
+
+            @Override
+            public void close() {}
+        });
+    }
+
+    private Connection open() throws SQLException {
+        return DriverManager.getConnection("jdbc:sqlite:" + dir.resolve("passwords.db"));
+    }
+
+    /** A passwords.db as written before schema versioning: no schema_version, names compared case-sensitively. */
+    private static void createV1(Connection conn) throws Exception {
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE accounts (uuid TEXT PRIMARY KEY, username TEXT, hash TEXT, salt TEXT, iterations INTEGER, is_premium INTEGER DEFAULT 0, last_world TEXT, last_x REAL, last_y REAL, last_z REAL, last_yaw REAL, last_pitch REAL)");
+        }
+        insertV1(conn, "u1", "Steve", "first", 10);
+        insertV1(conn, "u2", "steve", "second", 20);
+        insertV1(conn, "u3", "Alex", "third", 30);
+        insertV1(conn, "u4", "STEVE", "fourth", 40);
+    }
+
+    private static void insertV1(Connection conn, String uuid, String name, String password, double x) throws Exception {
+        byte[] salt = (uuid + "-salt").getBytes(StandardCharsets.UTF_8);
+        byte[] key = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256")
+                .generateSecret(new PBEKeySpec(password.toCharArray(), salt, 1000, 256)).getEncoded();
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO accounts(uuid, username, hash, salt, iterations, last_world, last_x, last_y, last_z) VALUES(?,?,?,?,?,?,?,?,?)")) {
+            ps.setString(1, uuid);
+            ps.setString(2, name);
+            ps.setString(3, Base64.getEncoder().encodeToString(key));
+            ps.setString(4, Base64.getEncoder().encodeToString(salt));
+            ps.setInt(5, 1000);
+            ps.setString(6, "world");
+            ps.setDouble(7, x);
+            ps.setDouble(8, 64);
+            ps.setDouble(9, -x);
+            ps.executeUpdate();
+        }
+    }
+
+    private static int version(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SELECT version FROM schema_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static int count(Connection conn, String table) throws SQLException {
+        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SELECT count(*) FROM " + table)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static byte[] password(Connection conn, String uuid) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT password FROM accounts WHERE uuid = ?")) {
+            ps.setString(1, uuid);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getBytes(1) : null;
+            }
+        }
+    }
+
+    @Test
+    void createsTheLatestSchemaOnAnEmptyFile() throws Exception {
+        try (Connection conn = open()) {
+            Migrations.run(conn, Dialect.SQLITE, log);
+            assertEquals(Migrations.latestVersion(), version(conn));
+            assertEquals(0, count(conn, "accounts"));
+            assertEquals(0, count(conn, "accounts_conflicts"));
+            assertEquals(0, count(conn, "accounts_archive"));
+            assertEquals(0, count(conn, "import_progress"));
+            assertTrue(warnings.isEmpty());
+
+            // a second start has nothing to do
+            Migrations.run(conn, Dialect.SQLITE, log);
+            assertEquals(Migrations.latestVersion(), version(conn));
+        }
+    }
+
+    @Test
+    void upgradesAVersion1FileAndKeepsCaseCollidingAccounts() throws Exception {
+        try (Connection conn = open()) {
+            createV1(conn);
+            Migrations.run(conn, Dialect.SQLITE, log);
+
+            assertEquals(Migrations.latestVersion(), version(conn));
+            // the oldest row keeps the name; nothing is lost
+            assertEquals(2, count(conn, "accounts"));
+            assertEquals(2, count(conn, "accounts_conflicts"));
+            try (Statement st = conn.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT uuid, username, hash, salt, iterations, last_world, last_x FROM accounts_conflicts ORDER BY uuid")) {
+                assertTrue(rs.next());
+                assertEquals("u2", rs.getString(1));
+                assertEquals("steve", rs.getString(2));
+                byte[] moved = Pbkdf2Hasher.fromLegacy(rs.getString(3), rs.getString(4), rs.getInt(5));
+                assertTrue(PasswordHashers.verify("second", moved));
+                assertEquals("world", rs.getString(6));
+                assertEquals(20, rs.getDouble(7));
+                assertTrue(rs.next());
+                assertEquals("u4", rs.getString(1));
+                assertFalse(rs.next());
+            }
+            assertEquals(1, warnings.size());
+            assertTrue(warnings.get(0).contains("steve") && warnings.get(0).contains("STEVE"), warnings.get(0));
+
+            // the kept rows were converted to the binary hash column
+            assertTrue(PasswordHashers.verify("first", password(conn, "u1")));
+            assertTrue(PasswordHashers.verify("third", password(conn, "u3")));
+            assertNull(password(conn, "u2"));
+            try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SELECT count(*) FROM accounts WHERE hash IS NOT NULL OR last_login IS NULL")) {
+                rs.next();
+                assertEquals(0, rs.getInt(1));
+            }
+
+            // names are unique regardless of case from now on
+            try (Statement st = conn.createStatement()) {
+                assertThrows(SQLException.class, () -> st.execute("INSERT INTO accounts(uuid, username, username_lc) VALUES('u5', 'sTeVe', 'steve')"));
+            }
+        }
+    }
+
+    @Test
+    void aFailedMigrationLeavesTheLastAppliedVersion() throws Exception {
+        try (Connection conn = open()) {
+            createV1(conn);
+            // migration 2 creates this table, so it fails and must roll back to version 1
+            try (Statement st = conn.createStatement()) {
+                st.execute("CREATE TABLE accounts_conflicts (x INTEGER)");
+            }
+            assertThrows(SQLException.class, () -> Migrations.run(conn, Dialect.SQLITE, log));
+            assertEquals(1, version(conn));
+            assertEquals(4, count(conn, "accounts"));
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.ma4z.betterlogin;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PasswordHasherTest {
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    private static void assertRoundTrip(PasswordHasher hasher) {
+        byte[] hash = hasher.hash("correct horse".toCharArray());
+        assertEquals(hasher.id(), hash[0]);
+        assertTrue(hasher.verify("correct horse".toCharArray(), hash));
+        assertFalse(hasher.verify("correct horsf".toCharArray(), hash));
+        assertTrue(PasswordHashers.verify("correct horse", hash));
+        assertFalse(PasswordHashers.verify("Correct horse", hash));
+        assertTrue(hasher.isCurrent(hash));
+        // fresh salt every time
+        assertNotEquals(HEX.formatHex(hash), HEX.formatHex(hasher.hash("correct horse".toCharArray())));
+    }
+
+    @Test
+    void pbkdf2Sha256RoundTrip() {
+        assertRoundTrip(new Pbkdf2Hasher(Pbkdf2Hasher.SHA256, 1000));
+    }
+
+    @Test
+    void pbkdf2Sha512RoundTrip() {
+        assertRoundTrip(new Pbkdf2Hasher(Pbkdf2Hasher.SHA512, 1000));
+    }
+
+    @Test
+    void scryptRoundTrip() {
+        assertRoundTrip(new ScryptHasher(4, 8, 1));
+    }
+
+    @Test
+    void pbkdf2LayoutCarriesItsParameters() throws Exception {
+        Pbkdf2Hasher hasher = new Pbkdf2Hasher(Pbkdf2Hasher.SHA256, 1234);
+        byte[] hash = hasher.hash("pw".toCharArray());
+        ByteBuffer buf = ByteBuffer.wrap(hash);
+        assertEquals(Pbkdf2Hasher.SHA256, buf.get());
+        assertEquals(1234, buf.getInt());
+        byte[] salt = new byte[buf.get() & 0xff];
+        buf.get(salt);
+        byte[] key = new byte[buf.remaining()];
+        buf.get(key);
+        byte[] expected = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256")
+                .generateSecret(new PBEKeySpec("pw".toCharArray(), salt, 1234, 256)).getEncoded();
+        assertArrayEquals(expected, key);
+    }
+
+    @Test
+    void verifiesWithTheStoredParametersAfterTheCostChanged() {
+        byte[] old = new Pbkdf2Hasher(Pbkdf2Hasher.SHA256, 1000).hash("pw".toCharArray());
+        Pbkdf2Hasher current = new Pbkdf2Hasher(Pbkdf2Hasher.SHA256, 5000);
+        assertTrue(current.verify("pw".toCharArray(), old));
+        assertFalse(current.isCurrent(old));
+        // within 20% counts as current, so calibration jitter does not re-hash everyone
+        assertTrue(new Pbkdf2Hasher(Pbkdf2Hasher.SHA256, 1100).isCurrent(old));
+        assertFalse(new Pbkdf2Hasher(Pbkdf2Hasher.SHA512, 1000).isCurrent(old));
+        assertFalse(new ScryptHasher(4, 8, 1).isCurrent(old));
+    }
+
+    @Test
+    void scryptMatchesTheRfc7914TestVector() {
+        byte[] key = HEX.parseHex("fdbabe1c9d3472007856e7190d01e9fe7c6ad7cbc8237830e77376634b373162"
+                + "2eaf30d92e22a3886ff109279d9830dac727afb94a83ee6d8360cbdfa2cc0640");
+        byte[] salt = "NaCl".getBytes(StandardCharsets.US_ASCII);
+        assertArrayEquals(key, ScryptHasher.scrypt("password".getBytes(StandardCharsets.US_ASCII), salt, 1024, 8, 16, 64));
+
+        // the same vector in the stored layout: id, log2(N), r, p, salt length, salt, key
+        byte[] stored = ByteBuffer.allocate(5 + salt.length + key.length)
+                .put((byte) ScryptHasher.ID).put((byte) 10).put((byte) 8).put((byte) 16).put((byte) salt.length).put(salt).put(key)
+                .array();
+        assertTrue(PasswordHashers.verify("password", stored));
+        assertFalse(PasswordHashers.verify("Password", stored));
+    }
+
+    @Test
+    void convertsTheLegacyBase64Columns() throws Exception {
+        byte[] salt = "legacy-salt-0001".getBytes(StandardCharsets.US_ASCII);
+        byte[] key = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256")
+                .generateSecret(new PBEKeySpec("hunter2".toCharArray(), salt, 65536, 256)).getEncoded();
+        byte[] converted = Pbkdf2Hasher.fromLegacy(Base64.getEncoder().encodeToString(key), Base64.getEncoder().encodeToString(salt), 65536);
+
+        assertTrue(PasswordHashers.verify("hunter2", converted));
+        assertFalse(PasswordHashers.verify("hunter3", converted));
+        assertThrows(IllegalArgumentException.class, () -> Pbkdf2Hasher.fromLegacy("not base64!", "c2FsdA==", 1000));
+    }
+
+    @Test
+    void rejectsEmptyTruncatedAndUnknownHashes() {
+        byte[] hash = new Pbkdf2Hasher(Pbkdf2Hasher.SHA256, 1000).hash("pw".toCharArray());
+        assertFalse(PasswordHashers.verify("pw", null));
+        assertFalse(PasswordHashers.verify("pw", new byte[0]));
+        assertFalse(PasswordHashers.verify("pw", new byte[] {(byte) 99, 1, 2, 3}));
+        assertFalse(PasswordHashers.verify("pw", Arrays.copyOf(hash, 6)));
+        assertFalse(PasswordHashers.verify("pw", new byte[] {ScryptHasher.ID, 0, 8, 1, 0}));
+        // an absurd stored cost is refused before any work is done
+        byte[] costly = hash.clone();
+        ByteBuffer.wrap(costly).putInt(1, Integer.MAX_VALUE);
+        assertFalse(PasswordHashers.verify("pw", costly));
+    }
+
+    @Test
+    void neverHashesAboveTheIterationLimit() {
+        assertEquals(Pbkdf2Hasher.MAX_ITERATIONS, new Pbkdf2Hasher(Pbkdf2Hasher.SHA256, Integer.MAX_VALUE).iterations());
+    }
+
+    @Test
+    void createsTheConfiguredScheme() {
+        assertEquals("pbkdf2-sha256", PasswordHashers.create("PBKDF2-SHA256", 1000, 8, 1).name());
+        assertEquals("pbkdf2-sha512", PasswordHashers.create("pbkdf2-sha512", 1000, 8, 1).name());
+        assertEquals("scrypt", PasswordHashers.create("scrypt", 4, 8, 1).name());
+        assertThrows(IllegalArgumentException.class, () -> PasswordHashers.create("md5", 1, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> PasswordHashers.create("scrypt", 40, 8, 1));
+    }
+}
@@ -0,0 +1,229 @@
+package com.ma4z.betterlogin;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link PooledDB} against an in-memory H2 database in MySQL or PostgreSQL compatibility mode, standing in
+ * for a shared server.
+ */
+class PooledDBTest {
+
+    private static final Logger LOG = Logger.getLogger("PooledDBTest");
+
+    private final List<PooledDB> opened = new ArrayList<>();
+    private String url;
+
+    @AfterEach
+    void closeAll() {
+        for (PooledDB db : opened) db.close();
+    }
+
+    /** A fresh database for this test; further calls connect more servers to the same one. */
+    private PooledDB open(Dialect dialect) throws SQLException {
+        if (url == null) {
+            String mode = dialect == Dialect.MYSQL ? "MySQL" : "PostgreSQL";
+            url = "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=" + mode + ";DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+        }
+        PooledDB db = new PooledDB(dialect, url, "sa", "", 2, new AccountCache(100, 1, TimeUnit.HOURS), LOG, new Metrics(), 100);
+        opened.add(db);
+        db.prepare();
+        return db;
+    }
+
+    private void sql(String statement, Object... args) throws SQLException {
+        try (Connection conn = DriverManager.getConnection(url, "sa", ""); PreparedStatement ps = conn.prepareStatement(statement)) {
+            for (int i = 0; i < args.length; i++) ps.setObject(i + 1, args[i]);
+            ps.execute();
+        }
+    }
+
+    private long count(String table) throws SQLException {
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SELECT count(*) FROM " + table)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private static DB.ImportedAccount imported(String uuid, String name, long lastLogin) {
+        DB.ImportedAccount a = new DB.ImportedAccount();
+        a.uuid = uuid;
+        a.username = name;
+        a.password = new byte[] {1, (byte) name.length()};
+        a.lastLogin = lastLogin;
+        return a;
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = Dialect.class, names = {"MYSQL", "POSTGRESQL"})
+    void createsTheSharedSchemaOnceForEveryServer(Dialect dialect) throws SQLException {
+        open(dialect).createPlayer("u1", "Steve", new byte[] {1}).join();
+        // a second server finds the schema in place and changes nothing
+        open(dialect);
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SELECT version FROM schema_version")) {
+            assertTrue(rs.next());
+            assertEquals(Migrations.latestVersion(), rs.getInt(1));
+            assertFalse(rs.next());
+        }
+        assertEquals(1, count("accounts"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = Dialect.class, names = {"MYSQL", "POSTGRESQL"})
+    void looksUpUpdatesAndDeletesAccounts(Dialect dialect) throws SQLException {
+        PooledDB db = open(dialect);
+        byte[] steveHash = {1, 2, 3};
+        db.createPlayer("u1", "Steve", steveHash).join();
+        db.createPlayer("u2", "Alex", new byte[] {4}).join();
+
+        DB.StoredEntry steve = db.getPlayer("u1", "Steve").join();
+        assertEquals("Steve", steve.username);
+        assertArrayEquals(steveHash, steve.password);
+        assertEquals("u1", db.getPlayer("u9", "STEVE").join().uuid);
+        // the uuid match wins over a different account with the name
+        assertEquals("u2", db.getPlayer("u2", "steve").join().uuid);
+        assertNull(db.getPlayer("u9", "nobody").join());
+
+        byte[] changed = {9, 9};
+        db.updatePassword("u1", "Steve", changed).join();
+        db.setPremiumFlag("u1", "Steve", true).join();
+        DB.StoredEntry updated = db.getPlayerByName("steve").join();
+        assertArrayEquals(changed, updated.password);
+        assertTrue(updated.isPremium);
+
+        // without a name exactly the row with that uuid changes
+        byte[] alexHash = db.getPlayer("u2", null).join().password;
+        db.updatePassword("u1", null, new byte[] {7}).join();
+        assertArrayEquals(new byte[] {7}, db.getPlayer("u1", null).join().password);
+        assertArrayEquals(alexHash, db.getPlayerByName("alex").join().password);
+        db.updatePassword("u1", "Steve", changed).join();
+
+        // names are unique regardless of case
+        CompletionException dup = assertThrows(CompletionException.class, () -> db.createPlayer("u3", "ALEX", new byte[] {5}).join());
+        assertInstanceOf(SQLException.class, dup.getCause());
+
+        db.deletePlayer("u2", "Alex").join();
+        assertNull(db.getPlayerByName("alex").join());
+        assertNotNull(db.getPlayerByName("steve").join());
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = Dialect.class, names = {"MYSQL", "POSTGRESQL"})
+    void flushesBufferedLocationsInOneBatch(Dialect dialect) throws SQLException {
+        PooledDB db = open(dialect);
+        db.createPlayer("u1", "Steve", new byte[] {1}).join();
+        db.createPlayer("u2", "Alex", new byte[] {2}).join();
+        for (int i = 0; i < 3; i++) {
+            DB.StoredLocation loc = new DB.StoredLocation();
+            loc.world = "world";
+            loc.x = i;
+            loc.y = 64.5;
+            loc.z = -i;
+            loc.yaw = 90;
+            loc.pitch = -15;
+            db.saveLastLocation(i == 1 ? "u2" : "u1", loc);
+        }
+        // lookups see buffered locations before they are written
+        assertEquals(2, db.getPlayer("u1", "Steve").join().lastLocation.x);
+
+        assertEquals(2, db.flushLocations().join());
+        assertEquals(0, db.flushLocations().join());
+        // another server reads what was committed
+        DB.StoredLocation stored = open(dialect).getLastLocation("u1").join();
+        assertEquals("world", stored.world);
+        assertEquals(2, stored.x);
+        assertEquals(64.5, stored.y);
+        assertEquals(-2, stored.z);
+        assertEquals(90f, stored.yaw);
+        assertEquals(-15f, stored.pitch);
+        assertEquals(1, open(dialect).getPlayer("u2", null).join().lastLocation.x);
+    }
+
+    // H2 has no ON CONFLICT, which the PostgreSQL dialect uses for INSERT-or-skip and the progress upsert
+    @ParameterizedTest
+    @EnumSource(value = Dialect.class, names = {"MYSQL"})
+    void importsBatchesAndAddsUpTheProgress(Dialect dialect) throws SQLException {
+        PooledDB db = open(dialect);
+        db.createPlayer("u1", "Steve", new byte[] {1}).join();
+
+        int inserted = db.importAccounts("authme.db#authme", List.of(
+                imported("u2", "Alex", 1000), imported("u3", "STEVE", 1000), imported("u1", "Other", 1000)), 3, 1).join();
+        assertEquals(1, inserted);
+        assertEquals(2, db.importAccounts("authme.db#authme", List.of(imported("u4", "Bob", 2000), imported("u5", "Carol", 2000)), 5, 0).join());
+
+        DB.ImportProgress progress = db.importProgress("authme.db#authme").join();
+        assertEquals(5, progress.position);
+        assertEquals(3, progress.imported);
+        assertEquals(3, progress.skipped);
+        assertNull(db.importProgress("other.csv").join());
+        assertEquals("u2", db.getPlayerByName("alex").join().uuid);
+        assertEquals("Steve", db.getPlayer("u1", null).join().username);
+        assertEquals(4, count("accounts"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = Dialect.class, names = {"MYSQL", "POSTGRESQL"})
+    void pagesThroughAndPrunesInactiveAccounts(Dialect dialect) throws SQLException {
+        PooledDB db = open(dialect);
+        for (int i = 0; i < 7; i++) {
+            db.createPlayer("u" + i, "player" + i, new byte[] {(byte) i}).join();
+            // u0..u4 are inactive, two of them with the same last login
+            sql("UPDATE accounts SET last_login = ? WHERE uuid = ?", i < 5 ? 1000L + Math.min(i, 3) : System.currentTimeMillis(), "u" + i);
+        }
+        long cutoff = 5000;
+
+        List<DB.InactiveAccount> all = new ArrayList<>();
+        long afterLogin = Long.MIN_VALUE;
+        String afterUuid = "";
+        for (List<DB.InactiveAccount> page = db.inactiveAccounts(cutoff, afterLogin, afterUuid, 2).join(); !page.isEmpty();
+             page = db.inactiveAccounts(cutoff, afterLogin, afterUuid, 2).join()) {
+            assertTrue(page.size() <= 2);
+            all.addAll(page);
+            DB.InactiveAccount last = page.get(page.size() - 1);
+            afterLogin = last.lastLogin;
+            afterUuid = last.uuid;
+        }
+        Set<String> uuids = new HashSet<>();
+        for (DB.InactiveAccount a : all) uuids.add(a.uuid);
+        assertEquals(Set.of("u0", "u1", "u2", "u3", "u4"), uuids);
+        assertEquals(5, all.size());
+
+        // u2 logs in between the listing and the prune, so it stays
+        db.recordLogin("u2").join();
+        assertEquals(4, db.pruneAccounts(all, cutoff, true).join());
+        assertEquals(3, count("accounts"));
+        assertEquals(4, count("accounts_archive"));
+        assertNull(db.getPlayer("u0", "player0").join());
+        assertNotNull(db.getPlayer("u2", "player2").join());
+
+        assertEquals(0, db.pruneAccounts(all, cutoff, false).join());
+        assertEquals(4, count("accounts_archive"));
+    }
+}
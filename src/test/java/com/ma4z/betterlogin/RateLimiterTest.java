@@ -0,0 +1,152 @@
+package com.ma4z.betterlogin;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+
+    private static final UUID VICTIM = UUID.nameUUIDFromBytes("OfflinePlayer:Steve".getBytes(StandardCharsets.UTF_8));
+
+    private static InetAddress ip(int last) throws UnknownHostException {
+        return InetAddress.getByAddress(new byte[] {10, 0, 0, (byte) last});
+    }
+
+    // generous buckets so only the lockout logic is in play
+    private static RateLimiter limiter(int failures, long baseSeconds, long maxSeconds) {
+        return new RateLimiter(1000, 0, 1000, 0, 100, failures, baseSeconds, maxSeconds, 1000, 30);
+    }
+
+    @Test
+    void bucketRefusesWhenEmptyAndRefillsOverTime() {
+        long t = 1_000_000;
+        RateLimiter.Bucket bucket = new RateLimiter.Bucket(2, 60, t);
+        assertTrue(bucket.tryTake(t));
+        assertTrue(bucket.tryTake(t));
+        assertFalse(bucket.tryTake(t));
+        // one token per second at 60 per minute
+        assertFalse(bucket.tryTake(t + 999));
+        assertTrue(bucket.tryTake(t + 1000));
+        assertFalse(bucket.tryTake(t + 1000));
+        // never above capacity, however long it was idle
+        assertTrue(bucket.tryTake(t + 3_600_000));
+        assertTrue(bucket.tryTake(t + 3_600_000));
+        assertFalse(bucket.tryTake(t + 3_600_000));
+    }
+
+    @Test
+    void bucketWithoutRefillStaysEmpty() {
+        RateLimiter.Bucket bucket = new RateLimiter.Bucket(1, 0, 0);
+        assertTrue(bucket.tryTake(0));
+        assertFalse(bucket.tryTake(86_400_000));
+    }
+
+    @Test
+    void rateLimitsPerIpAcrossPlayers() throws UnknownHostException {
+        RateLimiter limiter = new RateLimiter(3, 0, 100, 0, 100, 5, 30, 3600, 1000, 30);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(RateLimiter.Decision.ALLOWED, limiter.tryAttempt(ip(1), UUID.randomUUID()));
+        }
+        assertEquals(RateLimiter.Decision.RATE_LIMITED, limiter.tryAttempt(ip(1), UUID.randomUUID()));
+        assertEquals(RateLimiter.Decision.ALLOWED, limiter.tryAttempt(ip(2), UUID.randomUUID()));
+    }
+
+    @Test
+    void aRefusedPlayerDoesNotDrainTheSharedIp() throws UnknownHostException {
+        // players behind one NAT share ip(1); each player may try twice a minute, the IP five times
+        RateLimiter limiter = new RateLimiter(5, 0, 2, 0, 100, 100, 30, 3600, 1000, 30);
+        UUID noisy = UUID.randomUUID();
+        for (int i = 0; i < 2; i++) assertEquals(RateLimiter.Decision.ALLOWED, limiter.tryAttempt(ip(1), noisy));
+        for (int i = 0; i < 20; i++) assertEquals(RateLimiter.Decision.RATE_LIMITED, limiter.tryAttempt(ip(1), noisy));
+        // three IP tokens are left for everyone else
+        for (int i = 0; i < 3; i++) assertEquals(RateLimiter.Decision.ALLOWED, limiter.tryAttempt(ip(1), UUID.randomUUID()));
+        assertEquals(RateLimiter.Decision.RATE_LIMITED, limiter.tryAttempt(ip(1), UUID.randomUUID()));
+    }
+
+    @Test
+    void bucketRefundNeverExceedsCapacity() {
+        RateLimiter.Bucket bucket = new RateLimiter.Bucket(1, 0, 0);
+        bucket.refund();
+        assertTrue(bucket.tryTake(0));
+        assertFalse(bucket.tryTake(0));
+        bucket.refund();
+        assertTrue(bucket.tryTake(0));
+    }
+
+    @Test
+    void capsConcurrentHashes() throws UnknownHostException {
+        RateLimiter limiter = new RateLimiter(100, 0, 100, 0, 2, 5, 30, 3600, 1000, 30);
+        assertEquals(RateLimiter.Decision.ALLOWED, limiter.tryAttempt(ip(1), UUID.randomUUID()));
+        assertEquals(RateLimiter.Decision.ALLOWED, limiter.tryAttempt(ip(2), UUID.randomUUID()));
+        assertEquals(RateLimiter.Decision.BUSY, limiter.tryAttempt(ip(3), UUID.randomUUID()));
+        limiter.releaseHashSlot();
+        assertEquals(RateLimiter.Decision.ALLOWED, limiter.tryAttempt(ip(3), UUID.randomUUID()));
+    }
+
+    @Test
+    void aBusyRefusalGivesTheTokensBack() throws UnknownHostException {
+        RateLimiter limiter = new RateLimiter(1, 0, 1, 0, 1, 5, 30, 3600, 1000, 30);
+        assertEquals(RateLimiter.Decision.ALLOWED, limiter.tryAttempt(ip(1), VICTIM));
+        UUID other = UUID.randomUUID();
+        assertEquals(RateLimiter.Decision.BUSY, limiter.tryAttempt(ip(2), other));
+        limiter.releaseHashSlot();
+        assertEquals(RateLimiter.Decision.ALLOWED, limiter.tryAttempt(ip(2), other));
+    }
+
+    @Test
+    void lockoutsDoubleUpToTheMaximum() throws UnknownHostException {
+        RateLimiter limiter = limiter(3, 10, 35);
+        long[] expected = {10_000, 20_000, 35_000, 35_000};
+        for (long lockout : expected) {
+            assertFalse(limiter.recordFailure(ip(1), VICTIM).lockedOut);
+            assertFalse(limiter.recordFailure(ip(1), VICTIM).lockedOut);
+            RateLimiter.Failure f = limiter.recordFailure(ip(1), VICTIM);
+            assertTrue(f.lockedOut);
+            assertEquals(lockout, f.lockoutMillis);
+        }
+        assertEquals(RateLimiter.Decision.LOCKED_OUT, limiter.tryAttempt(ip(1), VICTIM));
+        long left = limiter.lockedFor(ip(1), VICTIM);
+        assertTrue(left > 30_000 && left <= 35_000, "left " + left);
+    }
+
+    @Test
+    void successResetsTheEscalation() throws UnknownHostException {
+        RateLimiter limiter = limiter(2, 10, 3600);
+        limiter.recordFailure(ip(1), VICTIM);
+        assertEquals(10_000, limiter.recordFailure(ip(1), VICTIM).lockoutMillis);
+        limiter.recordSuccess(ip(1), VICTIM);
+        limiter.recordFailure(ip(2), VICTIM);
+        // the IP record of ip(2) is fresh and the player's count was reset, so this is a first lockout again
+        assertEquals(10_000, limiter.recordFailure(ip(2), VICTIM).lockoutMillis);
+    }
+
+    @Test
+    void anAccountLockoutRefusesAttemptsButNotConnections() throws UnknownHostException {
+        RateLimiter limiter = limiter(3, 60, 3600);
+        // someone fails /login under the victim's name from changing addresses
+        for (int i = 1; i <= 3; i++) limiter.recordFailure(ip(i), VICTIM);
+
+        assertEquals(0, limiter.ipLockedFor(ip(9)));
+        assertEquals(RateLimiter.Decision.LOCKED_OUT, limiter.tryAttempt(ip(9), VICTIM));
+        assertEquals(RateLimiter.Decision.ALLOWED, limiter.tryAttempt(ip(9), UUID.randomUUID()));
+    }
+
+    @Test
+    void anIpLockoutRefusesConnectionsFromThatIp() throws UnknownHostException {
+        RateLimiter limiter = limiter(3, 60, 3600);
+        for (int i = 0; i < 3; i++) limiter.recordFailure(ip(1), UUID.randomUUID());
+
+        long left = limiter.ipLockedFor(ip(1));
+        assertTrue(left > 55_000 && left <= 60_000, "left " + left);
+        assertEquals(0, limiter.ipLockedFor(ip(2)));
+        assertEquals(0, limiter.ipLockedFor(null));
+        assertEquals(RateLimiter.Decision.LOCKED_OUT, limiter.tryAttempt(ip(1), UUID.randomUUID()));
+    }
+}
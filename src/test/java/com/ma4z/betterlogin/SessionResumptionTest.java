@@ -0,0 +1,127 @@
+package com.ma4z.betterlogin;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionResumptionTest {
+
+    private static final UUID PLAYER = UUID.randomUUID();
+
+    @TempDir
+    Path dir;
+
+    private static InetAddress ip(String address) throws IOException {
+        return InetAddress.getByName(address);
+    }
+
+    @Test
+    void resumesOnceFromTheSameIp() throws IOException {
+        SessionResumption resumption = new SessionResumption(60);
+        resumption.remember(PLAYER, ip("10.0.0.1"));
+        assertTrue(resumption.consume(PLAYER, ip("10.0.0.1")));
+        // single use
+        assertFalse(resumption.consume(PLAYER, ip("10.0.0.1")));
+    }
+
+    @Test
+    void anotherIpUsesUpTheTicket() throws IOException {
+        SessionResumption resumption = new SessionResumption(60);
+        resumption.remember(PLAYER, ip("10.0.0.1"));
+        assertFalse(resumption.consume(PLAYER, ip("10.0.0.2")));
+        assertFalse(resumption.consume(PLAYER, ip("10.0.0.1")));
+    }
+
+    @Test
+    void forgetAndAZeroWindowLeaveNoTicket() throws IOException {
+        SessionResumption resumption = new SessionResumption(60);
+        resumption.remember(PLAYER, ip("10.0.0.1"));
+        resumption.forget(PLAYER);
+        assertFalse(resumption.consume(PLAYER, ip("10.0.0.1")));
+
+        SessionResumption disabled = new SessionResumption(0);
+        disabled.remember(PLAYER, ip("10.0.0.1"));
+        assertEquals(0, disabled.size());
+        assertFalse(disabled.consume(PLAYER, ip("10.0.0.1")));
+    }
+
+    @Test
+    void survivesARestart() throws IOException {
+        File file = dir.resolve("sessions.dat").toFile();
+        UUID v6 = UUID.randomUUID();
+        SessionResumption before = new SessionResumption(60);
+        before.remember(PLAYER, ip("10.0.0.1"));
+        before.remember(v6, ip("2001:db8::1"));
+        before.save(file);
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+
+        SessionResumption after = new SessionResumption(60);
+        after.load(file);
+        assertEquals(2, after.size());
+        assertTrue(after.consume(PLAYER, ip("10.0.0.1")));
+        assertFalse(after.consume(v6, ip("2001:db8::2")));
+    }
+
+    @Test
+    void fileLayout() throws IOException {
+        File file = dir.resolve("sessions.dat").toFile();
+        SessionResumption resumption = new SessionResumption(60);
+        resumption.remember(PLAYER, ip("10.0.0.1"));
+        long before = System.currentTimeMillis();
+        resumption.save(file);
+
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file.toPath()))) {
+            assertEquals(1, in.readInt());
+            assertEquals(1, in.readInt());
+            assertEquals(PLAYER, new UUID(in.readLong(), in.readLong()));
+            assertEquals(4, in.readUnsignedByte());
+            byte[] address = new byte[4];
+            in.readFully(address);
+            assertEquals(ip("10.0.0.1"), InetAddress.getByAddress(address));
+            long expiresAt = in.readLong();
+            assertTrue(expiresAt > before && expiresAt <= before + 61_000, "expires " + (expiresAt - before));
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    void loadSkipsExpiredTicketsAndUnknownFormats() throws IOException {
+        File file = dir.resolve("sessions.dat").toFile();
+        UUID expired = UUID.randomUUID();
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file.toPath()))) {
+            out.writeInt(1);
+            out.writeInt(2);
+            for (UUID uuid : new UUID[] {PLAYER, expired}) {
+                out.writeLong(uuid.getMostSignificantBits());
+                out.writeLong(uuid.getLeastSignificantBits());
+                out.writeByte(4);
+                out.write(ip("10.0.0.1").getAddress());
+                out.writeLong(uuid == expired ? System.currentTimeMillis() - 1 : System.currentTimeMillis() + 60_000);
+            }
+        }
+        SessionResumption resumption = new SessionResumption(60);
+        resumption.load(file);
+        assertEquals(1, resumption.size());
+        assertFalse(resumption.consume(expired, ip("10.0.0.1")));
+
+        Files.write(file.toPath(), new byte[] {0, 0, 0, 2, 0, 0, 0, 0});
+        SessionResumption other = new SessionResumption(60);
+        other.load(file);
+        assertEquals(0, other.size());
+
+        // a missing file is a first start
+        new SessionResumption(60).load(dir.resolve("missing.dat").toFile());
+    }
+}
@@ -0,0 +1,118 @@
+package com.ma4z.betterlogin;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+
+    private final List<String> fired = new ArrayList<>();
+    private TimingWheel<String> wheel;
+
+    /** A wheel that records each expiry as {@code value@tick}, then hands it to {@code then}. */
+    private TimingWheel<String> wheel(int slots, Consumer<TimingWheel.Timeout<String>> then) {
+        wheel = new TimingWheel<>(slots, t -> {
+            fired.add(t.value + "@" + wheel.now());
+            then.accept(t);
+        });
+        return wheel;
+    }
+
+    private void tick(int times) {
+        for (int i = 0; i < times; i++) wheel.tick();
+    }
+
+    @Test
+    void firesAfterTheDelayIncludingExtraRounds() {
+        // 8 slots, so the longer delays wrap the ring several times
+        wheel(8, t -> { });
+        for (long d : new long[] {100, 17, 16, 9, 8, 7, 1}) wheel.schedule("d" + d, d);
+        assertEquals(7, wheel.size());
+
+        tick(100);
+        assertEquals(List.of("d1@1", "d7@7", "d8@8", "d9@9", "d16@16", "d17@17", "d100@100"), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void roundsUpTheSlotsAndWaitsAtLeastOneTick() {
+        // 5 slots become 8; a delay of 0 still waits for the next tick
+        wheel(5, t -> { });
+        wheel.schedule("zero", 0);
+        wheel.schedule("five", 5);
+        wheel.schedule("twelve", 12);
+        tick(12);
+        assertEquals(List.of("zero@1", "five@5", "twelve@12"), fired);
+    }
+
+    @Test
+    void keepsPowerOfTwoSizes() {
+        int[][] cases = {{0, 1}, {1, 1}, {2, 2}, {3, 4}, {4, 4}, {5, 8}, {512, 512}, {513, 1024}};
+        for (int[] c : cases) assertEquals(c[1], new TimingWheel<String>(c[0], t -> { }).slots(), "slots " + c[0]);
+    }
+
+    @Test
+    void aSingleSlotCountsRounds() {
+        wheel(1, t -> { });
+        wheel.schedule("one", 1);
+        wheel.schedule("three", 3);
+        tick(3);
+        assertEquals(List.of("one@1", "three@3"), fired);
+    }
+
+    @Test
+    void cancelledTimeoutsNeverFire() {
+        wheel(4, t -> { });
+        TimingWheel.Timeout<String> a = wheel.schedule("a", 3);
+        TimingWheel.Timeout<String> b = wheel.schedule("b", 3);
+        TimingWheel.Timeout<String> c = wheel.schedule("c", 3);
+        // unlinks from the middle of the slot's list
+        assertTrue(wheel.cancel(b));
+        assertFalse(wheel.cancel(b));
+        assertFalse(b.isPending());
+        assertTrue(a.isPending());
+        assertEquals(2, wheel.size());
+
+        tick(3);
+        assertEquals(2, fired.size());
+        assertTrue(fired.containsAll(List.of("a@3", "c@3")), fired.toString());
+        assertFalse(wheel.cancel(c));
+        assertFalse(wheel.cancel(null));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void handlersMayRescheduleAndCancel() {
+        List<TimingWheel.Timeout<String>> later = new ArrayList<>();
+        wheel(4, t -> {
+            if (t.value.equals("repeat") && wheel.now() < 6) wheel.reschedule(t, 2);
+            if (t.value.equals("killer")) later.forEach(wheel::cancel);
+        });
+        wheel.schedule("repeat", 2);
+        wheel.schedule("killer", 4);
+        later.add(wheel.schedule("victim", 5));
+
+        tick(10);
+        // repeat and killer share tick 4 in no particular order
+        assertEquals(4, fired.size(), fired.toString());
+        assertTrue(fired.containsAll(List.of("repeat@2", "repeat@4", "killer@4", "repeat@6")), fired.toString());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void rescheduleMovesAPendingTimeout() {
+        wheel(16, t -> { });
+        TimingWheel.Timeout<String> t = wheel.schedule("t", 2);
+        tick(1);
+        wheel.reschedule(t, 5);
+        assertEquals(1, wheel.size());
+        tick(10);
+        assertEquals(List.of("t@6"), fired);
+    }
+}